@@ -0,0 +1,60 @@
+package dev.efnilite.ip.leaderboard;
+
+import dev.efnilite.ip.menu.community.SingleLeaderboardMenu;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the sorted scores behind {@link Leaderboard#put(UUID, Score)}, {@link Leaderboard#getRank(UUID)} and {@link Leaderboard#getScoreAtRank(int)}.
+ * A {@link Leaderboard} itself can't be created without a running server, so its {@link Ranking} is used directly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RankingBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private Ranking ranking;
+    private UUID[] uuids;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        random = new Random(42); // the same scores every run, so results are comparable
+        ranking = new Ranking(SingleLeaderboardMenu.Sort.SCORE);
+        uuids = new UUID[size];
+
+        Map<UUID, Score> scores = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            uuids[i] = new UUID(random.nextLong(), random.nextLong());
+            scores.put(uuids[i], Scores.random(random, size));
+        }
+
+        ranking.replace(scores);
+    }
+
+    @Benchmark
+    public Score put() {
+        return ranking.put(uuids[random.nextInt(size)], Scores.random(random, size));
+    }
+
+    @Benchmark
+    public int getRank() {
+        return ranking.getRank(uuids[random.nextInt(size)]);
+    }
+
+    @Benchmark
+    public Score getScoreAtRank() {
+        return ranking.getScoreAtRank(random.nextInt(size) + 1);
+    }
+}
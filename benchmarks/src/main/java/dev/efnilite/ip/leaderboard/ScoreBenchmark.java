@@ -0,0 +1,42 @@
+package dev.efnilite.ip.leaderboard;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks converting scores from and to the string format of leaderboard files.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScoreBenchmark {
+
+    private Score score;
+    private String string;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        score = Scores.random(new Random(42), 1000);
+        string = score.toString();
+    }
+
+    @Benchmark
+    public String write() {
+        return score.toString();
+    }
+
+    @Benchmark
+    public Score read() {
+        return Score.fromString(string);
+    }
+
+    @Benchmark
+    public Score roundTrip() {
+        return Score.fromString(score.toString());
+    }
+}
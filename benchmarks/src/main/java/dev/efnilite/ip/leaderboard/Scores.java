@@ -0,0 +1,44 @@
+package dev.efnilite.ip.leaderboard;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Creates the scores used by benchmarks.
+ */
+public final class Scores {
+
+    private Scores() {
+
+    }
+
+    /**
+     * @param random The random, with a fixed seed.
+     * @param max    The maximum score.
+     * @return A score with a random name, time, difficulty and score.
+     */
+    public static Score random(Random random, int max) {
+        return new Score("player%d".formatted(random.nextInt(100_000)),
+                Score.timeFromMillis(random.nextInt(600_000)),
+                "%d.%d".formatted(random.nextInt(2), random.nextInt(10)),
+                random.nextInt(max));
+    }
+
+    /**
+     * @param seed The seed.
+     * @param size The amount of scores.
+     * @return The same scores for the same seed and size.
+     */
+    public static Map<UUID, Score> random(long seed, int size) {
+        Random random = new Random(seed);
+        Map<UUID, Score> scores = new HashMap<>();
+
+        for (int i = 0; i < size; i++) {
+            scores.put(new UUID(random.nextLong(), random.nextLong()), random(random, size));
+        }
+
+        return scores;
+    }
+}
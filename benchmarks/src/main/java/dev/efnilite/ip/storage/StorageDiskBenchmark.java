@@ -0,0 +1,100 @@
+package dev.efnilite.ip.storage;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import dev.efnilite.ip.config.Option;
+import dev.efnilite.ip.leaderboard.Score;
+import dev.efnilite.ip.leaderboard.Scores;
+import dev.efnilite.ip.player.PlayerSettings;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link StorageDisk} in a temporary folder: full leaderboard reads and writes, in json and in the binary format,
+ * writing only changed scores and reading and writing player data in the player log.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageDiskBenchmark {
+
+    private static final String MODE = "benchmark";
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    @Param({"json", "binary"})
+    public String format;
+
+    private Path folder;
+    private StorageDisk storage;
+    private Map<UUID, Score> scores;
+    private UUID[] uuids;
+    private UUID player;
+    private PlayerSettings settings;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Option.LEADERBOARD_BINARY = format.equals("binary");
+
+        folder = Files.createTempDirectory("ip-benchmark");
+        Gson gson = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create();
+        storage = new StorageDisk(folder.toFile(), gson);
+        storage.init(MODE);
+
+        random = new Random(42);
+        scores = Scores.random(42, size);
+        uuids = scores.keySet().toArray(new UUID[0]);
+        storage.writeScores(MODE, scores);
+
+        settings = new PlayerSettings("red", 4, true, true, true, true, 6000, "en", 0.2, true, Set.of(1, 5, 10));
+        player = new UUID(random.nextLong(), random.nextLong());
+        storage.writeSettings(Map.of(player, settings));
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        storage.close();
+
+        try (var paths = Files.walk(folder)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public Map<UUID, Score> readScores() {
+        return storage.readScores(MODE);
+    }
+
+    @Benchmark
+    public void writeScores() {
+        storage.writeScores(MODE, scores);
+    }
+
+    @Benchmark
+    public void updateScores() {
+        UUID uuid = uuids[random.nextInt(uuids.length)];
+
+        storage.updateScores(MODE, Map.of(uuid, Scores.random(random, size)), Collections.emptySet());
+    }
+
+    @Benchmark
+    public PlayerSettings readSettings() {
+        return storage.readSettings(player);
+    }
+
+    @Benchmark
+    public void writeSettings() {
+        storage.writeSettings(Map.of(player, settings));
+    }
+}
@@ -1,10 +1,13 @@
 package dev.efnilite.ip;
 
+import dev.efnilite.ip.api.Registry;
 import dev.efnilite.ip.config.Config;
 import dev.efnilite.ip.config.Locales;
 import dev.efnilite.ip.config.Option;
+import dev.efnilite.ip.leaderboard.Leaderboard;
 import dev.efnilite.ip.menu.Menus;
 import dev.efnilite.ip.menu.ParkourOption;
+import dev.efnilite.ip.mode.Mode;
 import dev.efnilite.ip.mode.Modes;
 import dev.efnilite.ip.player.ParkourPlayer;
 import dev.efnilite.ip.player.ParkourUser;
@@ -53,6 +56,16 @@ public class Handler implements EventWatcher {
      */
     private final HashMap<UUID, PreviousData> quitPreviousData = new HashMap<>();
 
+    // runs on the login thread, so the player's data is read before they join
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void preLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            return;
+        }
+
+        IP.getStorage().prefetch(event.getUniqueId());
+    }
+
     @EventHandler(priority = EventPriority.LOWEST)
     public void join(PlayerJoinEvent event) {
         Player player = event.getPlayer();
@@ -71,6 +84,16 @@ public class Handler implements EventWatcher {
             send(player, "");
         }
 
+        // make sure the scores of this player are available
+        Leaderboard.join(uuid);
+        for (Mode mode : Registry.getModes()) {
+            Leaderboard leaderboard = mode.getLeaderboard();
+
+            if (leaderboard != null) {
+                leaderboard.prefetch(uuid);
+            }
+        }
+
         if (quitPreviousData.containsKey(uuid)) {
             quitPreviousData.get(uuid).apply(player, false);
             quitPreviousData.remove(uuid);
@@ -102,6 +125,8 @@ public class Handler implements EventWatcher {
 
     @EventHandler
     public void leave(PlayerQuitEvent event) {
+        Leaderboard.quit(event.getPlayer().getUniqueId());
+
         ParkourUser user = ParkourUser.getUser(event.getPlayer());
 
         if (user == null) {
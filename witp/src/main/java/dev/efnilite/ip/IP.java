@@ -6,21 +6,31 @@ import dev.efnilite.ip.config.Locales;
 import dev.efnilite.ip.config.Option;
 import dev.efnilite.ip.hook.HoloHook;
 import dev.efnilite.ip.hook.PAPIHook;
+import dev.efnilite.ip.leaderboard.ChangeFeed;
+import dev.efnilite.ip.leaderboard.FileChangeFeed;
+import dev.efnilite.ip.leaderboard.RunHistory;
 import dev.efnilite.ip.mode.DefaultMode;
 import dev.efnilite.ip.mode.Modes;
 import dev.efnilite.ip.mode.SpectatorMode;
 import dev.efnilite.ip.player.ParkourUser;
+import dev.efnilite.ip.player.data.InventoryStore;
 import dev.efnilite.ip.reward.Rewards;
 import dev.efnilite.ip.session.SessionChat;
+import dev.efnilite.ip.storage.AsyncStorage;
+import dev.efnilite.ip.storage.InstrumentedStorage;
 import dev.efnilite.ip.storage.Storage;
 import dev.efnilite.ip.storage.StorageDisk;
 import dev.efnilite.ip.storage.StorageSQL;
+import dev.efnilite.ip.storage.StorageSQLite;
+import dev.efnilite.ip.storage.StorageStats;
+import dev.efnilite.ip.storage.WriteBehindStorage;
 import dev.efnilite.ip.world.WorldManager;
 import dev.efnilite.vilib.ViPlugin;
 import dev.efnilite.vilib.lib.bstats.bukkit.Metrics;
 import dev.efnilite.vilib.lib.bstats.charts.SimplePie;
 import dev.efnilite.vilib.lib.bstats.charts.SingleLineChart;
 import dev.efnilite.vilib.util.Logging;
+import dev.efnilite.vilib.util.Task;
 import dev.efnilite.vilib.util.Time;
 import dev.efnilite.vilib.util.elevator.GitElevator;
 import dev.efnilite.vilib.util.elevator.VersionComparator;
@@ -29,6 +39,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.io.IOException;
 
 /**
  * Main class of Infinite Parkour
@@ -45,6 +56,11 @@ public final class IP extends ViPlugin {
     private static Logging logging;
     private static IP instance;
     private static Storage storage;
+    private static AsyncStorage asyncStorage;
+    private static final StorageStats storageStats = new StorageStats();
+
+    @Nullable
+    private static ChangeFeed feed;
 
     @Nullable
     private static PAPIHook placeholderHook;
@@ -94,7 +110,20 @@ public final class IP extends ViPlugin {
 
         // ----- SQL and data -----
 
-        storage = Option.SQL ? new StorageSQL() : new StorageDisk();
+        Storage backend;
+        if (Option.SQL) {
+            backend = new StorageSQL();
+        } else if (Option.EMBEDDED_DATABASE) {
+            backend = new StorageSQLite();
+        } else {
+            backend = new StorageDisk();
+        }
+        storage = new WriteBehindStorage(new InstrumentedStorage(backend, storageStats), Option.SQL);
+        asyncStorage = new AsyncStorage(storage, Option.STORAGE_THREADS);
+
+        if (!Option.LEADERBOARD_FEED_FOLDER.isEmpty()) {
+            feed = new FileChangeFeed(new File(Option.LEADERBOARD_FEED_FOLDER));
+        }
 
         // ----- Registry -----
 
@@ -103,6 +132,40 @@ public final class IP extends ViPlugin {
 
         Modes.init();
 
+        // append finished runs in the background
+        Task.create(this)
+                .delay(Option.STORAGE_UPDATE_INTERVAL * 20)
+                .repeat(Option.STORAGE_UPDATE_INTERVAL * 20)
+                .async()
+                .execute(RunHistory::flushAll)
+                .run();
+
+        // write inventory snapshots of joining players in the background
+        Task.create(this)
+                .delay(InventoryStore.INTERVAL)
+                .repeat(InventoryStore.INTERVAL)
+                .async()
+                .execute(InventoryStore::flush)
+                .run();
+
+        // delete items which are no longer in any inventory snapshot
+        Task.create(this)
+                .delay(InventoryStore.INTERVAL)
+                .repeat(InventoryStore.SWEEP_INTERVAL)
+                .async()
+                .execute(() -> {
+                    try {
+                        int deleted = InventoryStore.sweep();
+
+                        if (deleted > 0) {
+                            logging.info("Deleted %d unused inventory items".formatted(deleted));
+                        }
+                    } catch (IOException ex) {
+                        logging.stack("Error while deleting unused inventory items", ex);
+                    }
+                })
+                .run();
+
         // hook with hd / papi after gamemode leaderboards have initialized
         if (getServer().getPluginManager().isPluginEnabled("HolographicDisplays")) {
             logging.info("Connecting with Holographic Displays...");
@@ -154,7 +217,14 @@ public final class IP extends ViPlugin {
 
         // write all IP gamemodes
         Modes.DEFAULT.getLeaderboard().write(false);
+        RunHistory.flushAll();
+        InventoryStore.flush();
 
+        if (feed != null) {
+            feed.close();
+        }
+
+        asyncStorage.close();
         storage.close();
         WorldManager.delete();
     }
@@ -195,4 +265,26 @@ public final class IP extends ViPlugin {
     public static Storage getStorage() {
         return storage;
     }
+
+    /**
+     * @return The storage, which doesn't block the calling thread.
+     */
+    public static AsyncStorage getAsyncStorage() {
+        return asyncStorage;
+    }
+
+    /**
+     * @return The amount of calls, failed calls and the latency of every storage operation.
+     */
+    public static StorageStats getStorageStats() {
+        return storageStats;
+    }
+
+    /**
+     * @return The feed through which leaderboard changes are sent to other servers, null if disabled.
+     */
+    @Nullable
+    public static ChangeFeed getFeed() {
+        return feed;
+    }
 }
\ No newline at end of file
@@ -4,6 +4,7 @@ import dev.efnilite.ip.api.Registry;
 import dev.efnilite.ip.config.Config;
 import dev.efnilite.ip.config.Locales;
 import dev.efnilite.ip.leaderboard.Leaderboard;
+import dev.efnilite.ip.leaderboard.Score;
 import dev.efnilite.ip.menu.Menus;
 import dev.efnilite.ip.menu.ParkourOption;
 import dev.efnilite.ip.menu.community.SingleLeaderboardMenu;
@@ -16,11 +17,15 @@ import dev.efnilite.ip.player.data.InventoryData;
 import dev.efnilite.ip.schematic.Schematic;
 import dev.efnilite.ip.schematic.Schematics;
 import dev.efnilite.ip.session.Session;
+import dev.efnilite.ip.storage.Storage;
+import dev.efnilite.ip.storage.StorageMigration;
+import dev.efnilite.ip.storage.StorageStats;
 import dev.efnilite.vilib.command.ViCommand;
 import dev.efnilite.vilib.inventory.item.Item;
 import dev.efnilite.vilib.particle.ParticleData;
 import dev.efnilite.vilib.particle.Particles;
 import dev.efnilite.vilib.util.Locations;
+import dev.efnilite.vilib.util.Task;
 import org.bukkit.*;
 import org.bukkit.command.BlockCommandSender;
 import org.bukkit.command.CommandSender;
@@ -31,6 +36,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static dev.efnilite.ip.util.Util.send;
 
@@ -43,6 +49,11 @@ public class ParkourCommand extends ViCommand {
             .lore("<gray>Left click: first position", "<gray>Right click: second position")
             .build();
 
+    // the storage types that can be migrated between, see StorageMigration#create
+    private static final List<String> STORAGE_TYPES = List.of("disk", "sqlite", "mysql");
+
+    private static final AtomicBoolean migrating = new AtomicBoolean();
+
     @Override
     public boolean execute(CommandSender sender, String[] args) {
         Player player = null;
@@ -76,6 +87,7 @@ public class ParkourCommand extends ViCommand {
                 }
                 if (ParkourOption.LEADERBOARDS.mayPerform(sender)) {
                     completions.add("leaderboard");
+                    completions.add("search");
                 }
                 if (sender.hasPermission(ParkourOption.ADMIN.permission)) {
                     completions.add("schematic");
@@ -84,6 +96,8 @@ public class ParkourCommand extends ViCommand {
                     completions.add("forceleave");
                     completions.add("reset");
                     completions.add("recoverinventory");
+                    completions.add("storage");
+                    completions.add("migrate");
                 }
                 return completions(args[0], completions);
             }
@@ -93,6 +107,9 @@ public class ParkourCommand extends ViCommand {
                     for (ParkourPlayer pp : ParkourPlayer.getPlayers()) {
                         completions.add(pp.getName());
                     }
+                    completions.addAll(searchNames(args[1]));
+                } else if (args[0].equalsIgnoreCase("search") && ParkourOption.LEADERBOARDS.mayPerform(sender)) {
+                    completions.addAll(searchNames(args[1]));
                 } else if (args[0].equalsIgnoreCase("join") && sender.hasPermission(ParkourOption.JOIN.permission)) {
                     for (ParkourPlayer pp : ParkourPlayer.getPlayers()) {
                         completions.add(pp.getName());
@@ -116,15 +133,49 @@ public class ParkourCommand extends ViCommand {
                     for (Player pl : Bukkit.getOnlinePlayers()) {
                         completions.add(pl.getName());
                     }
+                } else if (args[0].equalsIgnoreCase("migrate") && sender.hasPermission(ParkourOption.ADMIN.permission)) {
+                    completions.addAll(STORAGE_TYPES);
                 }
                 return completions(args[1], completions);
             }
+            case 3 -> {
+                if (args[0].equalsIgnoreCase("search") && ParkourOption.LEADERBOARDS.mayPerform(sender)) {
+                    for (Mode mode : Registry.getModes()) {
+                        if (mode.getLeaderboard() != null) {
+                            completions.add(mode.getName());
+                        }
+                    }
+                } else if (args[0].equalsIgnoreCase("migrate") && sender.hasPermission(ParkourOption.ADMIN.permission)) {
+                    completions.addAll(STORAGE_TYPES);
+                    completions.remove(args[1].toLowerCase());
+                }
+                return completions(args[2], completions);
+            }
             default -> {
                 return Collections.emptyList();
             }
         }
     }
 
+    // returns the names in the default leaderboard that start with the prefix
+    private List<String> searchNames(String prefix) {
+        Leaderboard leaderboard = Modes.DEFAULT.getLeaderboard();
+
+        if (leaderboard == null || prefix.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<String> names = new ArrayList<>();
+        for (UUID uuid : leaderboard.getNames().search(prefix, 20)) {
+            String name = leaderboard.getNames().getName(uuid);
+
+            if (name != null) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
     private void handle0Args(@NotNull CommandSender sender, @Nullable Player player) {
         if (player != null && ParkourOption.MAIN.mayPerform(player)) {
             Menus.MAIN.open(player);
@@ -133,6 +184,77 @@ public class ParkourCommand extends ViCommand {
         sendHelpMessages(sender);
     }
 
+    private void sendStorageStats(CommandSender sender) {
+        Map<String, StorageStats.Metric> metrics = IP.getStorageStats().getMetrics();
+
+        if (metrics.isEmpty()) {
+            send(sender, "%sNo storage calls have been made yet.".formatted(IP.PREFIX));
+            return;
+        }
+
+        send(sender, "");
+        send(sender, "<dark_gray><strikethrough>---------------<reset> Storage <dark_gray><strikethrough>---------------<reset>");
+        send(sender, "");
+        metrics.forEach((operation, metric) -> send(sender, "<gray>%s <dark_gray>- <white>%d calls, %s errors, avg %s, p99 %s, max %s".formatted(operation,
+                metric.getCount(), metric.getErrors() > 0 ? "<red>%d<white>".formatted(metric.getErrors()) : "0",
+                formatMicros(metric.getMean()), formatMicros(metric.getPercentile(99)), formatMicros(metric.getMax()))));
+        send(sender, "");
+    }
+
+    private void migrate(CommandSender sender, String from, String to) {
+        if (!STORAGE_TYPES.contains(from) || !STORAGE_TYPES.contains(to) || from.equals(to)) {
+            send(sender, "%sSelect two different storage types out of %s".formatted(IP.PREFIX, String.join(", ", STORAGE_TYPES)));
+            return;
+        }
+
+        if (!migrating.compareAndSet(false, true)) {
+            send(sender, "%sA storage migration is already running.".formatted(IP.PREFIX));
+            return;
+        }
+
+        send(sender, "%sCopying all players and scores from %s to %s...".formatted(IP.PREFIX, from, to));
+
+        Task.create(IP.getPlugin()).async().execute(() -> {
+            // queued writes are written first, so these are included
+            IP.getStorage().flush();
+
+            Storage source = null;
+            Storage target = null;
+            long[] last = {System.currentTimeMillis()};
+
+            try {
+                source = StorageMigration.create(from);
+                target = StorageMigration.create(to);
+
+                StorageMigration.Progress progress = new StorageMigration(source, target, IP.getInFolder("migration.json")).run(update -> {
+                    // the sender is updated every few seconds, not every batch
+                    if (System.currentTimeMillis() - last[0] >= 5000) {
+                        last[0] = System.currentTimeMillis();
+                        send(sender, "%sCopied %d players and %d scores, now copying %s".formatted(IP.PREFIX, update.players(), update.scores(), update.phase()));
+                    }
+                });
+
+                send(sender, "%sCopied %d players and %d scores from %s to %s.".formatted(IP.PREFIX, progress.players(), progress.scores(), from, to));
+            } catch (Exception ex) {
+                IP.logging().stack("Error while migrating storage from %s to %s".formatted(from, to), ex);
+                send(sender, "%s<red>The migration stopped because of an error. Check the console and run the command again to continue.".formatted(IP.PREFIX));
+            } finally {
+                // the storage of the server is used by the server after the migration
+                if (source != null && source != IP.getStorage()) {
+                    source.close();
+                }
+                if (target != null && target != IP.getStorage()) {
+                    target.close();
+                }
+                migrating.set(false);
+            }
+        }).run();
+    }
+
+    private String formatMicros(long micros) {
+        return "%.1f ms".formatted(micros / 1000.0);
+    }
+
     private void sendHelpMessages(CommandSender sender) {
         send(sender, "");
         send(sender, "<dark_gray><strikethrough>---------------<reset> %s <dark_gray><strikethrough>---------------<reset>".formatted(IP.NAME));
@@ -150,6 +272,7 @@ public class ParkourCommand extends ViCommand {
         }
         if (sender.hasPermission(ParkourOption.LEADERBOARDS.permission)) {
             send(sender, "<gray>/parkour leaderboard [type]<dark_gray>- Open the leaderboard of a mode");
+            send(sender, "<gray>/parkour search <name> [type] <dark_gray>- Find players in the leaderboard of a mode by name");
         }
         if (sender.hasPermission(ParkourOption.ADMIN.permission)) {
             send(sender, "<gray>/ip schematic <dark_gray>- Create a schematic");
@@ -158,6 +281,8 @@ public class ParkourCommand extends ViCommand {
             send(sender, "<gray>/ip forcejoin <everyone/nearest/player> <dark_gray>- Forces a specific player, the nearest or everyone to join");
             send(sender, "<gray>/ip forceleave <everyone/nearest/player> <dark_gray>- Forces a specific player, the nearest or everyone to leave");
             send(sender, "<gray>/ip recoverinventory <player> <dark_gray>- Recover a player's saved inventory. <red>Useful for recovering data after server crashes or errors when leaving.");
+            send(sender, "<gray>/ip storage <dark_gray>- View the amount of calls, errors and latency of every storage operation");
+            send(sender, "<gray>/ip migrate <from> <to> <dark_gray>- Copy all players and scores from one storage type (disk, sqlite, mysql) to another. <red>Continues where it left off if stopped.");
         }
         send(sender, "");
     }
@@ -175,9 +300,18 @@ public class ParkourCommand extends ViCommand {
                 }
 
                 Config.reload(false);
+                Menus.SINGLE_LEADERBOARD.invalidate();
 
                 send(sender, "%sReloaded config files.".formatted(IP.PREFIX));
             }
+            case "storage" -> {
+                if (!sender.hasPermission(ParkourOption.ADMIN.permission)) {
+                    send(sender, Locales.getString(player, "other.no_do"));
+                    return;
+                }
+
+                sendStorageStats(sender);
+            }
         }
 
         if (player == null) {
@@ -351,11 +485,27 @@ public class ParkourCommand extends ViCommand {
                     uuid = UUID.fromString(arg2);
                 }
 
-                // Check offline player
+                // Check leaderboards, to avoid looking up the profile of an offline player
+                if (uuid == null) {
+                    for (Mode mode : Registry.getModes()) {
+                        Leaderboard leaderboard = mode.getLeaderboard();
+
+                        if (leaderboard == null) {
+                            continue;
+                        }
+
+                        uuid = leaderboard.getNames().get(arg2);
+
+                        if (uuid != null) {
+                            name = leaderboard.getNames().getName(uuid);
+                            break;
+                        }
+                    }
+                }
+
                 if (uuid == null) {
-                    OfflinePlayer offline = Bukkit.getOfflinePlayer(arg2);
-                    name = offline.getName();
-                    uuid = offline.getUniqueId();
+                    send(sender, IP.PREFIX + "Unknown player! Try typing the name again.");
+                    return;
                 }
 
                 UUID finalUuid = uuid;
@@ -374,6 +524,7 @@ public class ParkourCommand extends ViCommand {
 
                 send(sender, IP.PREFIX + "Successfully reset the high score of " + finalName + " in memory and the files.");
             }
+            case "search" -> search(sender, player, arg2, Modes.DEFAULT);
             case "recoverinventory" -> {
                 if (!cooldown(sender, "recoverinventory", 2500) || !sender.hasPermission(ParkourOption.ADMIN.permission)) {
                     return;
@@ -389,6 +540,8 @@ public class ParkourCommand extends ViCommand {
                     if (result != null) {
                         send(sender, "%sSuccessfully recovered the inventory of %s from their file".formatted(IP.PREFIX, other.getName()));
                         send(sender, "%sGiving %s their items now...".formatted(IP.PREFIX, other.getName()));
+
+                        Task.create(IP.getPlugin()).execute(result::apply).run();
                     } else {
                         send(sender, "%s<red>There was an error recovering the inventory of %s from their file".formatted(IP.PREFIX, other.getName()));
                         send(sender, "%s%s has no saved inventory or there was an error. Check the console.".formatted(IP.PREFIX, other.getName()));
@@ -518,6 +671,28 @@ public class ParkourCommand extends ViCommand {
     }
 
     private void handle3Args(@NotNull String arg1, @NotNull String arg2, @NotNull String arg3, @NotNull CommandSender sender, @Nullable Player player) {
+        if (arg1.equalsIgnoreCase("migrate")) {
+            if (!sender.hasPermission(ParkourOption.ADMIN.permission)) {
+                send(sender, Locales.getString(player, "other.no_do"));
+                return;
+            }
+
+            migrate(sender, arg2.toLowerCase(), arg3.toLowerCase());
+            return;
+        }
+
+        if (arg1.equalsIgnoreCase("search")) {
+            Mode mode = Registry.getMode(arg3.toLowerCase());
+
+            if (mode == null) {
+                send(sender, "%sUnknown mode %s".formatted(IP.PREFIX, arg3));
+                return;
+            }
+
+            search(sender, player, arg2, mode);
+            return;
+        }
+
         if (player == null) {
             return;
         }
@@ -541,4 +716,36 @@ public class ParkourCommand extends ViCommand {
             send(sender, "%sPasted schematic %s".formatted(IP.PREFIX, arg3));
         }
     }
-}
\ No newline at end of file
+
+    // finds players by name in the leaderboard of a mode
+    private void search(@NotNull CommandSender sender, @Nullable Player player, @NotNull String name, @NotNull Mode mode) {
+        if (!ParkourOption.LEADERBOARDS.mayPerform(sender) || !cooldown(sender, "search", 1000)) {
+            return;
+        }
+
+        Leaderboard leaderboard = mode.getLeaderboard();
+
+        if (leaderboard == null) {
+            send(sender, "%s%s has no leaderboard".formatted(IP.PREFIX, mode.getName()));
+            return;
+        }
+
+        if (player != null) {
+            Menus.SINGLE_LEADERBOARD.open(player, mode, SingleLeaderboardMenu.Sort.SCORE, name);
+            return;
+        }
+
+        List<UUID> found = leaderboard.getNames().search(name, 10);
+
+        if (found.isEmpty()) {
+            send(sender, "%sNo players found starting with %s".formatted(IP.PREFIX, name));
+            return;
+        }
+
+        for (UUID uuid : found) {
+            Score score = leaderboard.get(uuid);
+
+            send(sender, "%s#%d <gray>%s <dark_gray>- <gray>%d".formatted(IP.PREFIX, leaderboard.getRank(uuid), score.name(), score.score()));
+        }
+    }
+}
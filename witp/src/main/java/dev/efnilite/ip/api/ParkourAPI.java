@@ -1,11 +1,29 @@
 package dev.efnilite.ip.api;
 
+import dev.efnilite.ip.IP;
 import dev.efnilite.ip.api.event.ParkourBlockGenerateEvent;
+import dev.efnilite.ip.leaderboard.Leaderboard;
+import dev.efnilite.ip.leaderboard.RunHistory;
+import dev.efnilite.ip.leaderboard.Score;
+import dev.efnilite.ip.leaderboard.ScoreHistogram;
+import dev.efnilite.ip.leaderboard.WindowedLeaderboard;
+import dev.efnilite.ip.mode.Mode;
 import dev.efnilite.ip.player.ParkourPlayer;
 import dev.efnilite.ip.player.ParkourUser;
+import dev.efnilite.ip.storage.Storage;
+import dev.efnilite.ip.storage.StorageMigration;
+import dev.efnilite.ip.storage.StorageException;
+import dev.efnilite.ip.storage.StorageStats;
 import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
 /**
  * Main API handler.
  * <ul>
@@ -39,4 +57,92 @@ public class ParkourAPI {
     public static @Nullable ParkourUser getUser(Player player) {
         return ParkourUser.getUser(player);
     }
+
+    /**
+     * @param mode The mode.
+     * @return The histogram of all scores of the mode, which only counts {@link Score#score()}, regardless of the sort of the leaderboard.
+     * Null if the mode has no leaderboard.
+     */
+    public static @Nullable ScoreHistogram getHistogram(@NotNull Mode mode) {
+        Leaderboard leaderboard = mode.getLeaderboard();
+
+        return leaderboard != null ? leaderboard.getHistogram() : null;
+    }
+
+    /**
+     * @param mode The mode.
+     * @param uuid The player's uuid.
+     * @return The top percentage of the player's score in the mode, from 0 to 100, by {@link Score#score()}. 0 if not found.
+     */
+    public static double getTopPercentage(@NotNull Mode mode, @NotNull UUID uuid) {
+        Leaderboard leaderboard = mode.getLeaderboard();
+
+        return leaderboard != null ? leaderboard.getTopPercentage(uuid) : 0;
+    }
+
+    /**
+     * @param mode       The mode.
+     * @param percentile The percentile, from 0 to 100.
+     * @return The lowest {@link Score#score()} of the percentile in the mode. 0 if the mode has no leaderboard.
+     */
+    public static int getPercentile(@NotNull Mode mode, int percentile) {
+        Leaderboard leaderboard = mode.getLeaderboard();
+
+        return leaderboard != null ? leaderboard.getPercentile(percentile) : 0;
+    }
+
+    /**
+     * Doesn't read from disk, so runs on disk are only counted once the run history of the mode has been opened in the background.
+     *
+     * @param mode The mode.
+     * @return The amount of finished runs in the mode.
+     */
+    public static int getRunCount(@NotNull Mode mode) {
+        return RunHistory.get(mode.getName()).size();
+    }
+
+    /**
+     * Counts the finished runs per day. Reads from disk, so this should preferably be called asynchronously.
+     *
+     * @param mode The mode.
+     * @param from The first day.
+     * @param to   The last day, inclusive.
+     * @return The amount of runs on every day, in order.
+     */
+    public static Map<LocalDate, Integer> getRunsPerDay(@NotNull Mode mode, @NotNull LocalDate from, @NotNull LocalDate to) {
+        return RunHistory.get(mode.getName()).getRunsPerDay(from, to, WindowedLeaderboard.Period.ZONE);
+    }
+
+    /**
+     * Returns the last finished runs of a player. Reads from disk, so this should preferably be called asynchronously.
+     *
+     * @param mode  The mode.
+     * @param uuid  The player's uuid.
+     * @param limit The maximum amount of runs, e.g. 50.
+     * @return The runs, newest first.
+     */
+    public static List<RunHistory.Run> getLastRuns(@NotNull Mode mode, @NotNull UUID uuid, int limit) {
+        return RunHistory.get(mode.getName()).getLastRuns(uuid, limit);
+    }
+
+    /**
+     * @return The amount of calls, failed calls and the latency of every storage operation, in total and per mode.
+     */
+    public static StorageStats getStorageStats() {
+        return IP.getStorageStats();
+    }
+
+    /**
+     * Copies all players and scores from one storage to another in batches. Blocks until done, so this should be called asynchronously.
+     * If a migration between the same types of storage was stopped, it continues where it left off.
+     *
+     * @param source   The storage to read from, e.g. {@link StorageMigration#create(String)}.
+     * @param target   The storage to write to.
+     * @param listener The consumer of the progress, called after every batch.
+     * @return The final progress.
+     * @throws StorageException If data can't be read or written. The migration continues from the failed batch when it is run again.
+     */
+    public static StorageMigration.Progress migrateStorage(@NotNull Storage source, @NotNull Storage target, @NotNull Consumer<StorageMigration.Progress> listener) {
+        return new StorageMigration(source, target, IP.getInFolder("migration.json")).run(listener);
+    }
 }
@@ -2,6 +2,7 @@ package dev.efnilite.ip.config;
 
 import dev.efnilite.ip.IP;
 import dev.efnilite.ip.api.Registry;
+import dev.efnilite.ip.leaderboard.WindowedLeaderboard;
 import dev.efnilite.ip.menu.ParkourOption;
 import dev.efnilite.ip.session.Session;
 import dev.efnilite.ip.style.Style;
@@ -56,6 +57,17 @@ public class Option {
     public static Location GO_BACK_LOC;
 
     public static int STORAGE_UPDATE_INTERVAL = 30;
+    public static int STORAGE_THREADS;
+    public static boolean EMBEDDED_DATABASE;
+    public static int STORAGE_SLOW_LOG;
+
+    public static int LEADERBOARD_RESIDENT_SIZE;
+    public static int LEADERBOARD_CACHE_SIZE;
+    public static List<WindowedLeaderboard.Period> LEADERBOARD_WINDOWS;
+    public static int LEADERBOARD_WINDOW_RETENTION;
+    public static boolean RUN_HISTORY;
+    public static String LEADERBOARD_FEED_FOLDER;
+    public static boolean LEADERBOARD_BINARY;
 
     public static void init(boolean firstLoad) {
         initSql();
@@ -65,6 +77,29 @@ public class Option {
         initStyles("styles.list", "default", Config.CONFIG.fileConfiguration, (materials, session) -> Colls.random(materials));
 
         STORAGE_UPDATE_INTERVAL = Config.CONFIG.getInt("storage-update-interval");
+        STORAGE_THREADS = Config.CONFIG.getInt("storage-threads");
+        EMBEDDED_DATABASE = Config.CONFIG.getBoolean("embedded-database");
+        STORAGE_SLOW_LOG = Config.CONFIG.getInt("storage-slow-log");
+
+        LEADERBOARD_RESIDENT_SIZE = Config.CONFIG.getInt("leaderboards.resident-size");
+        LEADERBOARD_CACHE_SIZE = Config.CONFIG.getInt("leaderboards.cache-size");
+
+        LEADERBOARD_WINDOWS = new ArrayList<>();
+        for (String name : Config.CONFIG.getStringList("leaderboards.windows")) {
+            WindowedLeaderboard.Period period = WindowedLeaderboard.Period.fromName(name);
+
+            if (period == null) {
+                IP.logging().error("Invalid leaderboard window: %s. Should be daily, weekly or monthly.".formatted(name));
+                continue;
+            }
+
+            LEADERBOARD_WINDOWS.add(period);
+        }
+        LEADERBOARD_WINDOW_RETENTION = Config.CONFIG.getInt("leaderboards.window-retention");
+
+        RUN_HISTORY = Config.CONFIG.getBoolean("leaderboards.run-history");
+        LEADERBOARD_FEED_FOLDER = Config.CONFIG.getString("leaderboards.feed-folder");
+        LEADERBOARD_BINARY = Config.CONFIG.getBoolean("leaderboards.binary");
 
         GO_BACK_LOC = parseLocation(Config.CONFIG.getString("bungeecord.go-back"));
         String[] axes = Config.CONFIG.getString("bungeecord.go-back-axes").split(",");
@@ -221,6 +256,7 @@ public class Option {
     public static String SQL_USERNAME;
     public static String SQL_PASSWORD;
     public static String SQL_PREFIX;
+    public static int SQL_POOL_SIZE;
 
     private static void initSql() {
         SQL_PORT = Config.CONFIG.getInt("sql.port");
@@ -229,6 +265,7 @@ public class Option {
         SQL_USERNAME = Config.CONFIG.getString("sql.username");
         SQL_PASSWORD = Config.CONFIG.getString("sql.password");
         SQL_PREFIX = Config.CONFIG.getString("sql.prefix");
+        SQL_POOL_SIZE = Config.CONFIG.getInt("sql.pool-size");
     }
 
     // --------------------------------------------------------------
@@ -9,6 +9,7 @@ import dev.efnilite.ip.api.event.ParkourScoreEvent;
 import dev.efnilite.ip.config.Config;
 import dev.efnilite.ip.config.Option;
 import dev.efnilite.ip.leaderboard.Leaderboard;
+import dev.efnilite.ip.leaderboard.RunHistory;
 import dev.efnilite.ip.leaderboard.Score;
 import dev.efnilite.ip.menu.Menus;
 import dev.efnilite.ip.mode.Mode;
@@ -366,9 +367,9 @@ public class ParkourGenerator {
             Rewards.INTERVAL_REWARDS.get(interval).forEach(s -> s.execute(player, getMode()));
         }
 
-        if (Rewards.ONE_TIME_REWARDS.containsKey(score) && !player.collectedRewards.contains(Integer.toString(score))) {
+        if (Rewards.ONE_TIME_REWARDS.containsKey(score) && !player.collectedRewards.contains(score)) {
             Rewards.ONE_TIME_REWARDS.get(score).forEach(s -> s.execute(player, getMode()));
-            player.collectedRewards.add(Integer.toString(score));
+            player.collectedRewards.add(score);
         }
     }
 
@@ -535,8 +536,14 @@ public class ParkourGenerator {
             }
         }
 
+        String difficulty = Double.toString(getDifficultyScore()).substring(0, 3);
+
+        if (leaderboard != null && score > 0) {
+            registerRun(time, difficulty, score);
+        }
+
         if (leaderboard != null && score > record) {
-            registerScore(getTime(), Double.toString(getDifficultyScore()).substring(0, 3), score);
+            registerScore(getTime(), difficulty, score);
         }
 
         score = 0;
@@ -563,7 +570,27 @@ public class ParkourGenerator {
             return;
         }
 
-        getPlayers().forEach(player -> leaderboard.put(player.getUUID(), new Score(player.getName(), time, difficulty, score)));
+        getPlayers().forEach(player -> leaderboard.putIfHigher(player.getUUID(), new Score(player.getName(), time, difficulty, score)));
+    }
+
+    protected void registerRun(String time, String difficulty, int score) {
+        Leaderboard leaderboard = getMode().getLeaderboard();
+
+        if (leaderboard == null) {
+            return;
+        }
+
+        getPlayers().forEach(player -> leaderboard.submit(player.getUUID(), new Score(player.getName(), time, difficulty, score)));
+
+        if (!Option.RUN_HISTORY) {
+            return;
+        }
+
+        RunHistory history = RunHistory.get(getMode().getName());
+        long now = System.currentTimeMillis();
+        int duration = start != null ? (int) Duration.between(start, Instant.now()).toMillis() : 0;
+
+        getPlayers().forEach(player -> history.add(new RunHistory.Run(player.getUUID(), now, score, duration, RunHistory.Run.parseDifficulty(difficulty))));
     }
 
     private void deleteSchematic() {
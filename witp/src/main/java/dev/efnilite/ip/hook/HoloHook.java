@@ -4,6 +4,7 @@ import dev.efnilite.ip.IP;
 import dev.efnilite.ip.api.Registry;
 import dev.efnilite.ip.leaderboard.Leaderboard;
 import dev.efnilite.ip.leaderboard.Score;
+import dev.efnilite.ip.leaderboard.WindowedLeaderboard;
 import dev.efnilite.ip.mode.Mode;
 import me.filoghost.holographicdisplays.api.HolographicDisplaysAPI;
 
@@ -30,6 +31,7 @@ public class HoloHook {
             }
 
             // {ip_leaderboard: default, score, #1}
+            // {ip_leaderboard: default, score, #1, daily}
             String[] split = argument.replace(" ", "").split(",");
 
             Mode mode = Registry.getMode(split[0].toLowerCase());
@@ -43,7 +45,15 @@ public class HoloHook {
             String type = split[1].toLowerCase();
             String rank = split[2].replace("#", "");
 
-            Score score = leaderboard.getScoreAtRank(Integer.parseInt(rank));
+            Score score;
+            if (split.length > 3) {
+                WindowedLeaderboard.Period period = WindowedLeaderboard.Period.fromName(split[3]);
+                WindowedLeaderboard window = period != null ? leaderboard.getWindow(period) : null;
+
+                score = window != null ? window.getScoreAtRank(Integer.parseInt(rank)) : null;
+            } else {
+                score = leaderboard.getScoreAtRank(Integer.parseInt(rank));
+            }
 
             if (score == null) {
                 return "?";
@@ -5,6 +5,7 @@ import dev.efnilite.ip.api.Registry;
 import dev.efnilite.ip.generator.ParkourGenerator;
 import dev.efnilite.ip.leaderboard.Leaderboard;
 import dev.efnilite.ip.leaderboard.Score;
+import dev.efnilite.ip.leaderboard.WindowedLeaderboard;
 import dev.efnilite.ip.mode.Mode;
 import dev.efnilite.ip.mode.Modes;
 import dev.efnilite.ip.player.ParkourPlayer;
@@ -13,7 +14,9 @@ import dev.efnilite.ip.player.ParkourUser;
 import me.clip.placeholderapi.expansion.PlaceholderExpansion;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.UUID;
 import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -49,31 +52,54 @@ public class PAPIHook extends PlaceholderExpansion {
 
     @Override
     public String onPlaceholderRequest(Player player, @NotNull String params) {
+        // placeholders for a period start with the period, e.g. daily_score_rank_1
+        WindowedLeaderboard.Period period = null;
+        for (WindowedLeaderboard.Period value : WindowedLeaderboard.Period.values()) {
+            String prefix = "%s_".formatted(value.name().toLowerCase());
+
+            if (params.startsWith(prefix)) {
+                period = value;
+                params = params.substring(prefix.length());
+                break;
+            }
+        }
+
         // placeholders that don't require a player
         switch (params) {
             case "version", "ver" -> {
                 return IP.getPlugin().getDescription().getVersion();
             }
             case "leader", "record_player" -> {
-                Score score = Modes.DEFAULT.getLeaderboard().getScoreAtRank(1);
+                Score score = getScoreAtRank(Modes.DEFAULT.getLeaderboard(), period, 1);
                 return score != null ? score.name() : "?";
             }
             case "leader_score", "record_score", "record" -> {
-                Score score = Modes.DEFAULT.getLeaderboard().getScoreAtRank(1);
+                Score score = getScoreAtRank(Modes.DEFAULT.getLeaderboard(), period, 1);
                 return score != null ? Integer.toString(score.score()) : "?";
             }
+            case "score_count" -> {
+                return Integer.toString(Modes.DEFAULT.getLeaderboard().getHistogram().getTotal());
+            }
+        }
+
+        if (params.startsWith("percentile_")) {
+            try {
+                return Integer.toString(Modes.DEFAULT.getLeaderboard().getPercentile(Integer.parseInt(params.replace("percentile_", ""))));
+            } catch (NumberFormatException ex) {
+                return "";
+            }
         }
 
         if (params.contains("player_rank_")) {
-            return getInfiniteScore(params.replace("player_rank_", ""), Score::name);
+            return getInfiniteScore(params.replace("player_rank_", ""), period, Score::name);
         } else if (params.contains("score_rank_")) {
-            return getInfiniteScore(params.replace("score_rank_", ""), Score::score);
+            return getInfiniteScore(params.replace("score_rank_", ""), period, Score::score);
         } else if (params.contains("time_rank_")) {
-            return getInfiniteScore(params.replace("time_rank_", ""), Score::time);
+            return getInfiniteScore(params.replace("time_rank_", ""), period, Score::time);
         } else if (params.contains("difficulty_rank_")) {
-            return getInfiniteScore(params.replace("difficulty_rank_", ""), Score::difficulty);
+            return getInfiniteScore(params.replace("difficulty_rank_", ""), period, Score::difficulty);
         } else if (params.contains("difficulty_string_rank_")) {
-            return getInfiniteScore(params.replace("difficulty_string_rank_", ""),
+            return getInfiniteScore(params.replace("difficulty_string_rank_", ""), period,
                     score -> parseDifficulty(Double.parseDouble(score.difficulty().contains("?") ? "2" : score.difficulty())));
         }
 
@@ -82,6 +108,10 @@ public class PAPIHook extends PlaceholderExpansion {
             return "player doesn't exist";
         }
 
+        if (params.equals("top_percentage")) {
+            return "%.1f".formatted(Modes.DEFAULT.getLeaderboard().getTopPercentage(player.getUniqueId()));
+        }
+
         ParkourUser user = ParkourUser.getUser(player);
         ParkourPlayer pp = null;
         if (user instanceof ParkourPlayer) {
@@ -118,13 +148,13 @@ public class PAPIHook extends PlaceholderExpansion {
                     return parseDifficulty(pp.schematicDifficulty);
                 }
                 case "rank" -> {
-                    return Integer.toString(Modes.DEFAULT.getLeaderboard().getRank(player.getUniqueId()));
+                    return Integer.toString(getRank(Modes.DEFAULT.getLeaderboard(), period, player.getUniqueId()));
                 }
                 case "highscore", "high_score" -> {
-                    return Integer.toString(Modes.DEFAULT.getLeaderboard().get(player.getUniqueId()).score());
+                    return Integer.toString(get(Modes.DEFAULT.getLeaderboard(), period, player.getUniqueId()).score());
                 }
                 case "high_score_time" -> {
-                    return Modes.DEFAULT.getLeaderboard().get(player.getUniqueId()).time();
+                    return get(Modes.DEFAULT.getLeaderboard(), period, player.getUniqueId()).time();
                 }
                 default -> {
                     if (params.contains("score_until_")) {
@@ -157,7 +187,37 @@ public class PAPIHook extends PlaceholderExpansion {
     }
 
 
-    private String getInfiniteScore(String rankData, Function<Score, ?> f) {
+    // returns the score at a rank of the leaderboard, or of the leaderboard of the period if it isn't null
+    private @Nullable Score getScoreAtRank(Leaderboard leaderboard, @Nullable WindowedLeaderboard.Period period, int rank) {
+        if (period == null) {
+            return leaderboard.getScoreAtRank(rank);
+        }
+
+        WindowedLeaderboard window = leaderboard.getWindow(period);
+        return window != null ? window.getScoreAtRank(rank) : null;
+    }
+
+    // returns the rank of a player in the leaderboard, or in the leaderboard of the period if it isn't null
+    private int getRank(Leaderboard leaderboard, @Nullable WindowedLeaderboard.Period period, UUID uuid) {
+        if (period == null) {
+            return leaderboard.getRank(uuid);
+        }
+
+        WindowedLeaderboard window = leaderboard.getWindow(period);
+        return window != null ? window.getRank(uuid) : 0;
+    }
+
+    // returns the score of a player in the leaderboard, or in the leaderboard of the period if it isn't null
+    private Score get(Leaderboard leaderboard, @Nullable WindowedLeaderboard.Period period, UUID uuid) {
+        if (period == null) {
+            return leaderboard.get(uuid);
+        }
+
+        WindowedLeaderboard window = leaderboard.getWindow(period);
+        return window != null ? window.get(uuid) : new Score("?", "?", "?", 0);
+    }
+
+    private String getInfiniteScore(String rankData, @Nullable WindowedLeaderboard.Period period, Function<Score, ?> f) {
         int rank;
         Leaderboard leaderboard;
         Matcher matcher = INFINITE_REGEX.matcher(rankData);
@@ -182,7 +242,7 @@ public class PAPIHook extends PlaceholderExpansion {
         }
 
         if (rank > 0) {
-            Score score = leaderboard.getScoreAtRank(rank);
+            Score score = getScoreAtRank(leaderboard, period, rank);
 
             if (score == null) {
                 return "?";
@@ -0,0 +1,51 @@
+package dev.efnilite.ip.leaderboard;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.UUID;
+
+/**
+ * Sends changes to leaderboards to other servers, so these don't have to wait until the next read from storage.
+ * Changes are only kept in memory by the receiving server. Storage is still written by the server that made the change.
+ *
+ * @since 5.1.0
+ */
+public interface ChangeFeed {
+
+    /**
+     * Sends a change to all other servers.
+     *
+     * @param mode  The mode.
+     * @param uuid  The player's uuid.
+     * @param score The new score, null if the score has been removed.
+     */
+    void publish(@NotNull String mode, @NotNull UUID uuid, @Nullable Score score);
+
+    /**
+     * Registers the listener of a mode, which receives all changes that other servers make after this call.
+     * The listener is called on the main thread, so changes are applied on the same thread as local changes.
+     *
+     * @param mode     The mode.
+     * @param listener The listener.
+     */
+    void subscribe(@NotNull String mode, @NotNull Listener listener);
+
+    /**
+     * Called on plugin shutdown. Sends all changes that haven't been sent yet.
+     */
+    void close();
+
+    /**
+     * Receives changes made by other servers.
+     */
+    @FunctionalInterface
+    interface Listener {
+
+        /**
+         * @param uuid  The player's uuid.
+         * @param score The new score, null if the score has been removed.
+         */
+        void receive(@NotNull UUID uuid, @Nullable Score score);
+    }
+}
@@ -0,0 +1,346 @@
+package dev.efnilite.ip.leaderboard;
+
+import dev.efnilite.ip.IP;
+import dev.efnilite.ip.storage.AsyncStorage;
+import dev.efnilite.vilib.util.Task;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ChangeFeed} through a folder which is shared by all servers on the same machine.
+ * Every mode has an append-only file, to which every change is appended as a single line.
+ * Every server remembers how far it has read every file and reads the new lines a few times per second.
+ * Received changes are passed to the listeners on the main thread.
+ * When a file gets too large, a new one is started. Every server stores the file it is reading in a cursor file,
+ * and old files are only deleted once every server has moved past them. Servers whose cursor hasn't been
+ * updated for {@link #CURSOR_TIMEOUT} milliseconds are considered stopped.
+ *
+ * @since 5.1.0
+ */
+public final class FileChangeFeed implements ChangeFeed {
+
+    /**
+     * The size in bytes after which a new file is started.
+     */
+    public static final long MAX_SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * The interval in ticks at which changes are sent and received.
+     */
+    public static final int INTERVAL = 5;
+
+    /**
+     * The time in milliseconds after which the cursor of a server that hasn't updated it is ignored and removed.
+     */
+    public static final long CURSOR_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+
+    // the time in milliseconds after which a cursor that hasn't changed is updated, so it doesn't time out
+    private static final long CURSOR_REFRESH = TimeUnit.MINUTES.toMillis(1);
+
+    private static final String SEPARATOR = "\t";
+    private static final String REMOVED = "-";
+
+    private final File folder;
+
+    // used to ignore changes made by this server
+    private final String server = UUID.randomUUID().toString();
+
+    private final Queue<Change> outgoing = new ConcurrentLinkedQueue<>();
+    private final Map<String, Reader> readers = new ConcurrentHashMap<>();
+
+    // the file to which every mode is currently written
+    private final Map<String, Integer> writing = new HashMap<>();
+
+    private volatile boolean closed;
+
+    public FileChangeFeed(@NotNull File folder) {
+        this.folder = folder;
+
+        folder.mkdirs();
+
+        Task.create(IP.getPlugin())
+                .repeat(INTERVAL)
+                .async()
+                .execute(this::poll)
+                .run();
+    }
+
+    @Override
+    public void publish(@NotNull String mode, @NotNull UUID uuid, @Nullable Score score) {
+        outgoing.add(new Change(mode.toLowerCase(), uuid, score));
+    }
+
+    @Override
+    public void subscribe(@NotNull String mode, @NotNull Listener listener) {
+        String name = mode.toLowerCase();
+        int segment = getLatest(name);
+
+        // changes from before this call are already in storage
+        Reader reader = new Reader(listener, segment, getSegment(name, segment).length());
+
+        readers.put(name, reader);
+        writeCursor(name, reader);
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        write();
+
+        readers.keySet().forEach(mode -> getCursor(mode, server).delete());
+    }
+
+    private synchronized void poll() {
+        if (closed) {
+            return;
+        }
+
+        write();
+
+        List<Runnable> received = new ArrayList<>();
+        readers.forEach((mode, reader) -> read(mode, reader, received));
+
+        // leaderboards are changed on the main thread
+        if (!received.isEmpty()) {
+            AsyncStorage.MAIN.execute(() -> received.forEach(Runnable::run));
+        }
+    }
+
+    // appends all outgoing changes
+    private void write() {
+        Map<String, StringBuilder> lines = new HashMap<>();
+
+        Change change;
+        while ((change = outgoing.poll()) != null) {
+            lines.computeIfAbsent(change.mode, k -> new StringBuilder())
+                    .append(server).append(SEPARATOR)
+                    .append(change.uuid).append(SEPARATOR)
+                    .append(change.score != null ? change.score.toString() : REMOVED).append('\n');
+        }
+
+        lines.forEach((mode, text) -> {
+            // other servers may write at the same time
+            try (FileChannel lockChannel = FileChannel.open(new File(folder, "%s.lock".formatted(mode)).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock ignored = lockChannel.lock()) {
+
+                int segment = writing.computeIfAbsent(mode, this::getLatest);
+                while (getSegment(mode, segment + 1).exists()) {
+                    segment++;
+                }
+
+                if (getSegment(mode, segment).length() > MAX_SEGMENT_SIZE) {
+                    segment++;
+                    delete(mode, segment);
+                }
+                writing.put(mode, segment);
+
+                try (FileChannel channel = FileChannel.open(getSegment(mode, segment).toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                    channel.write(ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8)));
+                }
+            } catch (IOException ex) {
+                IP.logging().stack("Error while trying to write to change feed of %s".formatted(mode), ex);
+            }
+        });
+    }
+
+    // deletes the files that every server that is still running has finished reading, called while holding the lock of the mode
+    private void delete(String mode, int segment) {
+        int oldest = segment;
+        String[] names = folder.list();
+
+        if (names == null) {
+            return;
+        }
+
+        String prefix = "%s.".formatted(mode);
+        for (String name : names) {
+            if (!name.startsWith(prefix) || !name.endsWith(".cursor")) {
+                continue;
+            }
+
+            File cursor = new File(folder, name);
+
+            if (System.currentTimeMillis() - cursor.lastModified() > CURSOR_TIMEOUT) {
+                cursor.delete();
+                continue;
+            }
+
+            try {
+                oldest = Math.min(oldest, Integer.parseInt(Files.readString(cursor.toPath()).trim()));
+            } catch (IOException | NumberFormatException ex) {
+                // a cursor that is being written is read again on the next rollover
+                return;
+            }
+        }
+
+        for (String name : names) {
+            if (!name.startsWith(prefix) || !name.endsWith(".feed")) {
+                continue;
+            }
+
+            try {
+                if (Integer.parseInt(name.substring(prefix.length(), name.length() - ".feed".length())) < oldest) {
+                    new File(folder, name).delete();
+                }
+            } catch (NumberFormatException ignored) {
+
+            }
+        }
+    }
+
+    // reads all new changes of a mode
+    private void read(String mode, Reader reader, List<Runnable> received) {
+        while (true) {
+            // once the next file exists, nothing is written to the current one anymore
+            boolean next = getSegment(mode, reader.segment + 1).exists();
+            File file = getSegment(mode, reader.segment);
+
+            if (file.exists()) {
+                read(mode, reader, file, received);
+            }
+
+            if (!next) {
+                break;
+            }
+
+            reader.segment++;
+            reader.offset = 0;
+            writeCursor(mode, reader);
+        }
+
+        if (System.currentTimeMillis() - reader.updated > CURSOR_REFRESH) {
+            writeCursor(mode, reader);
+        }
+    }
+
+    // stores which file a server is reading, so other servers don't delete it
+    private void writeCursor(String mode, Reader reader) {
+        File cursor = getCursor(mode, server);
+
+        try {
+            Files.writeString(cursor.toPath(), Integer.toString(reader.segment));
+            reader.updated = System.currentTimeMillis();
+        } catch (IOException ex) {
+            IP.logging().stack("Error while trying to write change feed cursor %s".formatted(cursor), ex);
+        }
+    }
+
+    private void read(String mode, Reader reader, File file, List<Runnable> received) {
+        long length = file.length();
+
+        if (length <= reader.offset) {
+            return;
+        }
+
+        byte[] bytes = new byte[(int) (length - reader.offset)];
+        try (RandomAccessFile access = new RandomAccessFile(file, "r")) {
+            access.seek(reader.offset);
+            access.readFully(bytes);
+        } catch (IOException ex) {
+            IP.logging().stack("Error while trying to read change feed of %s".formatted(mode), ex);
+            return;
+        }
+
+        // only read complete lines, the rest may still be being written
+        int end = bytes.length;
+        while (end > 0 && bytes[end - 1] != '\n') {
+            end--;
+        }
+        reader.offset += end;
+
+        for (String line : new String(bytes, 0, end, StandardCharsets.UTF_8).split("\n")) {
+            String[] parts = line.split(SEPARATOR);
+
+            if (parts.length != 3 || parts[0].equals(server)) {
+                continue;
+            }
+
+            try {
+                UUID uuid = UUID.fromString(parts[1]);
+                Score score = parts[2].equals(REMOVED) ? null : Score.fromString(parts[2]);
+
+                received.add(() -> {
+                    try {
+                        reader.listener.receive(uuid, score);
+                    } catch (Exception ex) {
+                        IP.logging().stack("Error while trying to apply change %s from change feed of %s".formatted(line, mode), ex);
+                    }
+                });
+            } catch (Exception ex) {
+                IP.logging().stack("Error while trying to read change %s from change feed of %s".formatted(line, mode), ex);
+            }
+        }
+    }
+
+    // returns the number of the last file of a mode
+    private int getLatest(String mode) {
+        String[] names = folder.list();
+        int latest = 0;
+
+        if (names == null) {
+            return latest;
+        }
+
+        String prefix = "%s.".formatted(mode);
+        for (String name : names) {
+            if (!name.startsWith(prefix) || !name.endsWith(".feed")) {
+                continue;
+            }
+
+            try {
+                latest = Math.max(latest, Integer.parseInt(name.substring(prefix.length(), name.length() - ".feed".length())));
+            } catch (NumberFormatException ignored) {
+
+            }
+        }
+
+        return latest;
+    }
+
+    private File getSegment(String mode, int segment) {
+        return new File(folder, "%s.%d.feed".formatted(mode, segment));
+    }
+
+    private File getCursor(String mode, String server) {
+        return new File(folder, "%s.%s.cursor".formatted(mode, server));
+    }
+
+    private record Change(String mode, UUID uuid, @Nullable Score score) {
+
+    }
+
+    /**
+     * The position up to which a server has read the changes of a mode.
+     */
+    private static class Reader {
+
+        private final Listener listener;
+        private int segment;
+        private long offset;
+
+        // the time in millis at which the cursor was last written
+        private long updated;
+
+        private Reader(Listener listener, int segment, long offset) {
+            this.listener = listener;
+            this.segment = segment;
+            this.offset = offset;
+        }
+    }
+}
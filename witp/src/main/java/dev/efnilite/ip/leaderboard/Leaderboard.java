@@ -3,11 +3,16 @@ package dev.efnilite.ip.leaderboard;
 import dev.efnilite.ip.IP;
 import dev.efnilite.ip.config.Option;
 import dev.efnilite.ip.menu.community.SingleLeaderboardMenu;
+import dev.efnilite.ip.storage.AsyncStorage;
+import dev.efnilite.ip.storage.Storage;
+import dev.efnilite.ip.storage.StorageStats;
 import dev.efnilite.vilib.util.Task;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 /**
  * Class for handling leaderboards.
@@ -25,16 +30,83 @@ public class Leaderboard {
     public final SingleLeaderboardMenu.Sort sort;
 
     /**
-     * A map of all scores for this mode
+     * The maximum amount of top scores kept in {@link #scores}. If 0, every score is kept in memory.
      */
-    public final Map<UUID, Score> scores = new LinkedHashMap<>();
+    public final int residentSize;
+
+    // all scores, sorted from best to worst
+    private final Ranking ranking;
+
+    /**
+     * A read-only map of all scores for this mode, unsorted. If {@link #residentSize} is above 0, this only contains the top scores.
+     * For sorted scores, use {@link #range(int, int)}, {@link #page(SingleLeaderboardMenu.Sort, int, int)} or {@link #around(UUID, int)}.
+     */
+    public final Map<UUID, Score> scores;
+
+    // all scores, including the ones that are not in memory
+    private final ScoreHistogram histogram = new ScoreHistogram();
+
+    // the names of all players, including the ones that are not in memory
+    private final NameIndex names = new NameIndex();
+
+    // the version of the stored scores at the last read, used to only read changes
+    private volatile long version;
+
+    /**
+     * The leaderboards with the best scores per period, like today or this week.
+     */
+    private final Map<WindowedLeaderboard.Period, WindowedLeaderboard> windows = new EnumMap<>(WindowedLeaderboard.Period.class);
+
+    // the players that are online, kept here since lookups are evicted on storage threads, where Bukkit can't be used
+    private static final Set<UUID> online = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Scores and ranks of players outside the resident top scores, fetched lazily from storage.
+     * Entries of online players are never evicted, so the least recently used entry of an offline player is evicted instead.
+     */
+    private final Map<UUID, Lookup> lookups = Collections.synchronizedMap(new LinkedHashMap<UUID, Lookup>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, Lookup> eldest) {
+            if (size() <= Option.LEADERBOARD_CACHE_SIZE) {
+                return false;
+            }
+
+            Iterator<UUID> iterator = keySet().iterator();
+            while (iterator.hasNext()) {
+                if (!online.contains(iterator.next())) {
+                    iterator.remove();
+                    break;
+                }
+            }
+
+            // the entry has already been removed
+            return false;
+        }
+    });
+
+    // the uuids that are currently being fetched from storage
+    private final Set<UUID> pending = ConcurrentHashMap.newKeySet();
+
+    // the scores that have been changed or removed since the last write
+    private final Map<UUID, Score> changed = new ConcurrentHashMap<>();
+    private final Set<UUID> removed = ConcurrentHashMap.newKeySet();
 
     public Leaderboard(@NotNull String mode, SingleLeaderboardMenu.Sort sort) {
         this.mode = mode.toLowerCase();
         this.sort = sort;
+        this.residentSize = Math.max(0, Option.LEADERBOARD_RESIDENT_SIZE);
+        this.ranking = new Ranking(sort);
+        this.scores = Collections.unmodifiableMap(ranking.getScores());
+
+        Option.LEADERBOARD_WINDOWS.forEach(period -> windows.put(period, new WindowedLeaderboard(this.mode, period, sort)));
 
         IP.getStorage().init(mode);
 
+        ChangeFeed feed = IP.getFeed();
+        if (feed != null) {
+            feed.subscribe(this.mode, this::receive);
+        }
+
         // read all data
         read(true);
 
@@ -48,46 +120,239 @@ public class Leaderboard {
     }
 
     /**
-     * Writes all scores to the leaderboard file associated with this leaderboard
+     * Marks a player as online, so their scores and ranks aren't evicted from the lookups while they play.
+     *
+     * @param uuid The uuid of the player who joined.
+     */
+    public static void join(@NotNull UUID uuid) {
+        online.add(uuid);
+    }
+
+    /**
+     * Marks a player as offline, see {@link #join(UUID)}.
+     *
+     * @param uuid The uuid of the player who left.
+     */
+    public static void quit(@NotNull UUID uuid) {
+        online.remove(uuid);
+    }
+
+    /**
+     * @param sort The sort.
+     * @return The comparator which orders scores from best to worst for the provided sort, see {@link SingleLeaderboardMenu.Sort#comparator()}.
+     */
+    public static Comparator<Score> comparator(@NotNull SingleLeaderboardMenu.Sort sort) {
+        return sort.comparator();
+    }
+
+    /**
+     * @return True when only the top {@link #residentSize} scores are kept in memory, false if all are.
+     */
+    public boolean isBounded() {
+        return residentSize > 0;
+    }
+
+    /**
+     * Writes all scores to the leaderboard file associated with this leaderboard.
+     * If this leaderboard is bounded, only the changes since the last write are written.
+     * Changes that can't be written are written again with the next write.
      */
     public void write(boolean async) {
-        run(() -> IP.getStorage().writeScores(mode, scores), async);
+        run(() -> {
+            windows.values().forEach(WindowedLeaderboard::write);
+
+            if (changed.isEmpty() && removed.isEmpty()) {
+                return;
+            }
+
+            Map<UUID, Score> changedSnapshot = new HashMap<>(changed);
+            Set<UUID> removedSnapshot = new HashSet<>(removed);
+
+            changedSnapshot.forEach(changed::remove);
+            removed.removeAll(removedSnapshot);
+
+            boolean outer = StorageStats.begin();
+            boolean failed = true;
+
+            try {
+                if (!isBounded()) {
+                    Map<UUID, Score> sorted = new LinkedHashMap<>();
+                    range(1, size()).forEach(entry -> sorted.put(entry.getKey(), entry.getValue()));
+
+                    IP.getStorage().writeScores(mode, sorted);
+
+                    // writing all scores doesn't delete removed scores in every storage type
+                    if (!removedSnapshot.isEmpty()) {
+                        IP.getStorage().updateScores(mode, Collections.emptyMap(), removedSnapshot);
+                    }
+                } else {
+                    IP.getStorage().updateScores(mode, changedSnapshot, removedSnapshot);
+                }
+
+                failed = StorageStats.end(outer);
+            } finally {
+                if (failed) {
+                    restore(changedSnapshot, removedSnapshot);
+                }
+            }
+
+            if (failed) {
+                return;
+            }
+
+            // fill up the places of the removed scores
+            if (isBounded() && !removedSnapshot.isEmpty()) {
+                readResident();
+            }
+        }, async);
+    }
+
+    // storage logs failed writes instead of throwing these, so changes that weren't written are written again with the next write,
+    // unless the player's score has changed again in the meantime
+    private void restore(Map<UUID, Score> changedSnapshot, Set<UUID> removedSnapshot) {
+        changedSnapshot.forEach((uuid, score) -> {
+            if (!removed.contains(uuid)) {
+                changed.putIfAbsent(uuid, score);
+            }
+        });
+        removedSnapshot.forEach(uuid -> {
+            if (!changed.containsKey(uuid)) {
+                removed.add(uuid);
+            }
+        });
     }
 
     /**
-     * Reads all scores from the leaderboard file
+     * Reads the scores that have changed since the last read from storage.
+     * If this leaderboard is bounded, only the top scores are kept in memory.
      */
     public void read(boolean async) {
         run(() -> {
-            scores.clear();
-            scores.putAll(IP.getStorage().readScores(mode));
+            windows.values().forEach(WindowedLeaderboard::read);
+
+            Rows rows = new Rows();
+            Storage.Changes changes = IP.getStorage().readChanges(mode, version, sort, (uuid, score) -> {
+                // local changes that haven't been written yet are added afterwards
+                if (!changed.containsKey(uuid) && !removed.contains(uuid)) {
+                    rows.add(uuid, score);
+                }
+            });
 
-            sort();
+            if (changes.complete()) {
+                replace(rows);
+            } else {
+                merge(changes.scores(), changes.removed());
+            }
+
+            version = changes.version();
         }, async);
     }
 
+    // replaces all scores with streamed rows, which don't contain local changes
+    private void replace(Rows rows) {
+        // a few changes in an unbounded leaderboard are merged instead
+        if (!isBounded() && ranking.size() > 0) {
+            Map<UUID, Score> read = new HashMap<>(rows.kept.size());
+            rows.kept.forEach(entry -> read.put(entry.getKey(), entry.getValue()));
+
+            replace(read);
+            return;
+        }
+
+        changed.forEach(rows::add);
+
+        histogram.reset(rows.histogram);
+        names.reset(rows.names);
+        ranking.replace(new ArrayList<>(rows.kept), residentSize);
+    }
+
+    // replaces all scores, keeping local changes that haven't been written yet
+    private void replace(Map<UUID, Score> all) {
+        Map<UUID, Score> read = new HashMap<>(all);
+
+        read.keySet().removeAll(removed);
+        read.putAll(changed);
+
+        if (!isBounded() && ranking.size() > 0) {
+            Map<UUID, Score> updated = new HashMap<>();
+            Set<UUID> gone = new HashSet<>();
+
+            read.forEach((uuid, score) -> {
+                if (!score.equals(ranking.getScores().get(uuid))) {
+                    updated.put(uuid, score);
+                }
+            });
+            ranking.getScores().keySet().forEach(uuid -> {
+                if (!read.containsKey(uuid)) {
+                    gone.add(uuid);
+                }
+            });
+
+            // inserting a few scores is cheaper than sorting all of them again
+            if (updated.size() + gone.size() <= Math.max(16, read.size() / 16)) {
+                merge(updated, gone);
+                return;
+            }
+        }
+
+        histogram.reset(read.values());
+        names.reset(read);
+
+        if (!isBounded()) {
+            ranking.replace(read);
+            return;
+        }
+
+        ranking.replace(read.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue(comparator(sort)))
+                .limit(residentSize)
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+    }
+
+    // applies changes made by other servers, keeping local changes that haven't been written yet
+    private void merge(Map<UUID, Score> updated, Set<UUID> gone) {
+        updated.forEach((uuid, score) -> {
+            if (!changed.containsKey(uuid) && !removed.contains(uuid)) {
+                apply(uuid, score);
+            }
+        });
+        gone.forEach(uuid -> {
+            if (!changed.containsKey(uuid)) {
+                discard(uuid);
+            }
+        });
+
+        trim();
+    }
+
+    // reads the top scores, keeping local changes that haven't been written yet
+    private void readResident() {
+        Map<UUID, Score> read = new HashMap<>(IP.getStorage().readScores(mode, sort, residentSize));
+
+        read.keySet().removeAll(removed);
+        read.putAll(changed);
+
+        ranking.replace(read);
+        trim();
+    }
+
     private void run(Runnable runnable, boolean async) {
         if (async) {
-            Task.create(IP.getPlugin()).async().execute(runnable).run();
+            IP.getAsyncStorage().run(runnable);
         } else {
             runnable.run();
         }
     }
 
-    // sorts all scores in the map
-    private void sort() {
-        LinkedHashMap<UUID, Score> sorted = new LinkedHashMap<>();
-
-        scores.entrySet().stream()
-                .sorted((one, two) -> switch (sort) {
-                    case SCORE -> two.getValue().score() - one.getValue().score();
-                    case TIME -> two.getValue().getTimeMillis() - one.getValue().getTimeMillis();
-                    case DIFFICULTY -> (int) Math.signum(Double.parseDouble(two.getValue().difficulty()) - Double.parseDouble(one.getValue().difficulty()));
-                })
-                .forEachOrdered(entry -> sorted.put(entry.getKey(), entry.getValue()));
+    // moves the scores that no longer fit in the resident top scores to the lookups
+    private void trim() {
+        if (!isBounded()) {
+            return;
+        }
 
-        scores.clear();
-        scores.putAll(sorted);
+        for (Map.Entry<UUID, Score> entry : ranking.trim(residentSize)) {
+            lookups.put(entry.getKey(), new Lookup(entry.getValue(), 0, 0));
+        }
     }
 
     /**
@@ -99,13 +364,132 @@ public class Leaderboard {
      */
     @Nullable
     public Score put(@NotNull UUID uuid, @NotNull Score score) {
-        Score previous = scores.put(uuid, score);
+        Score previous = apply(uuid, score);
 
-        sort();
+        changed.put(uuid, score);
+        removed.remove(uuid);
+
+        trim();
+        publish(uuid, score);
 
         return previous;
     }
 
+    /**
+     * Registers a new score if it is higher than the player's best score.
+     * If this leaderboard is bounded and the player's best score is not in memory, e.g. because it is still being fetched,
+     * the stored score is read first, so a lower score never replaces a higher stored one.
+     *
+     * @param uuid  The player's uuid
+     * @param score The {@link Score} instance associated with a player's run
+     */
+    public void putIfHigher(@NotNull UUID uuid, @NotNull Score score) {
+        if (!isBounded() || scores.containsKey(uuid) || changed.containsKey(uuid) || removed.contains(uuid) || lookups.containsKey(uuid)) {
+            putIfHigher(uuid, score, getBest(uuid));
+            return;
+        }
+
+        IP.getAsyncStorage().readScore(mode, uuid)
+                .thenAcceptAsync(stored -> {
+                    // the best score may have become known while the stored score was read
+                    Score best = getBest(uuid);
+
+                    putIfHigher(uuid, score, best != null ? best : stored);
+                }, AsyncStorage.MAIN);
+    }
+
+    private void putIfHigher(UUID uuid, Score score, @Nullable Score best) {
+        if (best == null || score.score() > best.score()) {
+            put(uuid, score);
+        }
+    }
+
+    // the best score in memory, or null if it isn't known
+    private @Nullable Score getBest(UUID uuid) {
+        Score score = changed.get(uuid);
+
+        if (score == null && !removed.contains(uuid)) {
+            score = scores.get(uuid);
+        }
+        if (score == null && !removed.contains(uuid)) {
+            Lookup lookup = lookups.get(uuid);
+            score = lookup != null ? lookup.score : null;
+        }
+
+        return score;
+    }
+
+    // sends a local change to other servers
+    private void publish(@NotNull UUID uuid, @Nullable Score score) {
+        ChangeFeed feed = IP.getFeed();
+
+        if (feed != null) {
+            feed.publish(mode, uuid, score);
+        }
+    }
+
+    // applies a change made by another server
+    private void receive(@NotNull UUID uuid, @Nullable Score score) {
+        if (score != null) {
+            merge(Map.of(uuid, score), Collections.emptySet());
+        } else {
+            merge(Collections.emptyMap(), Set.of(uuid));
+        }
+    }
+
+    // registers a score in memory, without marking it as changed
+    private @Nullable Score apply(@NotNull UUID uuid, @NotNull Score score) {
+        Lookup lookup = lookups.remove(uuid);
+        Score previous = ranking.put(uuid, score);
+
+        if (previous == null && lookup != null) {
+            previous = lookup.score;
+        }
+
+        if (previous != null) {
+            histogram.replace(previous.score(), score.score());
+        } else if (isBounded() && lookup == null) {
+            recount(uuid, score);
+        } else {
+            histogram.add(score.score());
+        }
+        names.put(uuid, score.name());
+
+        return previous;
+    }
+
+    // the stored score of a player that isn't in memory was counted when all scores were read, so it is replaced once it is known
+    private void recount(@NotNull UUID uuid, @Nullable Score score) {
+        IP.getAsyncStorage().readScore(mode, uuid).thenAccept(stored -> {
+            if (stored != null && score != null) {
+                histogram.replace(stored.score(), score.score());
+            } else if (stored != null) {
+                histogram.remove(stored.score());
+            } else if (score != null) {
+                histogram.add(score.score());
+            }
+        });
+    }
+
+    /**
+     * Registers the score of a finished run in every windowed leaderboard, if it beats the player's score in that period.
+     *
+     * @param uuid  The player's uuid
+     * @param score The {@link Score} instance associated with a player's run
+     */
+    public void submit(@NotNull UUID uuid, @NotNull Score score) {
+        windows.values().forEach(window -> window.put(uuid, score));
+    }
+
+    /**
+     * @param period The period.
+     * @return The leaderboard with the best scores in the current period, null if this period is disabled.
+     */
+    @Nullable
+    public WindowedLeaderboard getWindow(@NotNull WindowedLeaderboard.Period period) {
+        return windows.get(period);
+    }
+
     /**
      * Resets the score of a player by deleting it from the internal map
      *
@@ -114,7 +498,34 @@ public class Leaderboard {
      */
     @Nullable
     public Score remove(@NotNull UUID uuid) {
-        return scores.remove(uuid);
+        Score previous = discard(uuid);
+
+        changed.remove(uuid);
+        removed.add(uuid);
+
+        windows.values().forEach(window -> window.remove(uuid));
+        publish(uuid, null);
+
+        return previous;
+    }
+
+    // removes a score from memory, without marking it as removed
+    private @Nullable Score discard(@NotNull UUID uuid) {
+        Lookup lookup = lookups.remove(uuid);
+        Score previous = ranking.remove(uuid);
+
+        if (previous == null && lookup != null) {
+            previous = lookup.score;
+        }
+
+        if (previous != null) {
+            histogram.remove(previous.score());
+        } else if (isBounded() && lookup == null) {
+            recount(uuid, null);
+        }
+        names.remove(uuid);
+
+        return previous;
     }
 
     /**
@@ -122,38 +533,253 @@ public class Leaderboard {
      */
     public void resetAll() {
         new HashSet<>(scores.keySet()).forEach(this::remove);
+        Set<UUID> looked;
+        synchronized (lookups) {
+            looked = new HashSet<>(lookups.keySet());
+        }
+        looked.forEach(this::remove);
+
+        windows.values().forEach(window -> new HashSet<>(window.getScores().keySet()).forEach(window::remove));
+
+        histogram.reset(Collections.emptyList());
+        names.reset(Collections.emptyMap());
+
+        // scores that aren't in memory are removed once these have been read
+        if (isBounded()) {
+            IP.getAsyncStorage().readScores(mode)
+                    .thenAcceptAsync(stored -> stored.keySet().forEach(this::remove), AsyncStorage.MAIN);
+        }
+    }
+
+    /**
+     * Starts fetching the score and rank of a player from storage, if these are not in memory.
+     * Used to make sure the scores of players that join are available when they are needed.
+     *
+     * @param uuid The uuid.
+     */
+    public void prefetch(@NotNull UUID uuid) {
+        if (isBounded() && !scores.containsKey(uuid)) {
+            lookup(uuid);
+        }
     }
 
     /**
      * @param uuid The {@link UUID} to get.
      * @return The {@link Score} associated with the player. If null, returns a {@link Score} instance with "?".
+     * If this leaderboard is bounded and the score is not in memory, the score is fetched in the background.
      */
     @NotNull
     public Score get(@NotNull UUID uuid) {
-        return scores.getOrDefault(uuid, new Score("?", "?", "?", 0));
+        Score score = scores.get(uuid);
+
+        if (score == null && isBounded()) {
+            Lookup lookup = lookup(uuid);
+
+            score = lookup != null ? lookup.score : null;
+        }
+
+        return score != null ? score : new Score("?", "?", "?", 0);
     }
 
     /**
      * @param uuid The uuid
      * @return The rank. Starts from 1. Returns 0 if no ranking is found.
+     * If this leaderboard is bounded and the rank is not in memory, the rank is fetched in the background.
      */
     public int getRank(@NotNull UUID uuid) {
-        return new ArrayList<>(scores.keySet()).indexOf(uuid) + 1;
+        int rank = ranking.getRank(uuid);
+
+        if (rank == 0 && isBounded()) {
+            Lookup lookup = lookup(uuid);
+
+            return lookup != null ? lookup.rank : 0;
+        }
+
+        return rank;
     }
 
     /**
      * Gets the score at a specified rank.
-     * Ranks start at 1.
+     * Ranks start at 1. If this leaderboard is bounded, only ranks up to {@link #residentSize} are available.
      *
      * @param rank The rank
      * @return the {@link Score} instance, null if one isn't found
      */
     @Nullable
     public Score getScoreAtRank(int rank) {
-        if (scores.size() < rank) {
-            return null;
+        return ranking.getScoreAtRank(rank);
+    }
+
+    /**
+     * @return The histogram of all scores in this mode, including the ones which are not in memory.
+     * This counts {@link Score#score()}, regardless of {@link #sort}.
+     */
+    public ScoreHistogram getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * @return The names of all players in this mode, including the ones which are not in memory.
+     */
+    public NameIndex getNames() {
+        return names;
+    }
+
+    /**
+     * Returns the top percentage of a player's score. For example, the best player out of 200 players is in the top 0.5%.
+     * Ties count as better, and scores above {@link ScoreHistogram#LINEAR} are grouped, so this may differ slightly from the rank.
+     * This compares {@link Score#score()}, so it doesn't match the rank of a leaderboard that is sorted by time or difficulty.
+     *
+     * @param uuid The uuid.
+     * @return The top percentage, from 0 to 100. 0 if the player has no score.
+     */
+    public double getTopPercentage(@NotNull UUID uuid) {
+        Score score = ranking.getScores().get(uuid);
+
+        if (score == null && isBounded()) {
+            Lookup lookup = lookup(uuid);
+
+            score = lookup != null ? lookup.score : null;
         }
 
-        return new ArrayList<>(scores.values()).get(rank - 1);
+        return score != null ? histogram.getTopPercentage(score.score()) : 0;
+    }
+
+    /**
+     * @param percentile The percentile, from 0 to 100.
+     * @return The lowest {@link Score#score()} of the percentile, regardless of {@link #sort}.
+     * For example, 90 returns the score which is better than 90% of the scores.
+     */
+    public int getPercentile(int percentile) {
+        return histogram.getPercentile(percentile);
+    }
+
+    /**
+     * @return A number that changes every time the scores in memory change, used to find out whether cached views are outdated.
+     */
+    public long getRevision() {
+        return ranking.getRevision();
+    }
+
+    /**
+     * @return The amount of scores in memory.
+     */
+    public int size() {
+        return ranking.size();
+    }
+
+    /**
+     * Gets the scores between two ranks.
+     *
+     * @param from The first rank, starting from 1.
+     * @param to   The last rank, inclusive.
+     * @return A read-only copy of the scores from the first to the last rank, best first.
+     * Ranks which don't exist are left out.
+     */
+    public List<Map.Entry<UUID, Score>> range(int from, int to) {
+        return ranking.range(from, to);
+    }
+
+    /**
+     * Gets a page of scores.
+     *
+     * @param sort  The sort, which determines the order, see {@link SingleLeaderboardMenu.Sort#comparator()}.
+     * @param index The page index, starting from 0.
+     * @param size  The amount of scores per page.
+     * @return A read-only copy of the scores on the page.
+     */
+    public List<Map.Entry<UUID, Score>> page(@NotNull SingleLeaderboardMenu.Sort sort, int index, int size) {
+        return ranking.page(sort, index, size);
+    }
+
+    /**
+     * Gets the scores around the score of a player.
+     *
+     * @param uuid   The player's uuid.
+     * @param radius The amount of ranks above and below the player.
+     * @return A read-only copy of the scores around the player, best first. Empty if the player's score is not in memory.
+     */
+    public List<Map.Entry<UUID, Score>> around(@NotNull UUID uuid, int radius) {
+        int rank = ranking.getRank(uuid);
+
+        if (rank == 0) {
+            return Collections.emptyList();
+        }
+
+        return ranking.range(rank - radius, rank + radius);
+    }
+
+    // returns the cached lookup, and fetches it if it's missing or outdated
+    private @Nullable Lookup lookup(@NotNull UUID uuid) {
+        Lookup lookup = lookups.get(uuid);
+
+        if (lookup == null || lookup.isExpired()) {
+            fetch(uuid);
+        }
+
+        return lookup;
+    }
+
+    // fetches the score and rank of a player asynchronously
+    private void fetch(@NotNull UUID uuid) {
+        if (!pending.add(uuid)) {
+            return;
+        }
+
+        run(() -> {
+            try {
+                Score score = changed.get(uuid);
+
+                if (score == null && !removed.contains(uuid)) {
+                    score = IP.getStorage().readScore(mode, uuid);
+                }
+
+                int rank = score != null ? IP.getStorage().readRank(mode, sort, score) : 0;
+
+                if (!ranking.getScores().containsKey(uuid)) {
+                    lookups.put(uuid, new Lookup(score, rank, System.currentTimeMillis()));
+                }
+            } finally {
+                pending.remove(uuid);
+            }
+        }, true);
+    }
+
+    /**
+     * A score and rank fetched from storage.
+     *
+     * @param score   The score, null if the player has no score.
+     * @param rank    The rank, 0 if unknown.
+     * @param fetched The time in millis at which this was fetched, 0 if it still has to be fetched.
+     */
+    private record Lookup(@Nullable Score score, int rank, long fetched) {
+
+        // ranks change over time, so fetch again after every storage update
+        boolean isExpired() {
+            return System.currentTimeMillis() - fetched > Option.STORAGE_UPDATE_INTERVAL * 1000L;
+        }
+    }
+
+    // the rows of a complete read, which are counted in the histogram and name index as they are read,
+    // so only the rows that are kept in memory are collected
+    private final class Rows {
+
+        final ScoreHistogram histogram = new ScoreHistogram();
+        final NameIndex names = new NameIndex();
+
+        // all rows if unbounded, otherwise the best rows with the worst one first
+        final Collection<Map.Entry<UUID, Score>> kept = isBounded()
+                ? new PriorityQueue<>(residentSize + 1, Map.Entry.<UUID, Score>comparingByValue(comparator(sort)).reversed())
+                : new ArrayList<>();
+
+        void add(UUID uuid, Score score) {
+            histogram.count(score.score());
+            names.put(uuid, score.name());
+            kept.add(Map.entry(uuid, score));
+
+            if (kept.size() > residentSize && kept instanceof PriorityQueue<Map.Entry<UUID, Score>> best) {
+                best.poll();
+            }
+        }
     }
-}
\ No newline at end of file
+}
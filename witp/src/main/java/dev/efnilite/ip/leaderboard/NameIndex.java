@@ -0,0 +1,135 @@
+package dev.efnilite.ip.leaderboard;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Index of the names of all players in a leaderboard, used to find players by name without looking up their profile.
+ * Names are case-insensitive. If two players have the same name, the last registered one is found.
+ *
+ * @since 5.1.0
+ */
+public final class NameIndex {
+
+    // lowercase name -> uuid
+    private final Map<String, UUID> exact = new ConcurrentHashMap<>();
+
+    // lowercase name -> uuid, sorted by name for prefix searches
+    private final NavigableMap<String, UUID> sorted = new ConcurrentSkipListMap<>();
+
+    // uuid -> name as registered
+    private final Map<UUID, String> names = new ConcurrentHashMap<>();
+
+    /**
+     * Registers the name of a player, replacing the previous name.
+     *
+     * @param uuid The uuid.
+     * @param name The name.
+     */
+    synchronized void put(@NotNull UUID uuid, @NotNull String name) {
+        remove(uuid);
+
+        if (name.isEmpty() || name.equals("?")) {
+            return;
+        }
+
+        String key = name.toLowerCase();
+
+        exact.put(key, uuid);
+        sorted.put(key, uuid);
+        names.put(uuid, name);
+    }
+
+    /**
+     * Removes the name of a player.
+     *
+     * @param uuid The uuid.
+     */
+    synchronized void remove(@NotNull UUID uuid) {
+        String name = names.remove(uuid);
+
+        if (name == null) {
+            return;
+        }
+
+        String key = name.toLowerCase();
+
+        exact.remove(key, uuid);
+        sorted.remove(key, uuid);
+    }
+
+    /**
+     * Replaces all names.
+     *
+     * @param scores The scores, which contain the names.
+     */
+    synchronized void reset(@NotNull Map<UUID, Score> scores) {
+        exact.clear();
+        sorted.clear();
+        names.clear();
+
+        scores.forEach((uuid, score) -> put(uuid, score.name()));
+    }
+
+    /**
+     * Replaces all names with the names of another index.
+     *
+     * @param other The index.
+     */
+    synchronized void reset(@NotNull NameIndex other) {
+        exact.clear();
+        sorted.clear();
+        names.clear();
+
+        other.names.forEach(this::put);
+    }
+
+    /**
+     * @param name The name, case-insensitive.
+     * @return The uuid of the player with this name, null if not found.
+     */
+    public @Nullable UUID get(@NotNull String name) {
+        return exact.get(name.toLowerCase());
+    }
+
+    /**
+     * @param uuid The uuid.
+     * @return The registered name of the player, null if not found.
+     */
+    public @Nullable String getName(@NotNull UUID uuid) {
+        return names.get(uuid);
+    }
+
+    /**
+     * Finds all players whose name starts with a prefix, sorted by name.
+     *
+     * @param prefix The prefix, case-insensitive.
+     * @param limit  The max amount of players.
+     * @return The uuids of the players.
+     */
+    public List<UUID> search(@NotNull String prefix, int limit) {
+        String key = prefix.toLowerCase();
+        List<UUID> found = new ArrayList<>();
+
+        for (Map.Entry<String, UUID> entry : sorted.tailMap(key).entrySet()) {
+            if (found.size() >= limit || !entry.getKey().startsWith(key)) {
+                break;
+            }
+
+            found.add(entry.getValue());
+        }
+
+        return found;
+    }
+
+    /**
+     * @return The amount of names.
+     */
+    public int size() {
+        return exact.size();
+    }
+}
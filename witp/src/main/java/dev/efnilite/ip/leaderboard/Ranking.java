@@ -0,0 +1,233 @@
+package dev.efnilite.ip.leaderboard;
+
+import dev.efnilite.ip.menu.community.SingleLeaderboardMenu;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Scores which are kept sorted from best to worst, so ranks and ranges can be looked up without sorting.
+ * All methods are synchronized, as scores are changed on the main thread and read by storage threads, and ranges are copies.
+ *
+ * @since 5.1.0
+ */
+final class Ranking {
+
+    /**
+     * The way in which entries are sorted.
+     */
+    final SingleLeaderboardMenu.Sort sort;
+
+    // all scores, unsorted
+    private final Map<UUID, Score> scores = new ConcurrentHashMap<>();
+
+    // best first, equal scores are ordered by uuid
+    private final Comparator<Map.Entry<UUID, Score>> order;
+
+    // all entries of scores, sorted by order
+    private List<Map.Entry<UUID, Score>> sorted = new ArrayList<>();
+
+    // all entries of scores, sorted by other sorts, built when first requested after a change
+    private final Map<SingleLeaderboardMenu.Sort, List<Map.Entry<UUID, Score>>> others = new EnumMap<>(SingleLeaderboardMenu.Sort.class);
+
+    // increased on every change
+    private volatile long revision;
+
+    Ranking(@NotNull SingleLeaderboardMenu.Sort sort) {
+        this.sort = sort;
+        this.order = Map.Entry.<UUID, Score>comparingByValue(Leaderboard.comparator(sort)).thenComparing(Map.Entry.comparingByKey());
+    }
+
+    /**
+     * @return All scores, unsorted.
+     */
+    Map<UUID, Score> getScores() {
+        return scores;
+    }
+
+    /**
+     * @return A number that changes every time the scores change.
+     */
+    long getRevision() {
+        return revision;
+    }
+
+    /**
+     * @return The amount of scores.
+     */
+    synchronized int size() {
+        return sorted.size();
+    }
+
+    /**
+     * Registers a score, overriding the old one.
+     *
+     * @param uuid  The uuid.
+     * @param score The score.
+     * @return The previous score, if there was one.
+     */
+    synchronized @Nullable Score put(@NotNull UUID uuid, @NotNull Score score) {
+        Score previous = remove(uuid);
+        Map.Entry<UUID, Score> entry = Map.entry(uuid, score);
+
+        int index = Collections.binarySearch(sorted, entry, order);
+
+        scores.put(uuid, score);
+        sorted.add(index < 0 ? -index - 1 : index, entry);
+        others.clear();
+        revision++;
+
+        return previous;
+    }
+
+    /**
+     * Removes a score.
+     *
+     * @param uuid The uuid.
+     * @return The previous score, if there was one.
+     */
+    synchronized @Nullable Score remove(@NotNull UUID uuid) {
+        Score previous = scores.remove(uuid);
+
+        if (previous == null) {
+            return null;
+        }
+
+        int index = Collections.binarySearch(sorted, Map.entry(uuid, previous), order);
+
+        if (index >= 0) {
+            sorted.remove(index);
+        }
+        others.clear();
+        revision++;
+
+        return previous;
+    }
+
+    /**
+     * Replaces all scores.
+     *
+     * @param replacement The new scores.
+     */
+    synchronized void replace(@NotNull Map<UUID, Score> replacement) {
+        List<Map.Entry<UUID, Score>> entries = new ArrayList<>(replacement.size());
+
+        replacement.forEach((uuid, score) -> entries.add(Map.entry(uuid, score)));
+
+        replace(entries, 0);
+    }
+
+    /**
+     * Replaces all scores. Entries which are already sorted, e.g. by the database, are sorted in linear time.
+     *
+     * @param entries The new entries, without duplicate uuids. This list is used by this ranking and should not be modified afterwards.
+     * @param limit   The maximum amount of entries to keep, the best ones. If 0, all are kept.
+     */
+    synchronized void replace(@NotNull List<Map.Entry<UUID, Score>> entries, int limit) {
+        entries.sort(order);
+
+        if (limit > 0 && entries.size() > limit) {
+            entries = new ArrayList<>(entries.subList(0, limit));
+        }
+
+        scores.clear();
+        entries.forEach(entry -> scores.put(entry.getKey(), entry.getValue()));
+        sorted = entries;
+        others.clear();
+        revision++;
+    }
+
+    /**
+     * Removes all entries below a rank.
+     *
+     * @param size The amount of entries to keep.
+     * @return The removed entries.
+     */
+    synchronized List<Map.Entry<UUID, Score>> trim(int size) {
+        if (sorted.size() <= size) {
+            return Collections.emptyList();
+        }
+
+        List<Map.Entry<UUID, Score>> tail = sorted.subList(size, sorted.size());
+        List<Map.Entry<UUID, Score>> removed = new ArrayList<>(tail);
+
+        tail.clear();
+        removed.forEach(entry -> scores.remove(entry.getKey()));
+        others.clear();
+        revision++;
+
+        return removed;
+    }
+
+    /**
+     * @param uuid The uuid.
+     * @return The rank, starting from 1. 0 if there is no score.
+     */
+    synchronized int getRank(@NotNull UUID uuid) {
+        Score score = scores.get(uuid);
+
+        if (score == null) {
+            return 0;
+        }
+
+        int index = Collections.binarySearch(sorted, Map.entry(uuid, score), order);
+
+        return index >= 0 ? index + 1 : 0;
+    }
+
+    /**
+     * @param rank The rank, starting from 1.
+     * @return The score at the rank, null if there is none.
+     */
+    synchronized @Nullable Score getScoreAtRank(int rank) {
+        if (rank < 1 || rank > sorted.size()) {
+            return null;
+        }
+
+        return sorted.get(rank - 1).getValue();
+    }
+
+    /**
+     * @param from The first rank, starting from 1.
+     * @param to   The last rank, inclusive.
+     * @return A copy of the entries from the first to the last rank.
+     */
+    synchronized List<Map.Entry<UUID, Score>> range(int from, int to) {
+        return copy(sorted, from, to);
+    }
+
+    /**
+     * @param sort  The sort.
+     * @param index The page index, starting from 0.
+     * @param size  The page size.
+     * @return A copy of the entries on the page when sorted by the provided sort.
+     */
+    synchronized List<Map.Entry<UUID, Score>> page(@NotNull SingleLeaderboardMenu.Sort sort, int index, int size) {
+        int from = index * size + 1;
+
+        if (sort == this.sort) {
+            return copy(sorted, from, from + size - 1);
+        }
+
+        List<Map.Entry<UUID, Score>> other = others.computeIfAbsent(sort, key -> {
+            List<Map.Entry<UUID, Score>> entries = new ArrayList<>(sorted);
+            entries.sort(Map.Entry.<UUID, Score>comparingByValue(key.comparator()).thenComparing(order));
+            return entries;
+        });
+
+        return copy(other, from, from + size - 1);
+    }
+
+    private static List<Map.Entry<UUID, Score>> copy(List<Map.Entry<UUID, Score>> list, int from, int to) {
+        int start = Math.max(0, from - 1);
+        int end = Math.min(list.size(), to);
+
+        if (start >= end) {
+            return Collections.emptyList();
+        }
+
+        return List.copyOf(list.subList(start, end));
+    }
+}
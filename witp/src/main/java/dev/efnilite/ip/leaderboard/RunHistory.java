@@ -0,0 +1,585 @@
+package dev.efnilite.ip.leaderboard;
+
+import dev.efnilite.ip.IP;
+import dev.efnilite.vilib.util.Task;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Every finished run of a mode, stored in an append-only log of compressed blocks.
+ * Runs are appended in blocks of at most {@link #BLOCK_SIZE} runs. Within a block, the time is stored as the difference
+ * with the previous run and all other values as varints, so a run takes about 8 to 10 bytes instead of 17.
+ * Every block has a fixed-width entry in an index with its position and the time of its first run,
+ * so blocks can be found with a binary search and read without reading the blocks before them.
+ * Players are stored once in a separate table and referred to by index.
+ * Runs are buffered in memory and appended in the background, see {@link #flushAll()}.
+ *
+ * @since 5.1.0
+ */
+public final class RunHistory {
+
+    /**
+     * The start of the timestamps in the time column, in seconds since the unix epoch (2020-01-01).
+     */
+    public static final long EPOCH = 1577836800L;
+
+    /**
+     * The maximum amount of runs in a block.
+     */
+    public static final int BLOCK_SIZE = 4096;
+
+    // offset (long), length (int), time of the first run (int), amount of runs (int)
+    private static final int INDEX_WIDTH = 20;
+
+    // the columns of the fixed-width format of earlier versions, which are converted to blocks when opened
+    private static final String[] OLD_COLUMNS = {"time", "player", "score", "duration"};
+
+    private static final Map<String, RunHistory> histories = new ConcurrentHashMap<>();
+
+    /**
+     * The mode that this history belongs to.
+     */
+    public final String mode;
+
+    private final File folder;
+
+    // runs that haven't been appended yet
+    private final List<Run> pending = new ArrayList<>();
+
+    // the uuid of every player index
+    private final List<UUID> players = new ArrayList<>();
+    private final Map<UUID, Integer> indices = new HashMap<>();
+
+    // the amount of runs on disk, -1 if the files haven't been opened yet
+    private volatile int count = -1;
+
+    // the amount of blocks and the length of the data file
+    private int blocks;
+    private long length;
+
+    private RunHistory(@NotNull String mode) {
+        this(mode, IP.getInFolder("runs/%s".formatted(mode.toLowerCase())));
+
+        // so the amount of runs is known without opening the files on the caller's thread
+        Task.create(IP.getPlugin()).async().execute(this::load).run();
+    }
+
+    // opens the files when first used
+    RunHistory(@NotNull String mode, @NotNull File folder) {
+        this.mode = mode.toLowerCase();
+        this.folder = folder;
+    }
+
+    /**
+     * @param mode The mode.
+     * @return The run history of the mode.
+     */
+    public static RunHistory get(@NotNull String mode) {
+        return histories.computeIfAbsent(mode.toLowerCase(), RunHistory::new);
+    }
+
+    /**
+     * Appends the buffered runs of all modes to disk.
+     */
+    public static void flushAll() {
+        histories.values().forEach(RunHistory::flush);
+    }
+
+    /**
+     * Registers a finished run. The run is written on the next flush.
+     *
+     * @param run The run.
+     */
+    public void add(@NotNull Run run) {
+        synchronized (pending) {
+            pending.add(run);
+        }
+    }
+
+    /**
+     * Appends all buffered runs to disk.
+     */
+    public synchronized void flush() {
+        List<Run> runs;
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return;
+            }
+
+            runs = new ArrayList<>(pending);
+            pending.clear();
+        }
+
+        open();
+
+        // the files couldn't be opened, so these are written on the next flush
+        if (count < 0) {
+            synchronized (pending) {
+                pending.addAll(0, runs);
+            }
+            return;
+        }
+
+        try {
+            try (DataOutputStream table = append("players.dat")) {
+                for (Run run : runs) {
+                    if (indices.containsKey(run.uuid())) {
+                        continue;
+                    }
+
+                    indices.put(run.uuid(), players.size());
+                    players.add(run.uuid());
+
+                    table.writeLong(run.uuid().getMostSignificantBits());
+                    table.writeLong(run.uuid().getLeastSignificantBits());
+                }
+            }
+
+            // the index is written after the data, so a block is only found once it has been written completely
+            try (DataOutputStream data = append("runs.dat");
+                 DataOutputStream index = append("blocks.idx")) {
+
+                for (int from = 0; from < runs.size(); from += BLOCK_SIZE) {
+                    List<Run> block = runs.subList(from, Math.min(runs.size(), from + BLOCK_SIZE));
+                    byte[] encoded = encode(block);
+
+                    data.write(encoded);
+                    data.flush();
+
+                    index.writeLong(length);
+                    index.writeInt(encoded.length);
+                    index.writeInt(getSeconds(block.get(0)));
+                    index.writeInt(block.size());
+                    index.flush();
+
+                    length += encoded.length;
+                    blocks++;
+                    count += block.size();
+                }
+            }
+        } catch (IOException ex) {
+            IP.logging().stack("Error while trying to write run history of %s".formatted(mode), ex);
+
+            // open again to cut off partially written runs
+            players.clear();
+            indices.clear();
+            count = -1;
+        }
+    }
+
+    /**
+     * Returns the amount of runs without reading from disk. Runs on disk are counted once the history has been opened in the background.
+     *
+     * @return The amount of runs, including the ones that haven't been written yet.
+     */
+    public int size() {
+        int written = Math.max(0, count);
+
+        synchronized (pending) {
+            return written + pending.size();
+        }
+    }
+
+    /**
+     * Counts the runs per day, from the first day up to and including the last day.
+     *
+     * @param from The first day.
+     * @param to   The last day.
+     * @param zone The zone which determines when a day starts.
+     * @return The amount of runs on every day, in order.
+     */
+    public synchronized Map<LocalDate, Integer> getRunsPerDay(@NotNull LocalDate from, @NotNull LocalDate to, @NotNull ZoneId zone) {
+        flush();
+        open();
+
+        Map<LocalDate, Integer> days = new LinkedHashMap<>();
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            days.put(day, 0);
+        }
+
+        if (count <= 0 || days.isEmpty()) {
+            return days;
+        }
+
+        ByteBuffer index = mapIndex();
+        long start = from.atStartOfDay(zone).toEpochSecond() - EPOCH;
+        long end = to.plusDays(1).atStartOfDay(zone).toEpochSecond() - EPOCH;
+
+        LocalDate day = null;
+        long dayEnd = Long.MIN_VALUE;
+        int amount = 0;
+
+        try (FileChannel channel = FileChannel.open(new File(folder, "runs.dat").toPath(), StandardOpenOption.READ)) {
+            // runs are appended in order, so the first block of the range can be found with a binary search
+            blocks:
+            for (int block = search(index, start); block < blocks; block++) {
+                if (index.getInt(block * INDEX_WIDTH + 12) >= end) {
+                    break;
+                }
+
+                Block runs = read(channel, index, block);
+                for (int i = 0; i < runs.size; i++) {
+                    long seconds = runs.times[i];
+
+                    if (seconds >= end) {
+                        break blocks;
+                    }
+
+                    // the first block may start before the first day
+                    if (seconds < start) {
+                        continue;
+                    }
+
+                    if (seconds >= dayEnd) {
+                        if (day != null) {
+                            days.merge(day, amount, Integer::sum);
+                        }
+
+                        day = Instant.ofEpochSecond(seconds + EPOCH).atZone(zone).toLocalDate();
+                        dayEnd = day.plusDays(1).atStartOfDay(zone).toEpochSecond() - EPOCH;
+                        amount = 0;
+                    }
+
+                    amount++;
+                }
+            }
+        } catch (IOException ex) {
+            IP.logging().stack("Error while trying to read run history of %s".formatted(mode), ex);
+        }
+
+        if (day != null) {
+            days.merge(day, amount, Integer::sum);
+        }
+
+        return days;
+    }
+
+    /**
+     * @param uuid  The player's uuid.
+     * @param limit The maximum amount of runs.
+     * @return The last runs of a player, newest first.
+     */
+    public synchronized List<Run> getLastRuns(@NotNull UUID uuid, int limit) {
+        flush();
+        open();
+
+        Integer player = indices.get(uuid);
+
+        if (player == null || count <= 0) {
+            return Collections.emptyList();
+        }
+
+        ByteBuffer index = mapIndex();
+        List<Run> runs = new ArrayList<>();
+
+        try (FileChannel channel = FileChannel.open(new File(folder, "runs.dat").toPath(), StandardOpenOption.READ)) {
+            for (int block = blocks - 1; block >= 0 && runs.size() < limit; block--) {
+                Block read = read(channel, index, block);
+
+                for (int i = read.size - 1; i >= 0 && runs.size() < limit; i--) {
+                    if (read.players[i] != player) {
+                        continue;
+                    }
+
+                    byte difficulty = read.difficulties[i];
+
+                    runs.add(new Run(uuid, (read.times[i] + EPOCH) * 1000, read.scores[i], read.durations[i],
+                            difficulty < 0 ? -1 : difficulty / 100.0));
+                }
+            }
+        } catch (IOException ex) {
+            IP.logging().stack("Error while trying to read run history of %s".formatted(mode), ex);
+        }
+
+        return runs;
+    }
+
+    private synchronized void load() {
+        open();
+    }
+
+    // reads the player table and the index, and cuts off blocks that were only partially written
+    private void open() {
+        if (count >= 0) {
+            return;
+        }
+
+        folder.mkdirs();
+        players.clear();
+        indices.clear();
+
+        File table = new File(folder, "players.dat");
+        if (table.exists()) {
+            try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(table)))) {
+                for (long i = table.length() / 16; i > 0; i--) {
+                    UUID uuid = new UUID(input.readLong(), input.readLong());
+
+                    indices.put(uuid, players.size());
+                    players.add(uuid);
+                }
+            } catch (IOException ex) {
+                IP.logging().stack("Error while trying to read run history players of %s".formatted(mode), ex);
+            }
+        }
+        truncate("players.dat", players.size() * 16L);
+
+        long data = new File(folder, "runs.dat").length();
+        int entries = (int) (new File(folder, "blocks.idx").length() / INDEX_WIDTH);
+
+        blocks = 0;
+        length = 0;
+        int runs = 0;
+
+        if (entries > 0) {
+            try (FileChannel channel = FileChannel.open(new File(folder, "blocks.idx").toPath(), StandardOpenOption.READ)) {
+                ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, 0, (long) entries * INDEX_WIDTH);
+
+                for (int block = 0; block < entries; block++) {
+                    long end = index.getLong(block * INDEX_WIDTH) + index.getInt(block * INDEX_WIDTH + 8);
+
+                    if (end > data) {
+                        break;
+                    }
+
+                    blocks++;
+                    length = end;
+                    runs += index.getInt(block * INDEX_WIDTH + 16);
+                }
+            } catch (IOException ex) {
+                IP.logging().stack("Error while trying to read run history index of %s".formatted(mode), ex);
+            }
+        }
+
+        truncate("blocks.idx", (long) blocks * INDEX_WIDTH);
+        truncate("runs.dat", length);
+        count = runs;
+
+        if (new File(folder, "time.col").exists()) {
+            convert();
+        }
+    }
+
+    // converts the fixed-width columns of earlier versions to blocks, which are appended before any runs of this session
+    private void convert() {
+        long rows = new File(folder, "difficulty.col").length();
+        for (String column : OLD_COLUMNS) {
+            rows = Math.min(rows, new File(folder, column + ".col").length() / 4);
+        }
+
+        List<Run> runs = new ArrayList<>((int) rows);
+
+        try (DataInputStream time = read(OLD_COLUMNS[0] + ".col");
+             DataInputStream player = read(OLD_COLUMNS[1] + ".col");
+             DataInputStream score = read(OLD_COLUMNS[2] + ".col");
+             DataInputStream duration = read(OLD_COLUMNS[3] + ".col");
+             DataInputStream difficulty = read("difficulty.col")) {
+
+            for (long i = 0; i < rows; i++) {
+                long timestamp = (time.readInt() + EPOCH) * 1000;
+                int index = player.readInt();
+                int value = score.readInt();
+                int millis = duration.readInt();
+                byte hundredths = difficulty.readByte();
+
+                if (index >= 0 && index < players.size()) {
+                    runs.add(new Run(players.get(index), timestamp, value, millis, hundredths < 0 ? -1 : hundredths / 100.0));
+                }
+            }
+        } catch (IOException ex) {
+            IP.logging().stack("Error while trying to convert run history of %s".formatted(mode), ex);
+            return;
+        }
+
+        int before = blocks;
+        long start = length;
+
+        synchronized (pending) {
+            pending.addAll(0, runs);
+        }
+        flush();
+
+        // blocks that were written before the error are removed, so these aren't converted twice
+        if (count < 0) {
+            truncate("blocks.idx", (long) before * INDEX_WIDTH);
+            truncate("runs.dat", start);
+            return;
+        }
+
+        new File(folder, "difficulty.col").delete();
+        for (int i = OLD_COLUMNS.length - 1; i >= 0; i--) {
+            new File(folder, OLD_COLUMNS[i] + ".col").delete();
+        }
+        IP.logging().info("Converted %d runs of %s to the compressed run history".formatted(runs.size(), mode));
+    }
+
+    private void truncate(String name, long size) {
+        File file = new File(folder, name);
+
+        if (!file.exists() || file.length() <= size) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        } catch (IOException ex) {
+            IP.logging().stack("Error while trying to repair run history file %s of %s".formatted(name, mode), ex);
+        }
+    }
+
+    private DataOutputStream append(String name) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(folder, name), true)));
+    }
+
+    private DataInputStream read(String name) throws IOException {
+        return new DataInputStream(new BufferedInputStream(new FileInputStream(new File(folder, name))));
+    }
+
+    // maps the written part of the index into memory
+    private ByteBuffer mapIndex() {
+        File file = new File(folder, "blocks.idx");
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, (long) blocks * INDEX_WIDTH);
+        } catch (IOException ex) {
+            IP.logging().stack("Error while trying to read run history index of %s".formatted(mode), ex);
+            return ByteBuffer.allocate(0);
+        }
+    }
+
+    // reads and decodes a block
+    private Block read(FileChannel channel, ByteBuffer index, int block) throws IOException {
+        long offset = index.getLong(block * INDEX_WIDTH);
+        ByteBuffer buffer = ByteBuffer.allocate(index.getInt(block * INDEX_WIDTH + 8));
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Run history block %d of %s ends early".formatted(block, mode));
+            }
+        }
+        buffer.flip();
+
+        return Block.decode(buffer, index.getInt(block * INDEX_WIDTH + 12), index.getInt(block * INDEX_WIDTH + 16));
+    }
+
+    // returns the index of the last block that starts before the time, or 0 if there is none
+    private int search(ByteBuffer index, long seconds) {
+        int low = 0;
+        int high = blocks;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (index.getInt(middle * INDEX_WIDTH + 12) < seconds) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return Math.max(0, low - 1);
+    }
+
+    private static int getSeconds(Run run) {
+        return (int) (run.timestamp() / 1000 - EPOCH);
+    }
+
+    // every run is stored as the time since the previous run, the player, the score and the duration as varints, and the difficulty as a byte
+    private byte[] encode(List<Run> runs) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(runs.size() * 10);
+        int previous = getSeconds(runs.get(0));
+
+        for (Run run : runs) {
+            int seconds = getSeconds(run);
+
+            writeVarInt(out, (seconds - previous) << 1 ^ (seconds - previous) >> 31);
+            writeVarInt(out, indices.get(run.uuid()));
+            writeVarInt(out, run.score());
+            writeVarInt(out, run.duration());
+            out.write(run.difficulty() < 0 ? -1 : (int) Math.round(run.difficulty() * 100));
+
+            previous = seconds;
+        }
+
+        return out.toByteArray();
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte read = buffer.get();
+            value |= (read & 0x7F) << shift;
+
+            if (read >= 0) {
+                return value;
+            }
+        }
+
+        return value;
+    }
+
+    // the decoded runs of a block
+    private record Block(int size, int[] times, int[] players, int[] scores, int[] durations, byte[] difficulties) {
+
+        static Block decode(ByteBuffer buffer, int first, int size) {
+            Block block = new Block(size, new int[size], new int[size], new int[size], new int[size], new byte[size]);
+            int seconds = first;
+
+            for (int i = 0; i < size; i++) {
+                int delta = readVarInt(buffer);
+
+                seconds += delta >>> 1 ^ -(delta & 1);
+
+                block.times[i] = seconds;
+                block.players[i] = readVarInt(buffer);
+                block.scores[i] = readVarInt(buffer);
+                block.durations[i] = readVarInt(buffer);
+                block.difficulties[i] = buffer.get();
+            }
+
+            return block;
+        }
+    }
+
+    /**
+     * A finished run.
+     *
+     * @param uuid       The player's uuid.
+     * @param timestamp  The time in millis at which the run ended. Stored with a precision of seconds.
+     * @param score      The score.
+     * @param duration   The duration in millis.
+     * @param difficulty The difficulty, from 0 to 1. -1 if unknown. Stored with a precision of 0.01.
+     */
+    public record Run(@NotNull UUID uuid, long timestamp, int score, int duration, double difficulty) {
+
+        /**
+         * @param difficulty The difficulty as stored in a {@link Score}.
+         * @return The difficulty, -1 if unknown.
+         */
+        public static double parseDifficulty(@Nullable String difficulty) {
+            try {
+                return difficulty != null ? Math.max(0, Math.min(1, Double.parseDouble(difficulty))) : -1;
+            } catch (NumberFormatException ex) {
+                return -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package dev.efnilite.ip.leaderboard;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Histogram of all scores of a mode, used to look up percentiles without sorting.
+ * Only {@link Score#score()} is counted, so percentiles don't follow the time or difficulty sort of a leaderboard.
+ * Scores below {@link #LINEAR} each have their own bucket. Higher scores share buckets, with {@link #SUB} buckets
+ * per power of two, so the error of a higher score is at most 1/{@link #SUB} of the score.
+ * Lookups are O(1) and don't allocate. Updates are O(amount of buckets).
+ *
+ * @since 5.1.0
+ */
+public final class ScoreHistogram {
+
+    /**
+     * The amount of scores that have their own bucket.
+     */
+    public static final int LINEAR = 512;
+
+    /**
+     * The amount of buckets for every power of two above {@link #LINEAR}.
+     */
+    public static final int SUB = 64;
+
+    /**
+     * The total amount of buckets.
+     */
+    public static final int BUCKETS = LINEAR + (31 - Integer.numberOfTrailingZeros(LINEAR)) * SUB;
+
+    private static final int LINEAR_BITS = Integer.numberOfTrailingZeros(LINEAR);
+    private static final int SUB_BITS = Integer.numberOfTrailingZeros(SUB);
+
+    // the amount of scores per bucket
+    private final int[] counts = new int[BUCKETS];
+
+    // the amount of scores in all higher buckets
+    private final int[] above = new int[BUCKETS];
+
+    // the lowest score of every percentile, from 0 to 100
+    private final int[] percentiles = new int[101];
+
+    private volatile int total;
+
+    /**
+     * @param score The score.
+     * @return The bucket of the score.
+     */
+    public static int getBucket(int score) {
+        if (score < LINEAR) {
+            return Math.max(0, score);
+        }
+
+        int octave = 31 - Integer.numberOfLeadingZeros(score) - LINEAR_BITS;
+        int sub = (score - (LINEAR << octave)) >> (octave + LINEAR_BITS - SUB_BITS);
+
+        return LINEAR + octave * SUB + sub;
+    }
+
+    /**
+     * @param bucket The bucket.
+     * @return The lowest score in the bucket.
+     */
+    public static int getLowerBound(int bucket) {
+        if (bucket < LINEAR) {
+            return bucket;
+        }
+
+        int octave = (bucket - LINEAR) / SUB;
+        int sub = (bucket - LINEAR) % SUB;
+
+        return (int) Math.min(Integer.MAX_VALUE, ((long) LINEAR << octave) + ((long) sub << (octave + LINEAR_BITS - SUB_BITS)));
+    }
+
+    /**
+     * Adds a score.
+     *
+     * @param score The score.
+     */
+    synchronized void add(int score) {
+        counts[getBucket(score)]++;
+        total++;
+
+        update();
+    }
+
+    /**
+     * Removes a score.
+     *
+     * @param score The score.
+     */
+    synchronized void remove(int score) {
+        int bucket = getBucket(score);
+
+        if (counts[bucket] == 0) {
+            return;
+        }
+
+        counts[bucket]--;
+        total--;
+
+        update();
+    }
+
+    /**
+     * Replaces a score.
+     *
+     * @param previous The previous score.
+     * @param score    The new score.
+     */
+    synchronized void replace(int previous, int score) {
+        int bucket = getBucket(previous);
+
+        if (counts[bucket] > 0) {
+            counts[bucket]--;
+            total--;
+        }
+
+        counts[getBucket(score)]++;
+        total++;
+
+        update();
+    }
+
+    /**
+     * Replaces all scores.
+     *
+     * @param scores The new scores.
+     */
+    synchronized void reset(@NotNull Collection<Score> scores) {
+        Arrays.fill(counts, 0);
+
+        for (Score score : scores) {
+            counts[getBucket(score.score())]++;
+        }
+        total = scores.size();
+
+        update();
+    }
+
+    /**
+     * Replaces all scores with the scores of another histogram.
+     *
+     * @param other The histogram, e.g. one that was built with {@link #count(int)}.
+     */
+    synchronized void reset(@NotNull ScoreHistogram other) {
+        synchronized (other) {
+            System.arraycopy(other.counts, 0, counts, 0, BUCKETS);
+            total = other.total;
+        }
+
+        update();
+    }
+
+    /**
+     * Adds a score without recalculating the percentiles, so a histogram can be built from many scores
+     * before it is used with {@link #reset(ScoreHistogram)}.
+     *
+     * @param score The score.
+     */
+    synchronized void count(int score) {
+        counts[getBucket(score)]++;
+        total++;
+    }
+
+    // recalculates the amount of higher scores and the percentiles
+    private void update() {
+        int sum = 0;
+        for (int bucket = BUCKETS - 1; bucket >= 0; bucket--) {
+            above[bucket] = sum;
+            sum += counts[bucket];
+        }
+
+        if (total == 0) {
+            Arrays.fill(percentiles, 0);
+            return;
+        }
+
+        int bucket = 0;
+        int below = 0;
+        for (int percentile = 0; percentile <= 100; percentile++) {
+            long required = (long) (total - 1) * percentile / 100; // the index of the score, counting from the lowest
+
+            while (bucket < BUCKETS - 1 && below + counts[bucket] <= required) {
+                below += counts[bucket];
+                bucket++;
+            }
+
+            percentiles[percentile] = getLowerBound(bucket);
+        }
+    }
+
+    /**
+     * @return The total amount of scores.
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * @param bucket The bucket.
+     * @return The amount of scores in the bucket.
+     */
+    public int getCount(int bucket) {
+        return counts[bucket];
+    }
+
+    /**
+     * @param score The score.
+     * @return The amount of scores in higher buckets than the bucket of the score.
+     */
+    public int getAbove(int score) {
+        return above[getBucket(score)];
+    }
+
+    /**
+     * Returns the top percentage of a score. For example, the best score out of 200 scores is in the top 0.5%.
+     *
+     * @param score The score.
+     * @return The top percentage, from 0 to 100. 0 if there are no scores.
+     */
+    public double getTopPercentage(int score) {
+        int total = this.total;
+
+        if (total == 0) {
+            return 0;
+        }
+
+        return Math.min(100, 100.0 * (getAbove(score) + 1) / total);
+    }
+
+    /**
+     * @param percentile The percentile, from 0 to 100.
+     * @return The lowest score of the percentile. For example, 90 returns the score which is better than 90% of the scores.
+     */
+    public int getPercentile(int percentile) {
+        return percentiles[Math.max(0, Math.min(100, percentile))];
+    }
+}
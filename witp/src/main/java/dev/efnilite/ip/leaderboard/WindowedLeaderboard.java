@@ -0,0 +1,360 @@
+package dev.efnilite.ip.leaderboard;
+
+import dev.efnilite.ip.IP;
+import dev.efnilite.ip.config.Option;
+import dev.efnilite.ip.menu.community.SingleLeaderboardMenu;
+import dev.efnilite.ip.storage.StorageStats;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAdjusters;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Leaderboard which only holds the best scores of the current period, like today or this week.
+ * Every period has its own bucket. When a new period starts, the bucket is swapped for an empty one.
+ * Only the scores that have changed since the last write are written, and buckets older than
+ * {@link Option#LEADERBOARD_WINDOW_RETENTION} periods are deleted from storage.
+ *
+ * @since 5.1.0
+ */
+public class WindowedLeaderboard {
+
+    /**
+     * The mode that this leaderboard belongs to
+     */
+    public final String mode;
+
+    /**
+     * The period of every bucket.
+     */
+    public final Period period;
+
+    /**
+     * The way in which items will be sorted.
+     */
+    public final SingleLeaderboardMenu.Sort sort;
+
+    // the bucket of the current period
+    private volatile Bucket current;
+
+    // a bucket of a past period that still has to be written
+    private volatile Bucket unwritten;
+
+    // the bucket for which old buckets were last deleted
+    private long cleaned = Long.MIN_VALUE;
+
+    public WindowedLeaderboard(@NotNull String mode, @NotNull Period period, @NotNull SingleLeaderboardMenu.Sort sort) {
+        this.mode = mode.toLowerCase();
+        this.period = period;
+        this.sort = sort;
+        this.current = new Bucket(period, sort);
+    }
+
+    /**
+     * Reads all scores of the current period from storage.
+     * Scores that have been changed or removed since the last write are kept, unless a stored score is better.
+     */
+    public void read() {
+        Bucket bucket = roll();
+        Comparator<Score> comparator = Leaderboard.comparator(sort);
+
+        Map<UUID, Score> read = new HashMap<>(IP.getStorage().readWindowScores(mode, period, bucket.id));
+
+        read.keySet().removeAll(bucket.removed);
+        bucket.changed.forEach((uuid, score) -> {
+            Score stored = read.get(uuid);
+
+            // a score that was put before the stored scores were read may be worse than the stored one
+            if (stored != null && comparator.compare(stored, score) < 0) {
+                bucket.changed.remove(uuid, score);
+            } else {
+                read.put(uuid, score);
+            }
+        });
+
+        bucket.ranking.replace(read);
+
+        // changes made while reading
+        bucket.changed.forEach(bucket.ranking::put);
+        bucket.removed.forEach(bucket.ranking::remove);
+    }
+
+    /**
+     * Writes the scores of the current period that have changed since the last write to storage,
+     * and deletes the buckets which are older than the retention.
+     */
+    public void write() {
+        Bucket previous = unwritten;
+
+        if (previous != null) {
+            unwritten = null;
+
+            if (!write(previous)) {
+                unwritten = previous;
+            }
+        }
+
+        Bucket bucket = roll();
+
+        if (bucket.isChanged()) {
+            write(bucket);
+        }
+
+        if (cleaned != bucket.id && Option.LEADERBOARD_WINDOW_RETENTION > 0) {
+            cleaned = bucket.id;
+            IP.getStorage().deleteWindowScores(mode, period, bucket.id - Option.LEADERBOARD_WINDOW_RETENTION);
+        }
+    }
+
+    // returns false if the changes couldn't be written, in which case these are written again with the next write
+    private boolean write(Bucket bucket) {
+        Map<UUID, Score> changed = new HashMap<>(bucket.changed);
+        Set<UUID> removed = new HashSet<>(bucket.removed);
+
+        changed.forEach(bucket.changed::remove);
+        bucket.removed.removeAll(removed);
+
+        boolean outer = StorageStats.begin();
+        boolean failed = true;
+
+        try {
+            IP.getStorage().updateWindowScores(mode, period, bucket.id, changed, removed);
+
+            failed = StorageStats.end(outer);
+        } finally {
+            if (failed) {
+                bucket.restore(changed, removed);
+            }
+        }
+
+        return !failed;
+    }
+
+    /**
+     * Registers a score, if it is better than the player's score in the current period.
+     *
+     * @param uuid  The player's uuid
+     * @param score The {@link Score} instance associated with a player's run
+     * @return the previous score, if there was one
+     */
+    @Nullable
+    public Score put(@NotNull UUID uuid, @NotNull Score score) {
+        Bucket bucket = roll();
+        Score previous = bucket.ranking.getScores().get(uuid);
+
+        if (previous != null && Leaderboard.comparator(sort).compare(previous, score) <= 0) {
+            return previous;
+        }
+
+        bucket.ranking.put(uuid, score);
+        bucket.changed.put(uuid, score);
+        bucket.removed.remove(uuid);
+
+        return previous;
+    }
+
+    /**
+     * Removes the score of a player in the current period.
+     *
+     * @param uuid The UUID
+     * @return the previous value if one was found
+     */
+    @Nullable
+    public Score remove(@NotNull UUID uuid) {
+        Bucket bucket = roll();
+        Score previous = bucket.ranking.remove(uuid);
+
+        if (previous != null) {
+            bucket.changed.remove(uuid);
+            bucket.removed.add(uuid);
+        }
+
+        return previous;
+    }
+
+    /**
+     * @param uuid The {@link UUID} to get.
+     * @return The {@link Score} associated with the player in the current period. If null, returns a {@link Score} instance with "?".
+     */
+    @NotNull
+    public Score get(@NotNull UUID uuid) {
+        return roll().ranking.getScores().getOrDefault(uuid, new Score("?", "?", "?", 0));
+    }
+
+    /**
+     * @param uuid The uuid
+     * @return The rank in the current period. Starts from 1. Returns 0 if no ranking is found.
+     */
+    public int getRank(@NotNull UUID uuid) {
+        return roll().ranking.getRank(uuid);
+    }
+
+    /**
+     * Gets the score at a specified rank in the current period.
+     * Ranks start at 1.
+     *
+     * @param rank The rank
+     * @return the {@link Score} instance, null if one isn't found
+     */
+    @Nullable
+    public Score getScoreAtRank(int rank) {
+        return roll().ranking.getScoreAtRank(rank);
+    }
+
+    /**
+     * @return All scores in the current period, unsorted.
+     */
+    public Map<UUID, Score> getScores() {
+        return Collections.unmodifiableMap(roll().ranking.getScores());
+    }
+
+    /**
+     * Gets the scores between two ranks in the current period.
+     *
+     * @param from The first rank, starting from 1.
+     * @param to   The last rank, inclusive.
+     * @return A read-only copy of the scores from the first to the last rank, best first.
+     */
+    public List<Map.Entry<UUID, Score>> range(int from, int to) {
+        return roll().ranking.range(from, to);
+    }
+
+    /**
+     * Gets a page of scores in the current period.
+     *
+     * @param sort  The sort.
+     * @param index The page index, starting from 0.
+     * @param size  The amount of scores per page.
+     * @return A read-only copy of the scores on the page.
+     */
+    public List<Map.Entry<UUID, Score>> page(@NotNull SingleLeaderboardMenu.Sort sort, int index, int size) {
+        return roll().ranking.page(sort, index, size);
+    }
+
+    // swaps the current bucket for an empty one when its period has ended
+    private Bucket roll() {
+        Bucket bucket = current;
+
+        if (System.currentTimeMillis() < bucket.end) {
+            return bucket;
+        }
+
+        if (bucket.isChanged()) {
+            unwritten = bucket;
+        }
+
+        current = new Bucket(period, sort);
+
+        return current;
+    }
+
+    /**
+     * The scores of a single period.
+     */
+    private static class Bucket {
+
+        private final long id;
+        private final long end;
+        private final Ranking ranking;
+
+        // the scores that have been changed or removed since the last write
+        private final Map<UUID, Score> changed = new ConcurrentHashMap<>();
+        private final Set<UUID> removed = ConcurrentHashMap.newKeySet();
+
+        private Bucket(Period period, SingleLeaderboardMenu.Sort sort) {
+            LocalDate today = LocalDate.now(Period.ZONE);
+
+            this.id = period.getBucket(today);
+            this.end = period.getNext(today).atStartOfDay(Period.ZONE).toInstant().toEpochMilli();
+            this.ranking = new Ranking(sort);
+        }
+
+        private boolean isChanged() {
+            return !changed.isEmpty() || !removed.isEmpty();
+        }
+
+        // puts back changes that couldn't be written, unless the player's score has changed again in the meantime
+        private void restore(Map<UUID, Score> changed, Set<UUID> removed) {
+            changed.forEach((uuid, score) -> {
+                if (!this.removed.contains(uuid)) {
+                    this.changed.putIfAbsent(uuid, score);
+                }
+            });
+            removed.forEach(uuid -> {
+                if (!this.changed.containsKey(uuid)) {
+                    this.removed.add(uuid);
+                }
+            });
+        }
+    }
+
+    /**
+     * The length of the period of every bucket.
+     */
+    public enum Period {
+
+        DAILY {
+            @Override
+            public long getBucket(LocalDate date) {
+                return date.toEpochDay();
+            }
+
+            @Override
+            LocalDate getNext(LocalDate date) {
+                return date.plusDays(1);
+            }
+        }, WEEKLY {
+            @Override
+            public long getBucket(LocalDate date) {
+                return Math.floorDiv(date.toEpochDay() + 3, 7); // weeks start on monday, epoch day 0 is a thursday
+            }
+
+            @Override
+            LocalDate getNext(LocalDate date) {
+                return date.with(TemporalAdjusters.next(DayOfWeek.MONDAY));
+            }
+        }, MONTHLY {
+            @Override
+            public long getBucket(LocalDate date) {
+                return date.getYear() * 12L + date.getMonthValue() - 1;
+            }
+
+            @Override
+            LocalDate getNext(LocalDate date) {
+                return date.withDayOfMonth(1).plusMonths(1);
+            }
+        };
+
+        /**
+         * The zone used to determine when a period starts.
+         */
+        public static final ZoneId ZONE = ZoneId.systemDefault();
+
+        /**
+         * @param date The date.
+         * @return The id of the bucket which contains the date.
+         */
+        public abstract long getBucket(LocalDate date);
+
+        // returns the first day of the next period
+        abstract LocalDate getNext(LocalDate date);
+
+        /**
+         * @param name The name, case-insensitive.
+         * @return The period, null if not found.
+         */
+        public static @Nullable Period fromName(@NotNull String name) {
+            for (Period period : values()) {
+                if (period.name().equalsIgnoreCase(name)) {
+                    return period;
+                }
+            }
+            return null;
+        }
+    }
+}
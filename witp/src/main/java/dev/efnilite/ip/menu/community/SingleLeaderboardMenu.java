@@ -11,25 +11,53 @@ import dev.efnilite.ip.mode.Mode;
 import dev.efnilite.ip.player.ParkourUser;
 import dev.efnilite.ip.util.OfflineSkullSetter;
 import dev.efnilite.ip.util.Util;
-import dev.efnilite.vilib.inventory.PagedMenu;
+import dev.efnilite.vilib.inventory.Menu;
 import dev.efnilite.vilib.inventory.item.Item;
-import dev.efnilite.vilib.inventory.item.MenuItem;
-import org.bukkit.Bukkit;
 import org.bukkit.Material;
-import org.bukkit.OfflinePlayer;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.SkullMeta;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
- * Menu for a single leaderboard
+ * Menu for a single leaderboard.
+ * Only the visible page is built. Built pages are cached until the leaderboard changes.
  */
 public class SingleLeaderboardMenu {
 
+    /**
+     * The amount of scores per page.
+     */
+    public static final int PAGE_SIZE = 18;
+
+    // the maximum amount of search results
+    private static final int SEARCH_LIMIT = 36;
+
+    // built pages, per mode, locale, sort and page
+    private final Map<PageKey, Page> pages = Collections.synchronizedMap(new LinkedHashMap<PageKey, Page>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<PageKey, Page> eldest) {
+            return size() > 256;
+        }
+    });
+
     public void open(Player player, Mode mode, Sort sort) {
+        open(player, mode, sort, null);
+    }
+
+    /**
+     * Opens the leaderboard, only showing the players whose name starts with the search, if it isn't null.
+     */
+    public void open(Player player, Mode mode, Sort sort, @Nullable String search) {
+        open(player, mode, sort, search, 0);
+    }
+
+    /**
+     * Opens a page of the leaderboard, only showing the players whose name starts with the search, if it isn't null.
+     */
+    public void open(Player player, Mode mode, Sort sort, @Nullable String search, int index) {
         Leaderboard leaderboard = mode.getLeaderboard();
 
         if (leaderboard == null) {
@@ -39,59 +67,47 @@ public class SingleLeaderboardMenu {
         // init vars
         ParkourUser user = ParkourUser.getUser(player);
         String locale = user == null ? Option.OPTIONS_DEFAULTS.get(ParkourOption.LANG) : user.locale;
-        PagedMenu menu = new PagedMenu(3, Locales.getString(player, "%s.name".formatted(ParkourOption.LEADERBOARDS.path)));
-
-        List<MenuItem> items = new ArrayList<>();
-
-        Item base = Locales.getItem(player, "%s.head".formatted(ParkourOption.LEADERBOARDS.path));
+        boolean heads = !Util.isBedrockPlayer(player); // bedrock has no player skull support
 
-        Map<UUID, Score> sorted = sort.sort(leaderboard.scores);
+        Page page;
+        if (search == null) {
+            PageKey key = new PageKey(leaderboard.mode, locale, sort, heads, index);
+            page = pages.get(key);
 
-        for (UUID uuid : sorted.keySet()) {
-            int rank = items.size() + 1;
-            Score score = sorted.get(uuid);
-
-            if (score == null) {
-                continue;
+            if (page == null || page.isOutdated(leaderboard)) {
+                page = build(leaderboard, locale, sort, heads, index);
+                pages.put(key, page);
             }
+        } else {
+            page = search(leaderboard, locale, sort, heads, search, index);
+        }
 
-            Item item = base.clone().material(Material.PLAYER_HEAD)
-                    .modifyName(name -> name.replace("%r", Integer.toString(rank))
-                            .replace("%s", Integer.toString(score.score()))
-                            .replace("%p", score.name())
-                            .replace("%t", score.time())
-                            .replace("%d", score.difficulty()))
-                    .modifyLore(line -> line.replace("%r", Integer.toString(rank))
-                            .replace("%s", Integer.toString(score.score()))
-                            .replace("%p", score.name())
-                            .replace("%t", score.time())
-                            .replace("%d", score.difficulty()));
-
-            // Player head gathering
-            ItemStack stack = item.build();
-            stack.setType(Material.PLAYER_HEAD);
-
-            // if there are more than 36 players, don't show the heads to avoid server crashing
-            // and bedrock has no player skull support
-            if (rank <= 36 && !Util.isBedrockPlayer(player)) {
-                OfflinePlayer op = Bukkit.getOfflinePlayer(uuid);
+        Menu menu = new Menu(3, Locales.getString(player, "%s.name".formatted(ParkourOption.LEADERBOARDS.path)));
 
-                if (op.getName() != null && !op.getName().startsWith(".")) { // bedrock players' names with geyser start with a .
-                    SkullMeta meta = (SkullMeta) stack.getItemMeta();
+        UUID viewer = player.getUniqueId();
+        boolean found = false;
+        for (int slot = 0; slot < page.items.size(); slot++) {
+            Item item = page.items.get(slot);
 
-                    if (meta != null) {
-                        OfflineSkullSetter.setPlayerHead(op, meta);
-                        item.meta(meta);
-                    }
-                }
-            }
-
-            if (uuid.equals(player.getUniqueId())) {
+            if (page.uuids.get(slot).equals(viewer)) {
                 menu.item(21, item.clone());
+
+                item = item.clone();
                 item.glowing();
+                found = true;
             }
 
-            items.add(item);
+            menu.item(slot, item);
+        }
+
+        // the viewer's own score is always shown when its rank is known
+        if (!found && search == null && sort == leaderboard.sort) {
+            int rank = leaderboard.getRank(viewer);
+
+            if (rank > 0) {
+                Item base = Locales.getItem(locale, "%s.head".formatted(ParkourOption.LEADERBOARDS.path));
+                menu.item(21, render(base, rank, viewer, leaderboard.get(viewer), heads, new boolean[]{true}));
+            }
         }
 
         List<String> values = Locales.getStringList(locale, "%s.sort.values".formatted(ParkourOption.LEADERBOARDS.path));
@@ -114,50 +130,177 @@ public class SingleLeaderboardMenu {
             default -> Sort.SCORE;
         };
 
-        menu.displayRows(0, 1)
-                .addToDisplay(items)
-                .nextPage(26, new Item(Material.LIME_DYE, "<#0DCB07><bold>»").click(event -> menu.page(1)))
-                .prevPage(18, new Item(Material.RED_DYE, "<#DE1F1F><bold>«").click(event -> menu.page(-1)))
-                .item(22, Locales.getItem(player, ParkourOption.LEADERBOARDS.path + ".sort", name.toLowerCase()).click(event -> open(player, mode, next)))
+        if (index > 0) {
+            menu.item(18, new Item(Material.RED_DYE, "<#DE1F1F><bold>«").click(event -> open(player, mode, sort, search, index - 1)));
+        }
+        if (page.more) {
+            menu.item(26, new Item(Material.LIME_DYE, "<#0DCB07><bold>»").click(event -> open(player, mode, sort, search, index + 1)));
+        }
+
+        menu.item(22, Locales.getItem(player, ParkourOption.LEADERBOARDS.path + ".sort", name.toLowerCase()).click(event -> open(player, mode, next, search)))
                 .item(23, Locales.getItem(player, "other.close").click(event -> Menus.COMMUNITY.open(event.getPlayer())))
-                .fillBackground(Util.isBedrockPlayer(player) ? Material.AIR : Material.GRAY_STAINED_GLASS_PANE)
+                .fillBackground(heads ? Material.GRAY_STAINED_GLASS_PANE : Material.AIR)
                 .open(player);
     }
 
+    /**
+     * Removes all built pages, so these are built again with the current locale files.
+     */
+    public void invalidate() {
+        pages.clear();
+    }
+
+    // builds a page of all scores
+    private Page build(Leaderboard leaderboard, String locale, Sort sort, boolean heads, int index) {
+        long revision = leaderboard.getRevision();
+        long resolved = OfflineSkullSetter.getResolved();
+
+        Item base = Locales.getItem(locale, "%s.head".formatted(ParkourOption.LEADERBOARDS.path));
+        boolean[] complete = {true};
+
+        List<UUID> uuids = new ArrayList<>();
+        List<Item> items = new ArrayList<>();
+
+        int rank = index * PAGE_SIZE;
+        for (Map.Entry<UUID, Score> entry : leaderboard.page(sort, index, PAGE_SIZE)) {
+            rank++;
+
+            uuids.add(entry.getKey());
+            items.add(render(base, rank, entry.getKey(), entry.getValue(), heads, complete));
+        }
+
+        return new Page(revision, resolved, complete[0], uuids, items, leaderboard.size() > (index + 1) * PAGE_SIZE);
+    }
+
+    // builds a page of the scores of players whose name starts with the search
+    private Page search(Leaderboard leaderboard, String locale, Sort sort, boolean heads, String search, int index) {
+        Set<UUID> found = new HashSet<>(leaderboard.getNames().search(search, SEARCH_LIMIT));
+
+        Item base = Locales.getItem(locale, "%s.head".formatted(ParkourOption.LEADERBOARDS.path));
+        boolean[] complete = {true};
+
+        List<UUID> uuids = new ArrayList<>();
+        List<Item> items = new ArrayList<>();
+
+        int skip = index * PAGE_SIZE;
+        int matched = 0;
+        int rank = 0;
+        for (Map.Entry<UUID, Score> entry : leaderboard.page(sort, 0, leaderboard.size())) {
+            rank++;
+
+            if (!found.contains(entry.getKey()) || matched++ < skip) {
+                continue;
+            }
+            if (items.size() == PAGE_SIZE) {
+                break;
+            }
+
+            uuids.add(entry.getKey());
+            items.add(render(base, rank, entry.getKey(), entry.getValue(), heads, complete));
+        }
+
+        return new Page(0, 0, complete[0], uuids, items, matched > skip + PAGE_SIZE);
+    }
+
+    // builds the item of a single score, complete is set to false if the head is still being resolved
+    private Item render(Item base, int rank, UUID uuid, Score score, boolean heads, boolean[] complete) {
+        Item item = base.clone().material(Material.PLAYER_HEAD)
+                .modifyName(line -> format(line, rank, score))
+                .modifyLore(line -> format(line, rank, score));
+
+        if (heads && !score.name().startsWith(".")) { // bedrock players' names with geyser start with a .
+            ItemStack stack = item.build();
+            stack.setType(Material.PLAYER_HEAD);
+
+            SkullMeta meta = (SkullMeta) stack.getItemMeta();
+
+            if (meta != null) {
+                complete[0] &= OfflineSkullSetter.setPlayerHead(uuid, score.name(), meta);
+                item.meta(meta);
+            }
+        }
+
+        return item;
+    }
+
+    // replaces the placeholders of a score in a single pass
+    private static String format(String line, int rank, Score score) {
+        if (line.indexOf('%') == -1) {
+            return line;
+        }
+
+        StringBuilder builder = new StringBuilder(line.length() + 16);
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+
+            if (c == '%' && i + 1 < line.length()) {
+                String value = switch (line.charAt(i + 1)) {
+                    case 'r' -> Integer.toString(rank);
+                    case 's' -> Integer.toString(score.score());
+                    case 'p' -> score.name();
+                    case 't' -> score.time();
+                    case 'd' -> score.difficulty();
+                    default -> null;
+                };
+
+                if (value != null) {
+                    builder.append(value);
+                    i++;
+                    continue;
+                }
+            }
+
+            builder.append(c);
+        }
+
+        return builder.toString();
+    }
+
+    private record PageKey(String mode, String locale, Sort sort, boolean heads, int index) {
+
+    }
+
+    /**
+     * A built page.
+     *
+     * @param revision The revision of the leaderboard when this page was built.
+     * @param resolved The amount of resolved heads when this page was built.
+     * @param complete Whether all heads on this page have been set.
+     * @param uuids    The uuids of the players on this page.
+     * @param items    The items of the players on this page.
+     * @param more     Whether there is a next page.
+     */
+    private record Page(long revision, long resolved, boolean complete, List<UUID> uuids, List<Item> items, boolean more) {
+
+        boolean isOutdated(Leaderboard leaderboard) {
+            return revision != leaderboard.getRevision() || (!complete && resolved != OfflineSkullSetter.getResolved());
+        }
+    }
+
     public enum Sort {
 
         SCORE {
             @Override
-            Map<UUID, Score> sort(Map<UUID, Score> scores) {
-                return scores; // already sorted
+            public Comparator<Score> comparator() {
+                return Comparator.comparingInt(Score::score).reversed(); // reverse natural order (higher == better)
             }
         }, TIME {
             @Override
-            Map<UUID, Score> sort(Map<UUID, Score> scores) {
-                return scores.entrySet().stream().sorted((o1, o2) -> {
-                            long one = o1.getValue().getTimeMillis();
-                            long two = o2.getValue().getTimeMillis();
-
-                            return Math.toIntExact(one - two); // natural order (lower == better)
-                        }) // reverse natural order
-                        .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> b, LinkedHashMap::new));
+            public Comparator<Score> comparator() {
+                return Comparator.comparingInt(Score::getTimeMillis); // natural order (lower == better)
             }
         }, DIFFICULTY {
             @Override
-            Map<UUID, Score> sort(Map<UUID, Score> scores) {
-                return scores.entrySet().stream().sorted((o1, o2) -> {
-                            String first = o1.getValue().difficulty();
-                            String second = o2.getValue().difficulty();
-
-                            double one = Double.parseDouble(first.equals("?") ? "1.0" : first);
-                            double two = Double.parseDouble(second.equals("?") ? "1.0" : second);
-
-                            return (int) (100 * (two - one)); // reverse natural order (higher == better)
-                        }) // reverse natural order
-                        .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> b, LinkedHashMap::new));
+            public Comparator<Score> comparator() {
+                return Comparator.comparingDouble((Score score) -> Double.parseDouble(score.difficulty().equals("?") ? "1.0" : score.difficulty()))
+                        .reversed(); // reverse natural order (higher == better)
             }
         };
 
-        abstract Map<UUID, Score> sort(Map<UUID, Score> scores);
+        /**
+         * @return The order of scores from best to worst, in which leaderboards with this sort rank scores and in which scores are displayed.
+         */
+        public abstract Comparator<Score> comparator();
     }
 }
\ No newline at end of file
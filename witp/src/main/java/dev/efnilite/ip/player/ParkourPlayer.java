@@ -9,6 +9,7 @@ import dev.efnilite.ip.generator.Profile;
 import dev.efnilite.ip.menu.ParkourOption;
 import dev.efnilite.ip.mode.MultiMode;
 import dev.efnilite.ip.player.data.PreviousData;
+import dev.efnilite.ip.storage.WriteBehindStorage;
 import dev.efnilite.ip.world.WorldDivider;
 import dev.efnilite.vilib.inventory.Menu;
 import dev.efnilite.vilib.inventory.item.Item;
@@ -21,7 +22,8 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
-import java.util.function.BiConsumer;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 /**
  * Subclass of {@link ParkourUser}. This class is used for players who are actively playing Parkour in any (default) mode.
@@ -30,42 +32,12 @@ import java.util.function.BiConsumer;
  */
 public class ParkourPlayer extends ParkourUser {
 
-    public static final Map<String, OptionContainer> PLAYER_COLUMNS = new HashMap<>();
-
-    static {
-        PLAYER_COLUMNS.put("uuid", new OptionContainer(null, null));
-        PLAYER_COLUMNS.put("style", new OptionContainer(ParkourOption.STYLES, (player, v) -> player.style = v));
-        PLAYER_COLUMNS.put("blockLead", new OptionContainer(ParkourOption.LEADS, (player, v) -> player.blockLead = Integer.parseInt(v)));
-        PLAYER_COLUMNS.put("useParticles", new OptionContainer(ParkourOption.PARTICLES, (player, v) -> player.particles = parseBoolean(v)));
-        PLAYER_COLUMNS.put("useSpecial", new OptionContainer(ParkourOption.SPECIAL_BLOCKS, (player, v) -> player.useSpecialBlocks = parseBoolean(v)));
-        PLAYER_COLUMNS.put("showFallMsg", new OptionContainer(ParkourOption.FALL_MESSAGE, (player, v) -> player.showFallMessage = parseBoolean(v)));
-        PLAYER_COLUMNS.put("showScoreboard", new OptionContainer(ParkourOption.SCOREBOARD, (player, v) -> player.showScoreboard = parseBoolean(v)));
-        PLAYER_COLUMNS.put("selectedTime", new OptionContainer(ParkourOption.TIME, (player, v) -> player.selectedTime = Integer.parseInt(v)));
-        PLAYER_COLUMNS.put("collectedRewards", new OptionContainer(null, (player, v) -> {
-            player.collectedRewards = new ArrayList<>();
-
-            if (!v.isEmpty()) {
-                player.collectedRewards.addAll(Arrays.stream(v.replaceAll("[ \\[\\]]", "").split(","))
-                        .distinct()
-                        .toList());
-            }
-        }));
-        PLAYER_COLUMNS.put("locale", new OptionContainer(ParkourOption.LANG, (player, v) -> {
-            player._locale = v;
-            player.locale = v;
-        }));
-        PLAYER_COLUMNS.put("schematicDifficulty", new OptionContainer(ParkourOption.SCHEMATICS, (player, v) -> player.schematicDifficulty = Double.parseDouble(v)));
-        PLAYER_COLUMNS.put("sound", new OptionContainer(ParkourOption.SOUND, (player, v) -> player.sound = parseBoolean(v)));
-    }
-
     private static boolean parseBoolean(String string) {
         return string == null
                 || string.equals("1") // for MySQL
                 || string.equals("true"); // for disk
     }
 
-    public record OptionContainer(ParkourOption option, BiConsumer<ParkourPlayer, String> consumer) { }
-
     /**
      * @param player The player.
      * @return True when this player is a {@link ParkourPlayer}, false if not.
@@ -104,7 +76,10 @@ public class ParkourPlayer extends ParkourUser {
     public @Expose Integer selectedTime;
     public @Expose String style;
     public @Expose String _locale;
-    public @Expose List<String> collectedRewards;
+    public @Expose Set<Integer> collectedRewards;
+
+    // completed when the settings of this player have been read from storage
+    CompletableFuture<Void> loaded = CompletableFuture.completedFuture(null);
 
     /**
      * Creates a new instance of a ParkourPlayer<br>
@@ -133,26 +108,41 @@ public class ParkourPlayer extends ParkourUser {
     }
 
     /**
-     * Sets the user's settings. If an item is not included, the setting gets reset.
+     * Sets the user's settings. If a setting is not set or its option is disabled, the setting gets reset to the default value.
      *
-     * @param settings The settings map.
+     * @param settings The settings.
      */
-    public void setSettings(@NotNull Map<String, Object> settings) {
-        for (String key : PLAYER_COLUMNS.keySet()) {
-            Object value = settings.get(key);
-            OptionContainer container = PLAYER_COLUMNS.get(key);
+    public void setSettings(@NotNull PlayerSettings settings) {
+        style = getOrDefault(ParkourOption.STYLES, settings.style(), value -> value);
+        blockLead = getOrDefault(ParkourOption.LEADS, settings.blockLead(), Integer::parseInt);
+        particles = getOrDefault(ParkourOption.PARTICLES, settings.particles(), ParkourPlayer::parseBoolean);
+        useSpecialBlocks = getOrDefault(ParkourOption.SPECIAL_BLOCKS, settings.specialBlocks(), ParkourPlayer::parseBoolean);
+        showFallMessage = getOrDefault(ParkourOption.FALL_MESSAGE, settings.fallMessage(), ParkourPlayer::parseBoolean);
+        showScoreboard = getOrDefault(ParkourOption.SCOREBOARD, settings.scoreboard(), ParkourPlayer::parseBoolean);
+        selectedTime = getOrDefault(ParkourOption.TIME, settings.selectedTime(), Integer::parseInt);
+        schematicDifficulty = getOrDefault(ParkourOption.SCHEMATICS, settings.schematicDifficulty(), Double::parseDouble);
+        sound = getOrDefault(ParkourOption.SOUND, settings.sound(), ParkourPlayer::parseBoolean);
+        collectedRewards = new HashSet<>(settings.collectedRewards());
+
+        _locale = getOrDefault(ParkourOption.LANG, settings.locale(), value -> value);
+        locale = _locale;
+    }
 
-            if (container.consumer == null) {
-                continue;
-            }
+    // only the default values from the config are parsed
+    private static <T> T getOrDefault(ParkourOption option, @Nullable T value, Function<String, T> parser) {
+        if (value != null && Option.OPTIONS_ENABLED.getOrDefault(option, true)) {
+            return value;
+        }
 
-            if (value == null || !Option.OPTIONS_ENABLED.getOrDefault(container.option, true)) {
-                container.consumer.accept(this, Option.OPTIONS_DEFAULTS.getOrDefault(container.option, ""));
-                continue;
-            }
+        return parser.apply(Option.OPTIONS_DEFAULTS.getOrDefault(option, ""));
+    }
 
-            container.consumer.accept(this, String.valueOf(value));
-        }
+    /**
+     * @return The settings of this player, in the format of {@link #setSettings(PlayerSettings)}.
+     */
+    public PlayerSettings getSettings() {
+        return new PlayerSettings(style, blockLead, particles, useSpecialBlocks, showFallMessage, showScoreboard,
+                selectedTime, _locale, schematicDifficulty, sound, collectedRewards != null ? collectedRewards : Set.of());
     }
 
     /**
@@ -175,15 +165,25 @@ public class ParkourPlayer extends ParkourUser {
     }
 
     /**
-     * Saves the player's data to their file
+     * Saves the player's data to their file.
+     * The write is queued and merged with other writes of this player, see {@link WriteBehindStorage}.
+     *
+     * @param async False if the data should be written before this method returns.
      */
     public void save(boolean async) {
-        Runnable write = () -> IP.getStorage().writePlayer(this);
+        // writing before the settings have been read would overwrite these with the default settings
+        if (loaded.isCompletedExceptionally()) {
+            return;
+        }
+        if (async && !loaded.isDone()) {
+            loaded.thenRun(() -> save(true));
+            return;
+        }
 
-        if (async) {
-            Task.create(IP.getPlugin()).async().execute(write).run();
-        } else {
-            write.run();
+        IP.getStorage().writePlayer(this);
+
+        if (!async) {
+            IP.getStorage().flush(getUUID());
         }
     }
 
@@ -16,6 +16,7 @@ import dev.efnilite.ip.mode.Mode;
 import dev.efnilite.ip.player.data.PreviousData;
 import dev.efnilite.ip.session.Session;
 import dev.efnilite.ip.session.SessionChat;
+import dev.efnilite.ip.storage.AsyncStorage;
 import dev.efnilite.ip.util.Util;
 import dev.efnilite.ip.world.WorldDivider;
 import dev.efnilite.vilib.lib.fastboard.fastboard.FastBoard;
@@ -63,7 +64,26 @@ public abstract class ParkourUser {
         joinCount++;
         new ParkourJoinEvent(pp).call();
 
-        IP.getStorage().readPlayer(pp);
+        // settings that were prefetched on login or kept since the player last played are applied immediately
+        PlayerSettings cached = IP.getStorage().getCachedSettings(pp.getUUID());
+        if (cached != null) {
+            pp.setSettings(cached);
+            return pp;
+        }
+
+        // play with the default settings until the player's settings have been read
+        pp.setSettings(PlayerSettings.EMPTY);
+
+        PlayerSettings start = pp.getSettings();
+        pp.loaded = IP.getAsyncStorage().readSettings(pp.getUUID())
+                .thenAcceptAsync(settings -> {
+                    // settings that the player changed while these were read are kept
+                    pp.setSettings((settings != null ? settings : PlayerSettings.EMPTY).merge(start, pp.getSettings()));
+
+                    if (getUser(player) == pp && pp.session != null && pp.session.generator != null) {
+                        pp.updateGeneratorSettings(pp.session.generator);
+                    }
+                }, AsyncStorage.MAIN);
         return pp;
     }
 
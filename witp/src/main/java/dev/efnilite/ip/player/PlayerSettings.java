@@ -0,0 +1,88 @@
+package dev.efnilite.ip.player;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The stored settings of a player. Settings which are null have not been set, so the default value is used.
+ *
+ * @param style               The selected style.
+ * @param blockLead           The amount of blocks that are generated ahead.
+ * @param particles           Whether particles are shown.
+ * @param specialBlocks       Whether special blocks are generated.
+ * @param fallMessage         Whether the fall message is shown.
+ * @param scoreboard          Whether the scoreboard is shown.
+ * @param selectedTime        The selected time of day.
+ * @param locale              The selected language.
+ * @param schematicDifficulty The difficulty of schematics.
+ * @param sound               Whether sounds are played.
+ * @param collectedRewards    The scores of which the one-time rewards have been collected.
+ * @since 5.1.0
+ */
+public record PlayerSettings(@Nullable String style, @Nullable Integer blockLead, @Nullable Boolean particles,
+                             @Nullable Boolean specialBlocks, @Nullable Boolean fallMessage, @Nullable Boolean scoreboard,
+                             @Nullable Integer selectedTime, @Nullable String locale, @Nullable Double schematicDifficulty,
+                             @Nullable Boolean sound, @NotNull Set<Integer> collectedRewards) {
+
+    /**
+     * Settings of a player who has no stored settings, so every setting uses the default value.
+     */
+    public static final PlayerSettings EMPTY = new PlayerSettings(null, null, null, null, null, null, null, null, null, null, Set.of());
+
+    public PlayerSettings {
+        collectedRewards = Set.copyOf(collectedRewards);
+    }
+
+    /**
+     * Parses collected rewards in the format of versions before 5.1.0, e.g. {@code 10,50} or {@code [10, 50]}.
+     *
+     * @param string The rewards.
+     * @return The scores of the collected rewards.
+     */
+    public static Set<Integer> parseRewards(@Nullable String string) {
+        Set<Integer> rewards = new HashSet<>();
+
+        if (string == null) {
+            return rewards;
+        }
+
+        for (String part : string.replaceAll("[ \\[\\]]", "").split(",")) {
+            try {
+                rewards.add(Integer.parseInt(part));
+            } catch (NumberFormatException ignored) {
+
+            }
+        }
+
+        return rewards;
+    }
+
+    /**
+     * Combines these settings, which were read from storage, with the settings of a player who started playing before these were read.
+     * Settings which the player has changed since are kept, all others are taken from these settings. Collected rewards are combined.
+     *
+     * @param start   The settings the player started playing with.
+     * @param current The settings of the player now.
+     * @return The combined settings.
+     */
+    public PlayerSettings merge(@NotNull PlayerSettings start, @NotNull PlayerSettings current) {
+        Set<Integer> rewards = new HashSet<>(collectedRewards);
+        rewards.addAll(current.collectedRewards);
+
+        return new PlayerSettings(pick(style, start.style, current.style), pick(blockLead, start.blockLead, current.blockLead),
+                pick(particles, start.particles, current.particles), pick(specialBlocks, start.specialBlocks, current.specialBlocks),
+                pick(fallMessage, start.fallMessage, current.fallMessage), pick(scoreboard, start.scoreboard, current.scoreboard),
+                pick(selectedTime, start.selectedTime, current.selectedTime), pick(locale, start.locale, current.locale),
+                pick(schematicDifficulty, start.schematicDifficulty, current.schematicDifficulty), pick(sound, start.sound, current.sound),
+                rewards);
+    }
+
+    // the stored setting, unless the player has changed it
+    private static <T> T pick(T stored, T start, T current) {
+        return Objects.equals(start, current) ? stored : current;
+    }
+}
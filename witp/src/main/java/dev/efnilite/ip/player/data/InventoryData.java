@@ -7,24 +7,20 @@ import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
-import org.bukkit.util.io.BukkitObjectInputStream;
-import org.bukkit.util.io.BukkitObjectOutputStream;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.*;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Consumer;
 
 public class InventoryData {
 
-    private final File file;
     private final Player player;
     private Map<Integer, ItemStack> items = new HashMap<>();
 
     public InventoryData(Player player) {
         this.player = player;
-        this.file = IP.getInFolder("inventories/%s".formatted(player.getUniqueId()));
     }
 
     /**
@@ -41,22 +37,22 @@ public class InventoryData {
      * @param onFinish What to do when the async procedure has finished.
      */
     public void load(Consumer<@Nullable InventoryData> onFinish) {
-        if (!file.exists()) {
-            onFinish.accept(null);
-            return;
-        }
-
         Task.create(IP.getPlugin()).async().execute(() -> loadFile(onFinish)).run();
     }
 
-    @SuppressWarnings("unchecked")
     private void loadFile(Consumer<@Nullable InventoryData> onFinish) {
-        try (BukkitObjectInputStream stream = new BukkitObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
-            items = (Map<Integer, ItemStack>) stream.readObject();
+        try {
+            Map<Integer, ItemStack> read = InventoryStore.read(player.getUniqueId());
 
+            if (read == null) {
+                onFinish.accept(null);
+                return;
+            }
+
+            items = read;
             onFinish.accept(this);
-        } catch (IOException | ClassNotFoundException ex) {
-            IP.logging().stack("Error while reading inventory of %s from file %s".formatted(player.getName(), file.getName()), ex);
+        } catch (IOException ex) {
+            IP.logging().stack("Error while reading inventory of %s".formatted(player.getName()), ex);
             onFinish.accept(null);
         }
     }
@@ -64,7 +60,7 @@ public class InventoryData {
     /**
      * Saves the inventory to cache, so if the player leaves the player gets their items back
      *
-     * @param toFile Whether the file should be updated.
+     * @param toFile Whether the file should be updated. The file is written in the background by {@link InventoryStore}.
      */
     public void save(boolean toFile) {
         int index = 0;
@@ -84,23 +80,7 @@ public class InventoryData {
         }
 
         if (toFile) {
-            Task.create(IP.getPlugin()).async().execute(this::saveFile).run();
-        }
-    }
-
-    private void saveFile() {
-        try {
-            file.getParentFile().mkdirs();
-            file.createNewFile();
-        } catch (IOException ex) {
-            IP.logging().stack("Error while creating file to save inventory of %s to file %s".formatted(player.getName(), file.getName()), ex);
-        }
-
-        try (ObjectOutputStream stream = new BukkitObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
-            stream.writeObject(items);
-            stream.flush();
-        } catch (IOException ex) {
-            IP.logging().stack("Error while saving inventory of %s to file %s".formatted(player.getName(), file.getName()), ex);
+            InventoryStore.queue(player.getUniqueId(), items);
         }
     }
-}
\ No newline at end of file
+}
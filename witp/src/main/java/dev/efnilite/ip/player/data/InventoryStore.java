@@ -0,0 +1,334 @@
+package dev.efnilite.ip.player.data;
+
+import dev.efnilite.ip.IP;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.util.io.BukkitObjectInputStream;
+import org.bukkit.util.io.BukkitObjectOutputStream;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Stores inventory snapshots of players, see {@link InventoryData}.
+ * Every item is stored once in {@code inventories/items}, named after the SHA-256 hash of the serialized item,
+ * so players who join with the same items share these files. A snapshot only contains the slot and hash of every item.
+ * All files are compressed. Snapshots are queued and written in the background, see {@link #flush()}.
+ * Items which are no longer in any snapshot are deleted by {@link #sweep()}.
+ *
+ * @since 5.1.0
+ */
+public final class InventoryStore {
+
+    /**
+     * The interval in ticks at which queued snapshots are written.
+     */
+    public static final int INTERVAL = 20;
+
+    /**
+     * The version of the snapshot format.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The interval in ticks at which items which are no longer in any snapshot are deleted, once a day.
+     */
+    public static final int SWEEP_INTERVAL = 24 * 60 * 60 * 20;
+
+    // the margin in millis for the precision of modification times of files
+    private static final long MODIFIED_MARGIN = 2000;
+
+    // the amount of recently written items of which the hash is kept, so common items aren't serialized again
+    private static final int HASH_CACHE_SIZE = 512;
+
+    private static final int HASH_LENGTH = 32;
+
+    // the latest snapshot of every player that hasn't been written yet
+    private static final Map<UUID, Map<Integer, ItemStack>> pending = new LinkedHashMap<>();
+
+    private static final Map<ItemStack, String> hashes = new LinkedHashMap<ItemStack, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ItemStack, String> eldest) {
+            return size() > HASH_CACHE_SIZE;
+        }
+    };
+
+    private InventoryStore() {
+
+    }
+
+    /**
+     * Queues a snapshot. If the player already has a queued snapshot, it is replaced.
+     *
+     * @param uuid  The player's uuid.
+     * @param items The items, by slot.
+     */
+    public static void queue(@NotNull UUID uuid, @NotNull Map<Integer, ItemStack> items) {
+        synchronized (pending) {
+            pending.put(uuid, new HashMap<>(items));
+        }
+    }
+
+    /**
+     * Writes all queued snapshots.
+     */
+    public static synchronized void flush() {
+        Map<UUID, Map<Integer, ItemStack>> snapshots;
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return;
+            }
+
+            snapshots = new LinkedHashMap<>(pending);
+            pending.clear();
+        }
+
+        snapshots.forEach((uuid, items) -> {
+            try {
+                write(uuid, items);
+            } catch (IOException ex) {
+                IP.logging().stack("Error while saving inventory of %s".formatted(uuid), ex);
+            }
+        });
+    }
+
+    /**
+     * Reads the latest snapshot of a player. Waits for snapshots that are being written.
+     *
+     * @param uuid The player's uuid.
+     * @return The items, by slot. Null if the player has no snapshot.
+     * @throws IOException If the snapshot or one of its items can't be read.
+     */
+    public static synchronized @Nullable Map<Integer, ItemStack> read(@NotNull UUID uuid) throws IOException {
+        synchronized (pending) {
+            Map<Integer, ItemStack> queued = pending.get(uuid);
+
+            if (queued != null) {
+                return new HashMap<>(queued);
+            }
+        }
+
+        File file = getSnapshotFile(uuid);
+        if (file.exists()) {
+            return readSnapshot(file);
+        }
+
+        // snapshots from before 5.1.0 contain the serialized map of items
+        File legacy = getLegacyFile(uuid);
+        if (legacy.exists()) {
+            try (BukkitObjectInputStream stream = new BukkitObjectInputStream(new BufferedInputStream(new FileInputStream(legacy)))) {
+                @SuppressWarnings("unchecked")
+                Map<Integer, ItemStack> items = (Map<Integer, ItemStack>) stream.readObject();
+
+                return items;
+            } catch (ClassNotFoundException ex) {
+                throw new IOException(ex);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Deletes all items which are no longer in any snapshot.
+     * Snapshots are read without blocking reads and writes. Only the deletion blocks these, during which the snapshots
+     * that were written in the meantime are read again.
+     *
+     * @return The amount of deleted items.
+     * @throws IOException If a snapshot can't be read, in which case nothing is deleted.
+     */
+    public static int sweep() throws IOException {
+        long start = System.currentTimeMillis() - MODIFIED_MARGIN;
+
+        Set<String> used = new HashSet<>();
+        for (File snapshot : getSnapshotFiles()) {
+            readHashes(snapshot, used);
+        }
+
+        synchronized (InventoryStore.class) {
+            for (File snapshot : getSnapshotFiles()) {
+                if (snapshot.lastModified() >= start) {
+                    readHashes(snapshot, used);
+                }
+            }
+
+            File[] items = getItemFile("").listFiles();
+            if (items == null) {
+                return 0;
+            }
+
+            Set<String> deleted = new HashSet<>();
+            for (File item : items) {
+                String name = item.getName();
+
+                // items written during the sweep may belong to a snapshot that is still queued
+                if (used.contains(name) || item.lastModified() >= start) {
+                    continue;
+                }
+
+                if (item.delete()) {
+                    deleted.add(name);
+                }
+            }
+
+            // hashes of deleted items would otherwise be used without writing the item again
+            hashes.values().removeAll(deleted);
+
+            return (int) deleted.stream().filter(name -> !name.endsWith(".tmp")).count();
+        }
+    }
+
+    private static File[] getSnapshotFiles() {
+        File[] files = IP.getInFolder("inventories").listFiles((dir, name) -> name.endsWith(".inv"));
+
+        return files != null ? files : new File[0];
+    }
+
+    // adds the hashes of all items in a snapshot, without reading the items
+    private static void readHashes(File file, Set<String> hashes) throws IOException {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new BufferedInputStream(new FileInputStream(file))))) {
+            int version = in.readUnsignedByte();
+
+            if (version != VERSION) {
+                throw new IOException("Unknown inventory format version %d in %s".formatted(version, file));
+            }
+
+            int count = in.readUnsignedShort();
+
+            byte[] hash = new byte[HASH_LENGTH];
+            for (int i = 0; i < count; i++) {
+                in.readUnsignedShort();
+                in.readFully(hash);
+
+                hashes.add(HexFormat.of().formatHex(hash));
+            }
+        } catch (FileNotFoundException ex) {
+            // the snapshot was removed in the meantime
+        }
+    }
+
+    private static void write(UUID uuid, Map<Integer, ItemStack> items) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            out.writeByte(VERSION);
+            out.writeShort(items.size());
+
+            for (Map.Entry<Integer, ItemStack> entry : new TreeMap<>(items).entrySet()) {
+                out.writeShort(entry.getKey());
+                out.write(HexFormat.of().parseHex(writeItem(entry.getValue())));
+            }
+        }
+
+        File file = getSnapshotFile(uuid);
+        replace(file, bytes.toByteArray());
+
+        getLegacyFile(uuid).delete();
+    }
+
+    // returns the hash of the item, after writing the item if it hasn't been written before
+    private static String writeItem(ItemStack item) throws IOException {
+        String cached = hashes.get(item);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (BukkitObjectOutputStream out = new BukkitObjectOutputStream(bytes)) {
+            out.writeObject(item);
+        }
+
+        byte[] serialized = bytes.toByteArray();
+        String hash = HexFormat.of().formatHex(getDigest().digest(serialized));
+
+        File file = getItemFile(hash);
+        if (!file.exists()) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (DeflaterOutputStream out = new DeflaterOutputStream(compressed)) {
+                out.write(serialized);
+            }
+
+            replace(file, compressed.toByteArray());
+        }
+
+        hashes.put(item.clone(), hash);
+
+        return hash;
+    }
+
+    private static Map<Integer, ItemStack> readSnapshot(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new BufferedInputStream(new FileInputStream(file))))) {
+            int version = in.readUnsignedByte();
+
+            if (version != VERSION) {
+                throw new IOException("Unknown inventory format version %d".formatted(version));
+            }
+
+            int count = in.readUnsignedShort();
+            Map<Integer, ItemStack> items = new HashMap<>();
+
+            byte[] hash = new byte[HASH_LENGTH];
+            for (int i = 0; i < count; i++) {
+                int slot = in.readUnsignedShort();
+                in.readFully(hash);
+
+                items.put(slot, readItem(HexFormat.of().formatHex(hash)));
+            }
+
+            return items;
+        }
+    }
+
+    private static ItemStack readItem(String hash) throws IOException {
+        File file = getItemFile(hash);
+
+        try (BukkitObjectInputStream in = new BukkitObjectInputStream(new InflaterInputStream(new BufferedInputStream(new FileInputStream(file))))) {
+            return (ItemStack) in.readObject();
+        } catch (ClassNotFoundException ex) {
+            throw new IOException("Invalid item %s".formatted(hash), ex);
+        }
+    }
+
+    // writes to a temporary file which then replaces the file, so a crash never leaves a partially written file
+    private static void replace(File file, byte[] data) throws IOException {
+        file.getParentFile().mkdirs();
+
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        Files.write(temp.toPath(), data);
+
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static MessageDigest getDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex); // every jvm supports sha-256
+        }
+    }
+
+    private static File getSnapshotFile(UUID uuid) {
+        return IP.getInFolder("inventories/%s.inv".formatted(uuid));
+    }
+
+    private static File getLegacyFile(UUID uuid) {
+        return IP.getInFolder("inventories/%s".formatted(uuid));
+    }
+
+    private static File getItemFile(String hash) {
+        return IP.getInFolder("inventories/items/%s".formatted(hash));
+    }
+}
@@ -0,0 +1,196 @@
+package dev.efnilite.ip.storage;
+
+import dev.efnilite.ip.IP;
+import dev.efnilite.ip.leaderboard.Score;
+import dev.efnilite.ip.leaderboard.WindowedLeaderboard;
+import dev.efnilite.ip.menu.community.SingleLeaderboardMenu;
+import dev.efnilite.ip.player.ParkourPlayer;
+import dev.efnilite.ip.player.PlayerSettings;
+import dev.efnilite.vilib.util.Task;
+import org.bukkit.Bukkit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking access to a {@link Storage}.
+ * Every call runs on a bounded pool of I/O threads and returns a future, which fails when the call takes longer than {@link #TIMEOUT} seconds
+ * or when too many calls are waiting. Use {@link #MAIN} to handle the result on the main thread.
+ *
+ * @since 5.1.0
+ */
+public final class AsyncStorage {
+
+    /**
+     * The time in seconds after which a call fails.
+     */
+    public static final int TIMEOUT = 30;
+
+    /**
+     * The maximum amount of calls that may wait for a thread.
+     */
+    public static final int QUEUE_SIZE = 1024;
+
+    /**
+     * Runs callbacks on the main thread, e.g. {@code future.thenAcceptAsync(consumer, AsyncStorage.MAIN)}.
+     */
+    public static final Executor MAIN = runnable -> {
+        if (Bukkit.isPrimaryThread()) {
+            runnable.run();
+        } else {
+            Task.create(IP.getPlugin()).execute(runnable).run();
+        }
+    };
+
+    private final Storage storage;
+    private final ThreadPoolExecutor executor;
+
+    public AsyncStorage(@NotNull Storage storage, int threads) {
+        this.storage = storage;
+
+        AtomicInteger count = new AtomicInteger();
+        int size = Math.max(1, threads);
+
+        this.executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(QUEUE_SIZE), runnable -> {
+            Thread thread = new Thread(runnable, "IP Storage #%d".formatted(count.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return The storage that calls are made to.
+     */
+    public Storage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Runs work which consists of multiple storage calls on an I/O thread.
+     *
+     * @param runnable The work.
+     * @return The future, completed when the work is done.
+     */
+    public CompletableFuture<Void> run(@NotNull Runnable runnable) {
+        return supply(() -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    /**
+     * @see Storage#readScores(String)
+     */
+    public CompletableFuture<Map<UUID, Score>> readScores(@NotNull String mode) {
+        return supply(() -> storage.readScores(mode));
+    }
+
+    /**
+     * @see Storage#writeScores(String, Map)
+     */
+    public CompletableFuture<Void> writeScores(@NotNull String mode, @NotNull Map<UUID, Score> scores) {
+        return run(() -> storage.writeScores(mode, scores));
+    }
+
+    /**
+     * @see Storage#readScores(String, SingleLeaderboardMenu.Sort, int)
+     */
+    public CompletableFuture<Map<UUID, Score>> readScores(@NotNull String mode, @NotNull SingleLeaderboardMenu.Sort sort, int limit) {
+        return supply(() -> storage.readScores(mode, sort, limit));
+    }
+
+    /**
+     * @see Storage#readScore(String, UUID)
+     */
+    public CompletableFuture<@Nullable Score> readScore(@NotNull String mode, @NotNull UUID uuid) {
+        return supply(() -> storage.readScore(mode, uuid));
+    }
+
+    /**
+     * @see Storage#readRank(String, SingleLeaderboardMenu.Sort, Score)
+     */
+    public CompletableFuture<Integer> readRank(@NotNull String mode, @NotNull SingleLeaderboardMenu.Sort sort, @NotNull Score score) {
+        return supply(() -> storage.readRank(mode, sort, score));
+    }
+
+    /**
+     * @see Storage#updateScores(String, Map, Set)
+     */
+    public CompletableFuture<Void> updateScores(@NotNull String mode, @NotNull Map<UUID, Score> changed, @NotNull Set<UUID> removed) {
+        return run(() -> storage.updateScores(mode, changed, removed));
+    }
+
+    /**
+     * @see Storage#readChanges(String, long)
+     */
+    public CompletableFuture<Storage.Changes> readChanges(@NotNull String mode, long version) {
+        return supply(() -> storage.readChanges(mode, version));
+    }
+
+    /**
+     * @see Storage#readWindowScores(String, WindowedLeaderboard.Period, long)
+     */
+    public CompletableFuture<Map<UUID, Score>> readWindowScores(@NotNull String mode, @NotNull WindowedLeaderboard.Period period, long bucket) {
+        return supply(() -> storage.readWindowScores(mode, period, bucket));
+    }
+
+    /**
+     * @see Storage#writeWindowScores(String, WindowedLeaderboard.Period, long, Map)
+     */
+    public CompletableFuture<Void> writeWindowScores(@NotNull String mode, @NotNull WindowedLeaderboard.Period period, long bucket, @NotNull Map<UUID, Score> scores) {
+        return run(() -> storage.writeWindowScores(mode, period, bucket, scores));
+    }
+
+    /**
+     * Only reads the settings, as these have to be applied to the player on the main thread.
+     *
+     * @see Storage#readSettings(UUID)
+     */
+    public CompletableFuture<PlayerSettings> readSettings(@NotNull UUID uuid) {
+        return supply(() -> storage.readSettings(uuid));
+    }
+
+    /**
+     * @see Storage#writePlayer(ParkourPlayer)
+     */
+    public CompletableFuture<Void> writePlayer(@NotNull ParkourPlayer player) {
+        return run(() -> storage.writePlayer(player));
+    }
+
+    /**
+     * Called on plugin shutdown. Waits for all calls that have already been made.
+     */
+    public void close() {
+        executor.shutdown();
+
+        try {
+            if (!executor.awaitTermination(TIMEOUT, TimeUnit.SECONDS)) {
+                IP.logging().error("Storage calls took longer than %d seconds to finish".formatted(TIMEOUT));
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // the call itself isn't interrupted on a timeout, since that could leave files or connections in a broken state
+    private <T> CompletableFuture<T> supply(Supplier<T> supplier) {
+        try {
+            return CompletableFuture.supplyAsync(supplier, executor)
+                    .orTimeout(TIMEOUT, TimeUnit.SECONDS)
+                    .whenComplete((result, ex) -> {
+                        if (ex != null) {
+                            IP.logging().stack("Error while trying to access storage", ex);
+                        }
+                    });
+        } catch (RejectedExecutionException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+}
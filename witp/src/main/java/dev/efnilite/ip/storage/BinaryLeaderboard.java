@@ -0,0 +1,436 @@
+package dev.efnilite.ip.storage;
+
+import dev.efnilite.ip.leaderboard.Score;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * A leaderboard stored in a binary file with fixed-width records, which is memory-mapped to read and update scores in place.
+ * <p>
+ * The file starts with a header of {@link #HEADER} bytes: a magic number, the format version, the amount of records and a revision
+ * which increases on every write. Every record is {@link #RECORD} bytes: the uuid as two longs, the score, the time in millis,
+ * the difficulty in tenths and the position of the name in the name table. Names are stored once in a separate append-only file,
+ * as a short length followed by UTF-8 bytes.
+ * <p>
+ * Removing a score moves the last record into its place, so records are always stored without gaps.
+ * <p>
+ * Records are updated in place. The records of an update are first written to a journal file with a checksum,
+ * so an update that is interrupted, e.g. because of a crash, is finished when the file is read again.
+ *
+ * @since 5.1.0
+ */
+final class BinaryLeaderboard {
+
+    /**
+     * The size of the header in bytes.
+     */
+    public static final int HEADER = 32;
+
+    /**
+     * The size of a record in bytes.
+     */
+    public static final int RECORD = 32;
+
+    private static final int MAGIC = 0x49504C42; // IPLB
+    private static final int FORMAT = 1;
+
+    // the magic number, the amount of written records, the amount of records and the revision
+    private static final int JOURNAL_HEADER = 20;
+
+    private final File file;
+    private final File namesFile;
+    private final File journal;
+
+    // the record index of every uuid
+    private final Map<UUID, Integer> slots = new HashMap<>();
+
+    // the position of every name in the name table
+    private final Map<String, Integer> offsets = new HashMap<>();
+    private final Map<Integer, String> names = new HashMap<>();
+    private long namesLength;
+
+    // the amount of records, -1 if the file hasn't been loaded yet
+    private int count = -1;
+    private long revision;
+
+    BinaryLeaderboard(@NotNull File file, @NotNull File namesFile) {
+        this.file = file;
+        this.namesFile = namesFile;
+        this.journal = new File(file.getParentFile(), file.getName() + ".journal");
+    }
+
+    /**
+     * @return The revision stored in the file, which changes on every write. 0 if the file doesn't exist.
+     * @throws IOException If the header can't be read.
+     */
+    synchronized long getRevision() throws IOException {
+        recover();
+
+        if (!file.exists()) {
+            return 0;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            channel.read(header, 0);
+
+            long stored = header.getLong(12);
+
+            // another server has written the file, so the index is outdated
+            if (stored != revision) {
+                count = -1;
+            }
+
+            return stored;
+        }
+    }
+
+    /**
+     * @return All scores.
+     * @throws IOException If the file can't be read.
+     */
+    synchronized Map<UUID, Score> read() throws IOException {
+        recover();
+
+        slots.clear();
+        count = 0;
+        revision = 0;
+        readNames();
+
+        Map<UUID, Score> scores = new HashMap<>();
+
+        if (!file.exists() || file.length() < HEADER) {
+            return scores;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT) {
+                throw new IOException("Unknown leaderboard format in %s".formatted(file));
+            }
+
+            int stored = (int) Math.min(buffer.getInt(8), (channel.size() - HEADER) / RECORD);
+            revision = buffer.getLong(12);
+
+            for (int i = 0; i < stored; i++) {
+                int position = HEADER + i * RECORD;
+                UUID uuid = new UUID(buffer.getLong(position), buffer.getLong(position + 8));
+
+                slots.put(uuid, i);
+                scores.put(uuid, new Score(names.getOrDefault(buffer.getInt(position + 28), "?"),
+                        decodeTime(buffer.getInt(position + 20)),
+                        decodeDifficulty(buffer.getInt(position + 24)),
+                        buffer.getInt(position + 16)));
+            }
+            count = stored;
+        }
+
+        return scores;
+    }
+
+    /**
+     * Replaces all scores.
+     *
+     * @param scores All scores.
+     * @throws IOException If the file can't be written.
+     */
+    synchronized void write(@NotNull Map<UUID, Score> scores) throws IOException {
+        load();
+
+        Set<UUID> removed = new HashSet<>(slots.keySet());
+        removed.removeAll(scores.keySet());
+
+        update(scores, removed);
+    }
+
+    /**
+     * Writes only the changed scores, in place.
+     *
+     * @param changed The scores that have been added or changed.
+     * @param removed The uuids of the scores that have been removed.
+     * @throws IOException If the file can't be written.
+     */
+    synchronized void update(@NotNull Map<UUID, Score> changed, @NotNull Set<UUID> removed) throws IOException {
+        load();
+
+        if (changed.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+
+        Map<UUID, Integer> nameOffsets = appendNames(changed);
+
+        // the records that are written, by slot
+        Map<Integer, byte[]> writes = new TreeMap<>();
+        Map<UUID, Integer> updated = new HashMap<>(slots);
+        int size = count;
+
+        try (FileChannel channel = file.exists() ? FileChannel.open(file.toPath(), StandardOpenOption.READ) : null) {
+            for (UUID uuid : removed) {
+                Integer slot = updated.remove(uuid);
+
+                if (slot == null) {
+                    continue;
+                }
+
+                // the last record is moved into the place of the removed record
+                int last = size - 1;
+                byte[] moved = writes.containsKey(last) ? writes.remove(last) : slot != last ? readRecord(channel, last) : null;
+
+                if (slot != last) {
+                    ByteBuffer record = ByteBuffer.wrap(moved);
+
+                    writes.put(slot, moved);
+                    updated.put(new UUID(record.getLong(0), record.getLong(8)), slot);
+                }
+                size--;
+            }
+        }
+
+        for (Map.Entry<UUID, Score> entry : changed.entrySet()) {
+            UUID uuid = entry.getKey();
+            Score score = entry.getValue();
+
+            Integer slot = updated.get(uuid);
+            if (slot == null) {
+                slot = size++;
+                updated.put(uuid, slot);
+            }
+
+            writes.put(slot, ByteBuffer.allocate(RECORD)
+                    .putLong(uuid.getMostSignificantBits())
+                    .putLong(uuid.getLeastSignificantBits())
+                    .putInt(score.score())
+                    .putInt(encodeTime(score.time()))
+                    .putInt(encodeDifficulty(score.difficulty()))
+                    .putInt(nameOffsets.get(uuid))
+                    .array());
+        }
+
+        // the changes are written to the journal first, so an update that is interrupted can be finished when the file is read again
+        writeJournal(writes, size, revision + 1);
+
+        try {
+            apply(writes, size, revision + 1);
+            Files.delete(journal.toPath());
+        } catch (IOException ex) {
+            count = -1; // read again, which finishes the update from the journal
+            throw ex;
+        }
+
+        slots.clear();
+        slots.putAll(updated);
+        count = size;
+        revision++;
+    }
+
+    // writes records in place and then the header with the new amount of records and revision
+    private void apply(Map<Integer, byte[]> writes, int count, long revision) throws IOException {
+        file.getParentFile().mkdirs();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // the file is never made smaller, so it can't be truncated while it is still mapped
+            long size = Math.max(channel.size(), HEADER + (long) count * RECORD);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+            writes.forEach((slot, record) -> buffer.put(HEADER + slot * RECORD, record));
+
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, FORMAT);
+            buffer.putInt(8, count);
+            buffer.putLong(12, revision);
+
+            buffer.force();
+        }
+    }
+
+    // the journal is the amount of records and revision after the update, followed by every record that is written and a checksum
+    private void writeJournal(Map<Integer, byte[]> writes, int count, long revision) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(JOURNAL_HEADER + writes.size() * (Integer.BYTES + RECORD) + Integer.BYTES);
+
+        buffer.putInt(MAGIC).putInt(writes.size()).putInt(count).putLong(revision);
+        writes.forEach((slot, record) -> buffer.putInt(slot).put(record));
+        buffer.putInt(checksum(buffer.array(), buffer.position()));
+
+        journal.getParentFile().mkdirs();
+        try (FileChannel channel = FileChannel.open(journal.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+
+    // finishes an update that was interrupted, or discards it if the journal itself was only partially written
+    private void recover() throws IOException {
+        if (!journal.exists()) {
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(journal.toPath()));
+
+        if (buffer.capacity() >= JOURNAL_HEADER + Integer.BYTES && buffer.getInt(0) == MAGIC) {
+            int entries = buffer.getInt(4);
+            long length = JOURNAL_HEADER + (long) entries * (Integer.BYTES + RECORD);
+
+            if (entries >= 0 && length + Integer.BYTES == buffer.capacity() && checksum(buffer.array(), (int) length) == buffer.getInt((int) length)) {
+                Map<Integer, byte[]> writes = new TreeMap<>();
+
+                buffer.position(JOURNAL_HEADER);
+                for (int i = 0; i < entries; i++) {
+                    int slot = buffer.getInt();
+                    byte[] record = new byte[RECORD];
+                    buffer.get(record);
+
+                    writes.put(slot, record);
+                }
+
+                apply(writes, buffer.getInt(8), buffer.getLong(12));
+            }
+        }
+
+        Files.delete(journal.toPath());
+    }
+
+    private static byte[] readRecord(FileChannel channel, int slot) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(RECORD);
+
+        while (record.hasRemaining()) {
+            if (channel.read(record, HEADER + (long) slot * RECORD + record.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+
+        return record.array();
+    }
+
+    private static int checksum(byte[] bytes, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+
+        return (int) crc.getValue();
+    }
+
+    // loads the index, if it hasn't been loaded or is outdated
+    private void load() throws IOException {
+        if (count < 0) {
+            read();
+        }
+    }
+
+    private void readNames() throws IOException {
+        offsets.clear();
+        names.clear();
+        namesLength = 0;
+
+        if (!namesFile.exists()) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(namesFile.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            // a name that was only partially written is ignored and overwritten
+            while (buffer.remaining() >= 2) {
+                int offset = buffer.position();
+                int length = buffer.getShort() & 0xFFFF;
+
+                if (buffer.remaining() < length) {
+                    break;
+                }
+
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+
+                String name = new String(bytes, StandardCharsets.UTF_8);
+                offsets.put(name, offset);
+                names.put(offset, name);
+                namesLength = buffer.position();
+            }
+        }
+    }
+
+    // appends names that aren't in the name table yet and returns the offset of the name of every score, -1 if it has no name
+    private Map<UUID, Integer> appendNames(Map<UUID, Score> scores) throws IOException {
+        Map<UUID, Integer> result = new HashMap<>();
+        ByteArrayOutputStream appended = new ByteArrayOutputStream();
+        long length = namesLength;
+
+        for (Map.Entry<UUID, Score> entry : scores.entrySet()) {
+            String name = entry.getValue().name();
+
+            if (name == null) {
+                result.put(entry.getKey(), -1);
+                continue;
+            }
+
+            Integer offset = offsets.get(name);
+            if (offset == null) {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                int size = Math.min(bytes.length, 0xFFFF);
+
+                offset = (int) (length + appended.size());
+                appended.write(size >>> 8);
+                appended.write(size);
+                appended.write(bytes, 0, size);
+
+                offsets.put(name, offset);
+                names.put(offset, name);
+            }
+
+            result.put(entry.getKey(), offset);
+        }
+
+        if (appended.size() == 0) {
+            return result;
+        }
+
+        namesFile.getParentFile().mkdirs();
+        try (FileChannel channel = FileChannel.open(namesFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(appended.toByteArray()), length);
+            channel.force(false);
+        }
+        namesLength = length + appended.size();
+
+        return result;
+    }
+
+    private static int encodeTime(String time) {
+        try {
+            return new Score(null, time, null, 0).getTimeMillis();
+        } catch (RuntimeException ex) {
+            return -1;
+        }
+    }
+
+    private static String decodeTime(int millis) {
+        return millis < 0 ? "?" : Score.timeFromMillis(millis);
+    }
+
+    // difficulties are stored as a single digit, a dot and a single digit
+    private static int encodeDifficulty(String difficulty) {
+        if (difficulty == null || difficulty.length() != 3 || difficulty.charAt(1) != '.'
+                || !Character.isDigit(difficulty.charAt(0)) || !Character.isDigit(difficulty.charAt(2))) {
+            return -1;
+        }
+
+        return (difficulty.charAt(0) - '0') * 10 + (difficulty.charAt(2) - '0');
+    }
+
+    private static String decodeDifficulty(int tenths) {
+        return tenths < 0 ? "?" : "%d.%d".formatted(tenths / 10, tenths % 10);
+    }
+}
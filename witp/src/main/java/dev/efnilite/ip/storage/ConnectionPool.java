@@ -0,0 +1,472 @@
+package dev.efnilite.ip.storage;
+
+import dev.efnilite.ip.IP;
+import dev.efnilite.vilib.util.Task;
+import org.jetbrains.annotations.NotNull;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of SQL connections.
+ * A thread leases a connection for the duration of {@link #use(Action)}, and nested calls on the same thread reuse it.
+ * Idle connections are checked in the background, so statements don't need an extra round trip to check the connection.
+ * Connections that fail with a connection error are closed instead of being returned to the pool.
+ * Every connection keeps its prepared statements, so statements that are sent often are only parsed once.
+ *
+ * @since 5.1.0
+ */
+final class ConnectionPool {
+
+    /**
+     * The time in seconds to wait for a connection when all connections are in use.
+     */
+    public static final int TIMEOUT = 10;
+
+    /**
+     * The interval in seconds at which idle connections are checked.
+     */
+    public static final int CHECK_INTERVAL = 30;
+
+    /**
+     * The maximum amount of prepared statements that are kept per connection.
+     */
+    public static final int STATEMENT_CACHE_SIZE = 64;
+
+    /**
+     * The maximum amount of rows that are sent in a single batch.
+     */
+    public static final int BATCH_SIZE = 1000;
+
+    /**
+     * The amount of rows that are fetched at once by {@link #stream(String, ResultReader, Object...)}.
+     */
+    public static final int FETCH_SIZE = 1000;
+
+    private final String url;
+    private final int size;
+
+    private final BlockingQueue<Connection> idle = new LinkedBlockingQueue<>();
+
+    // the amount of connections, idle or in use
+    private final AtomicInteger open = new AtomicInteger();
+
+    // the connection the current thread is using
+    private final ThreadLocal<Lease> leases = new ThreadLocal<>();
+
+    // the prepared statements of every connection, only used by the thread that leases the connection
+    private final Map<Connection, Map<String, PreparedStatement>> statements = new ConcurrentHashMap<>();
+
+    private volatile boolean closed;
+
+    ConnectionPool(@NotNull String url, int size) throws SQLException {
+        this(url, size, true);
+    }
+
+    /**
+     * @param url     The JDBC url.
+     * @param size    The maximum amount of connections.
+     * @param monitor Whether idle connections are checked every {@link #CHECK_INTERVAL} seconds, which requires a running server.
+     * @throws SQLException If the database can't be reached.
+     */
+    ConnectionPool(@NotNull String url, int size, boolean monitor) throws SQLException {
+        this.url = url;
+        this.size = Math.max(1, size);
+
+        // fail early if the database can't be reached
+        open.incrementAndGet();
+        idle.add(create());
+
+        if (!monitor) {
+            return;
+        }
+
+        Task.create(IP.getPlugin())
+                .delay(CHECK_INTERVAL * 20)
+                .repeat(CHECK_INTERVAL * 20)
+                .async()
+                .execute(this::check)
+                .run();
+    }
+
+    /**
+     * Runs an action with a connection of this pool.
+     *
+     * @param action The action.
+     * @param <T>    The type of the result.
+     * @return The result of the action.
+     * @throws SQLException If no connection is available or the action fails.
+     */
+    <T> T use(@NotNull Action<T> action) throws SQLException {
+        Lease lease = leases.get();
+
+        if (lease != null) {
+            return action.run(lease.connection);
+        }
+
+        lease = new Lease(lease());
+        leases.set(lease);
+
+        try {
+            return action.run(lease.connection);
+        } catch (SQLException ex) {
+            lease.broken = isBroken(lease.connection, ex);
+            throw ex;
+        } finally {
+            leases.remove();
+            release(lease);
+        }
+    }
+
+    /**
+     * Runs an action in a single transaction. Nested transactions on the same thread are part of the outer transaction.
+     *
+     * @param action The action.
+     * @param <T>    The type of the result.
+     * @return The result of the action.
+     * @throws SQLException If no connection is available or the action fails, in which case the transaction is rolled back.
+     */
+    <T> T transaction(@NotNull Action<T> action) throws SQLException {
+        return use(connection -> {
+            if (!connection.getAutoCommit()) {
+                return action.run(connection);
+            }
+
+            connection.setAutoCommit(false);
+            try {
+                T result = action.run(connection);
+                connection.commit();
+                return result;
+            } catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        });
+    }
+
+    /**
+     * Returns the prepared statement of a connection, preparing it if this connection hasn't prepared it yet.
+     * The statement belongs to the connection and should not be closed.
+     *
+     * @param connection The connection, leased with {@link #use(Action)}.
+     * @param sql        The sql, with parameters.
+     * @return The statement, with its parameters cleared.
+     * @throws SQLException If the statement could not be prepared.
+     */
+    PreparedStatement prepare(@NotNull Connection connection, @NotNull String sql) throws SQLException {
+        Map<String, PreparedStatement> cache = statements.computeIfAbsent(connection, k -> new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= STATEMENT_CACHE_SIZE) {
+                    return false;
+                }
+
+                try {
+                    eldest.getValue().close();
+                } catch (SQLException ignored) {
+
+                }
+                return true;
+            }
+        });
+
+        PreparedStatement statement = cache.get(sql);
+
+        if (statement == null || statement.isClosed()) {
+            statement = connection.prepareStatement(sql);
+            cache.put(sql, statement);
+        } else {
+            statement.clearParameters();
+            statement.clearBatch();
+        }
+
+        return statement;
+    }
+
+    /**
+     * Sends a query with parameters and reads the result, with the cached statement of a connection.
+     *
+     * @param sql        The sql.
+     * @param reader     The reader of the result.
+     * @param parameters The parameters.
+     * @param <T>        The type of the result.
+     * @return The result.
+     * @throws SQLException If the query fails.
+     */
+    <T> T query(@NotNull String sql, @NotNull ResultReader<T> reader, Object... parameters) throws SQLException {
+        return use(connection -> {
+            PreparedStatement statement = prepare(connection, sql);
+
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+
+            try (ResultSet results = statement.executeQuery()) {
+                return reader.read(results);
+            }
+        });
+    }
+
+    /**
+     * Sends a query with parameters and reads the result while it is being received,
+     * so large results are fetched in parts of {@link #FETCH_SIZE} rows instead of all at once.
+     * The connection can't be used for other statements until the reader is done.
+     *
+     * @param sql        The sql.
+     * @param reader     The reader of the result.
+     * @param parameters The parameters.
+     * @param <T>        The type of the result.
+     * @return The result.
+     * @throws SQLException If the query fails.
+     */
+    <T> T stream(@NotNull String sql, @NotNull ResultReader<T> reader, Object... parameters) throws SQLException {
+        return use(connection -> {
+            PreparedStatement statement = prepare(connection, sql);
+
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+
+            statement.setFetchSize(FETCH_SIZE);
+            try (ResultSet results = statement.executeQuery()) {
+                return reader.read(results);
+            } finally {
+                statement.setFetchSize(0);
+            }
+        });
+    }
+
+    /**
+     * Sends an update with parameters, with the cached statement of a connection.
+     *
+     * @param sql        The sql.
+     * @param parameters The parameters.
+     * @throws SQLException If the update fails.
+     */
+    void update(@NotNull String sql, Object... parameters) throws SQLException {
+        use(connection -> {
+            PreparedStatement statement = prepare(connection, sql);
+
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+
+            statement.executeUpdate();
+            return null;
+        });
+    }
+
+    /**
+     * Sends an update for every row in batches of {@link #BATCH_SIZE}, in a single transaction.
+     *
+     * @param sql    The sql.
+     * @param rows   The rows.
+     * @param binder Sets the parameters of a row.
+     * @param <T>    The type of the rows.
+     * @throws SQLException If an update fails, in which case none of the rows are updated.
+     */
+    <T> void batch(@NotNull String sql, @NotNull Collection<T> rows, @NotNull RowBinder<T> binder) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        transaction(connection -> {
+            PreparedStatement statement = prepare(connection, sql);
+
+            int batched = 0;
+            for (T row : rows) {
+                binder.bind(statement, row);
+                statement.addBatch();
+
+                if (++batched == BATCH_SIZE) {
+                    statement.executeBatch();
+                    batched = 0;
+                }
+            }
+
+            if (batched > 0) {
+                statement.executeBatch();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Sends a statement without caching it, used for statements that are only sent once.
+     *
+     * @param sql The sql.
+     * @throws SQLException If the statement fails.
+     */
+    void execute(@NotNull String sql) throws SQLException {
+        use(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.executeUpdate();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Closes all connections.
+     */
+    void close() {
+        closed = true;
+
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            discard(connection);
+        }
+    }
+
+    private Connection lease() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool has been closed");
+        }
+
+        Connection connection = idle.poll();
+
+        if (connection != null) {
+            return connection;
+        }
+
+        if (open.incrementAndGet() <= size) {
+            try {
+                return create();
+            } catch (SQLException ex) {
+                open.decrementAndGet();
+                throw ex;
+            }
+        }
+        open.decrementAndGet();
+
+        try {
+            connection = idle.poll(TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (connection == null) {
+            throw new SQLException("No SQL connection available after %d seconds".formatted(TIMEOUT));
+        }
+
+        return connection;
+    }
+
+    private void release(Lease lease) {
+        if (lease.broken || closed) {
+            discard(lease.connection);
+            return;
+        }
+
+        idle.add(lease.connection);
+    }
+
+    // checks all idle connections, so broken connections are replaced before they are used
+    private void check() {
+        for (int i = idle.size(); i > 0 && !closed; i--) {
+            Connection connection = idle.poll();
+
+            if (connection == null) {
+                return;
+            }
+
+            try {
+                if (connection.isValid(5)) {
+                    idle.add(connection);
+                    continue;
+                }
+            } catch (SQLException ignored) {
+
+            }
+
+            IP.logging().info("Replacing broken SQL connection");
+            discard(connection);
+        }
+    }
+
+    private Connection create() throws SQLException {
+        return DriverManager.getConnection(url);
+    }
+
+    private void discard(Connection connection) {
+        open.decrementAndGet();
+        statements.remove(connection); // closed with the connection
+
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+
+        }
+    }
+
+    // connection errors have sql state class 08
+    private boolean isBroken(Connection connection, SQLException ex) {
+        String state = ex.getSQLState();
+
+        if (state != null && state.startsWith("08")) {
+            return true;
+        }
+
+        try {
+            return connection.isClosed();
+        } catch (SQLException ignored) {
+            return true;
+        }
+    }
+
+    /**
+     * An action which uses a connection.
+     *
+     * @param <T> The type of the result.
+     */
+    @FunctionalInterface
+    interface Action<T> {
+
+        T run(Connection connection) throws SQLException;
+    }
+
+    /**
+     * Reads the result of a query.
+     *
+     * @param <T> The type of the result.
+     */
+    @FunctionalInterface
+    interface ResultReader<T> {
+
+        T read(ResultSet results) throws SQLException;
+    }
+
+    /**
+     * Sets the parameters of a statement to the values of a row.
+     *
+     * @param <T> The type of the row.
+     */
+    @FunctionalInterface
+    interface RowBinder<T> {
+
+        void bind(PreparedStatement statement, T row) throws SQLException;
+    }
+
+    private static class Lease {
+
+        private final Connection connection;
+        private boolean broken;
+
+        private Lease(Connection connection) {
+            this.connection = connection;
+        }
+    }
+}
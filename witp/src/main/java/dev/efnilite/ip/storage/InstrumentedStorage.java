@@ -0,0 +1,171 @@
+package dev.efnilite.ip.storage;
+
+import dev.efnilite.ip.IP;
+import dev.efnilite.ip.config.Option;
+import dev.efnilite.ip.leaderboard.Score;
+import dev.efnilite.ip.leaderboard.WindowedLeaderboard;
+import dev.efnilite.ip.menu.community.SingleLeaderboardMenu;
+import dev.efnilite.ip.player.ParkourPlayer;
+import dev.efnilite.ip.player.PlayerSettings;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * {@link Storage} which records the amount of calls, failed calls and the latency of every call to the underlying storage in {@link StorageStats}.
+ * Calls which take longer than {@link Option#STORAGE_SLOW_LOG} milliseconds are logged with the thread they were made on.
+ *
+ * @since 5.1.0
+ */
+public final class InstrumentedStorage implements Storage {
+
+    private final Storage storage;
+    private final StorageStats stats;
+
+    public InstrumentedStorage(@NotNull Storage storage, @NotNull StorageStats stats) {
+        this.storage = storage;
+        this.stats = stats;
+    }
+
+    /**
+     * @return The storage of which calls are recorded.
+     */
+    public Storage getStorage() {
+        return storage;
+    }
+
+    @Override
+    public void init(String mode) {
+        time("init", mode, () -> storage.init(mode));
+    }
+
+    @Override
+    public void close() {
+        time("close", null, storage::close);
+    }
+
+    @Override
+    public void flush() {
+        time("flush", null, () -> storage.flush());
+    }
+
+    @Override
+    public @NotNull Map<UUID, Score> readScores(@NotNull String mode) {
+        return time("readScores", mode, () -> storage.readScores(mode));
+    }
+
+    @Override
+    public void writeScores(@NotNull String mode, @NotNull Map<UUID, Score> scores) {
+        time("writeScores", mode, () -> storage.writeScores(mode, scores));
+    }
+
+    @Override
+    public @NotNull Map<UUID, Score> readScores(@NotNull String mode, @NotNull SingleLeaderboardMenu.Sort sort, int limit) {
+        return time("readTopScores", mode, () -> storage.readScores(mode, sort, limit));
+    }
+
+    @Override
+    public @Nullable Score readScore(@NotNull String mode, @NotNull UUID uuid) {
+        return time("readScore", mode, () -> storage.readScore(mode, uuid));
+    }
+
+    @Override
+    public int readRank(@NotNull String mode, @NotNull SingleLeaderboardMenu.Sort sort, @NotNull Score score) {
+        return time("readRank", mode, () -> storage.readRank(mode, sort, score));
+    }
+
+    @Override
+    public void updateScores(@NotNull String mode, @NotNull Map<UUID, Score> changed, @NotNull Set<UUID> removed) {
+        time("updateScores", mode, () -> storage.updateScores(mode, changed, removed));
+    }
+
+    @Override
+    public @NotNull Changes readChanges(@NotNull String mode, long version) {
+        return time("readChanges", mode, () -> storage.readChanges(mode, version));
+    }
+
+    @Override
+    public @NotNull Changes readChanges(@NotNull String mode, long version, @NotNull SingleLeaderboardMenu.Sort sort, @NotNull BiConsumer<UUID, Score> consumer) {
+        return time("readChanges", mode, () -> storage.readChanges(mode, version, sort, consumer));
+    }
+
+    @Override
+    public @NotNull Map<UUID, Score> readWindowScores(@NotNull String mode, @NotNull WindowedLeaderboard.Period period, long bucket) {
+        return time("readWindowScores", mode, () -> storage.readWindowScores(mode, period, bucket));
+    }
+
+    @Override
+    public void writeWindowScores(@NotNull String mode, @NotNull WindowedLeaderboard.Period period, long bucket, @NotNull Map<UUID, Score> scores) {
+        time("writeWindowScores", mode, () -> storage.writeWindowScores(mode, period, bucket, scores));
+    }
+
+    @Override
+    public void updateWindowScores(@NotNull String mode, @NotNull WindowedLeaderboard.Period period, long bucket,
+                                   @NotNull Map<UUID, Score> changed, @NotNull Set<UUID> removed) {
+        time("updateWindowScores", mode, () -> storage.updateWindowScores(mode, period, bucket, changed, removed));
+    }
+
+    @Override
+    public void deleteWindowScores(@NotNull String mode, @NotNull WindowedLeaderboard.Period period, long before) {
+        time("deleteWindowScores", mode, () -> storage.deleteWindowScores(mode, period, before));
+    }
+
+    @Override
+    public @Nullable PlayerSettings readSettings(@NotNull UUID uuid) {
+        return time("readPlayer", null, () -> storage.readSettings(uuid));
+    }
+
+    @Override
+    public void readAllSettings(@Nullable UUID after, @NotNull BiConsumer<UUID, PlayerSettings> consumer) {
+        time("readAllPlayers", null, () -> storage.readAllSettings(after, consumer));
+    }
+
+    @Override
+    public void writePlayer(@NotNull ParkourPlayer player) {
+        time("writePlayer", null, () -> storage.writePlayer(player));
+    }
+
+    @Override
+    public void writePlayers(@NotNull Collection<ParkourPlayer> players) {
+        time("writePlayers", null, () -> storage.writePlayers(players));
+    }
+
+    @Override
+    public void writeSettings(@NotNull Map<UUID, PlayerSettings> settings) {
+        time("writeSettings", null, () -> storage.writeSettings(settings));
+    }
+
+    private void time(String operation, @Nullable String mode, Runnable runnable) {
+        time(operation, mode, () -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    private <T> T time(String operation, @Nullable String mode, Supplier<T> supplier) {
+        boolean outer = StorageStats.begin();
+
+        long start = System.nanoTime();
+        boolean error = true;
+
+        try {
+            T result = supplier.get();
+            error = false;
+            return result;
+        } finally {
+            long nanos = System.nanoTime() - start;
+            boolean failed = StorageStats.end(outer) || error;
+            stats.record(operation, mode, nanos, failed);
+
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            if (Option.STORAGE_SLOW_LOG > 0 && millis >= Option.STORAGE_SLOW_LOG) {
+                IP.logging().warn("Slow storage call %s%s took %d ms on thread %s%s".formatted(operation, mode != null ? " (%s)".formatted(mode) : "",
+                        millis, Thread.currentThread().getName(), failed ? " and failed" : ""));
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package dev.efnilite.ip.storage;
+
+import dev.efnilite.ip.player.PlayerSettings;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded cache of player settings, in which entries expire after {@link #TTL} milliseconds.
+ * When the cache is full, the least recently used entry is removed.
+ *
+ * @since 5.1.0
+ */
+final class PlayerCache {
+
+    /**
+     * The maximum amount of players that are cached.
+     */
+    public static final int CACHE_SIZE = 1024;
+
+    /**
+     * The time in milliseconds after which an entry expires.
+     */
+    public static final long TTL = TimeUnit.MINUTES.toMillis(10);
+
+    private final Map<UUID, Entry> entries = Collections.synchronizedMap(new LinkedHashMap<UUID, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, Entry> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    });
+
+    /**
+     * @param uuid The player's uuid.
+     * @return The cached settings, or null if these are not cached or have expired.
+     */
+    @Nullable PlayerSettings get(@NotNull UUID uuid) {
+        Entry entry = entries.get(uuid);
+
+        if (entry == null) {
+            return null;
+        }
+
+        if (System.currentTimeMillis() - entry.created > TTL) {
+            entries.remove(uuid, entry);
+            return null;
+        }
+
+        return entry.settings;
+    }
+
+    /**
+     * @param uuid     The player's uuid.
+     * @param settings The settings.
+     */
+    void put(@NotNull UUID uuid, @NotNull PlayerSettings settings) {
+        entries.put(uuid, new Entry(settings, System.currentTimeMillis()));
+    }
+
+    /**
+     * Removes the cached settings of a player.
+     *
+     * @param uuid The player's uuid.
+     */
+    void remove(@NotNull UUID uuid) {
+        entries.remove(uuid);
+    }
+
+    /**
+     * @param uuid The player's uuid.
+     * @return True if fresh settings of this player are cached.
+     */
+    boolean contains(@NotNull UUID uuid) {
+        Entry entry = entries.get(uuid);
+
+        return entry != null && System.currentTimeMillis() - entry.created <= TTL;
+    }
+
+    private record Entry(PlayerSettings settings, long created) {
+
+    }
+}
@@ -0,0 +1,511 @@
+package dev.efnilite.ip.storage;
+
+import dev.efnilite.ip.IP;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * A log-structured key-value store of the data of every player, in a single append-only file.
+ * <p>
+ * The file starts with a header of {@link #HEADER} bytes: a magic number and the format version.
+ * Every record is the length of the value, the uuid as two longs, a CRC32 checksum of the uuid and value, and the value.
+ * Writing a player appends a record, and the position of the latest record of every player is kept in memory,
+ * so reading a player takes a single read. The index is rebuilt by scanning the file when it is opened.
+ * A record that was only partially written, e.g. because of a crash, is removed from the end of the file.
+ * A damaged record elsewhere is skipped if the record after it is valid, otherwise the file is not opened.
+ * <p>
+ * Older records of a player take space until the file is compacted, which happens when more than half of the file
+ * is older records, see {@link #COMPACT_SIZE}. The file is compacted on a separate thread, and players can still be read
+ * and written while it is compacted.
+ *
+ * @since 5.1.0
+ */
+final class PlayerLog {
+
+    /**
+     * The size of the header in bytes.
+     */
+    public static final int HEADER = 8;
+
+    /**
+     * The size of a record without the value in bytes.
+     */
+    public static final int RECORD = 24;
+
+    /**
+     * The minimum size of the file in bytes before it is compacted.
+     */
+    public static final long COMPACT_SIZE = 4 * 1024 * 1024;
+
+    // values are settings, which are far smaller, so a longer value means the record is invalid
+    private static final int MAX_VALUE = 1024 * 1024;
+
+    private static final int MAGIC = 0x4950504C; // IPPL
+    private static final int FORMAT = 1;
+
+    // the time in seconds that closing waits for a compaction to finish
+    private static final int TIMEOUT = 60;
+
+    private final File file;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // compacts the file, so writers don't wait for it
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "IP Player Log Compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // whether a compaction has been scheduled and hasn't finished yet
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    // the position and length of the latest value of every player
+    private final Map<UUID, Entry> index = new HashMap<>();
+
+    private FileChannel channel;
+    private long size;
+    private boolean closed;
+
+    // the total size of the latest record of every player
+    private long live;
+
+    /**
+     * Opens the file, which is created if it doesn't exist.
+     *
+     * @param file The file.
+     * @throws IOException If the file can't be read or is not a player log.
+     */
+    PlayerLog(@NotNull File file) throws IOException {
+        this.file = file;
+
+        file.getParentFile().mkdirs();
+        channel = open(file);
+
+        if (channel.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER).putInt(MAGIC).putInt(FORMAT).flip();
+            write(channel, header, 0);
+            size = HEADER;
+        } else {
+            try {
+                scan();
+            } catch (IOException ex) {
+                channel.close();
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * @param uuid The player's uuid.
+     * @return The latest value of the player, null if the player has no value.
+     * @throws IOException If the value can't be read.
+     */
+    byte @Nullable [] read(@NotNull UUID uuid) throws IOException {
+        lock.readLock().lock();
+
+        try {
+            Entry entry = index.get(uuid);
+
+            if (entry == null) {
+                return null;
+            }
+
+            ByteBuffer value = ByteBuffer.allocate(entry.length);
+            read(channel, value, entry.position);
+
+            return value.array();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param uuid The player's uuid.
+     * @return True if the player has a value.
+     */
+    boolean contains(@NotNull UUID uuid) {
+        lock.readLock().lock();
+
+        try {
+            return index.containsKey(uuid);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The uuid of every player with a value.
+     */
+    @NotNull Set<UUID> keys() {
+        lock.readLock().lock();
+
+        try {
+            return new HashSet<>(index.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Appends the values of multiple players in a single write.
+     * Afterwards, the file is compacted in the background if more than half of it is older records.
+     *
+     * @param values The values, by uuid.
+     * @throws IOException If the values can't be written.
+     */
+    void write(@NotNull Map<UUID, byte[]> values) throws IOException {
+        if (values.isEmpty()) {
+            return;
+        }
+
+        boolean compact;
+        lock.writeLock().lock();
+
+        try {
+            int length = 0;
+            for (byte[] value : values.values()) {
+                length += RECORD + value.length;
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            Map<UUID, Entry> written = new HashMap<>();
+
+            for (Map.Entry<UUID, byte[]> entry : values.entrySet()) {
+                UUID uuid = entry.getKey();
+                byte[] value = entry.getValue();
+
+                buffer.putInt(value.length)
+                        .putLong(uuid.getMostSignificantBits())
+                        .putLong(uuid.getLeastSignificantBits())
+                        .putInt(checksum(uuid, value));
+                written.put(uuid, new Entry(size + buffer.position(), value.length));
+                buffer.put(value);
+            }
+
+            write(channel, buffer.flip(), size);
+            size += length;
+
+            written.forEach(this::put);
+
+            compact = size > COMPACT_SIZE && size - HEADER - live > live;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (compact && compacting.compareAndSet(false, true)) {
+            compactor.execute(() -> {
+                try {
+                    compact();
+                } catch (IOException ex) {
+                    IP.logging().stack("Error while trying to compact %s".formatted(file), ex);
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Rewrites the file with only the latest record of every player.
+     * The new file is written while holding the read lock, so players can still be read.
+     * Records which were appended before the write lock was taken are copied when the new file replaces the file.
+     *
+     * @throws IOException If the file can't be rewritten.
+     */
+    synchronized void compact() throws IOException {
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        Map<UUID, Entry> compacted = new HashMap<>();
+        long end;
+        long position = HEADER;
+
+        try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            lock.readLock().lock();
+            try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(out)))) {
+                end = size;
+
+                stream.writeInt(MAGIC);
+                stream.writeInt(FORMAT);
+
+                for (Map.Entry<UUID, Entry> entry : index.entrySet()) {
+                    UUID uuid = entry.getKey();
+                    ByteBuffer value = ByteBuffer.allocate(entry.getValue().length);
+                    read(channel, value, entry.getValue().position);
+
+                    stream.writeInt(value.capacity());
+                    stream.writeLong(uuid.getMostSignificantBits());
+                    stream.writeLong(uuid.getLeastSignificantBits());
+                    stream.writeInt(checksum(uuid, value.array()));
+                    stream.write(value.array());
+
+                    compacted.put(uuid, new Entry(position + RECORD, value.capacity()));
+                    position += RECORD + value.capacity();
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                throw new IOException("%s was closed while it was compacted".formatted(file));
+            }
+
+            try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)) {
+                // records appended while the new file was written
+                if (size > end) {
+                    ByteBuffer appended = ByteBuffer.allocate((int) (size - end));
+                    read(channel, appended, end);
+                    write(out, appended.flip(), position);
+                }
+
+                out.force(true);
+            }
+
+            long shift = position - end;
+            for (Map.Entry<UUID, Entry> entry : index.entrySet()) {
+                Entry current = entry.getValue();
+
+                if (current.position >= end) {
+                    compacted.put(entry.getKey(), new Entry(current.position + shift, current.length));
+                }
+            }
+
+            channel.close();
+
+            // if the file can't be replaced, the old file is opened again and the index is kept
+            try {
+                try {
+                    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException ex) {
+                    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                channel = open(file);
+            }
+
+            size = channel.size();
+
+            index.clear();
+            live = 0;
+            compacted.forEach(this::put);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Waits for a compaction that is running, writes all appended records to the disk and closes the file.
+     *
+     * @throws IOException If the file can't be closed.
+     */
+    void close() throws IOException {
+        compactor.shutdown();
+
+        try {
+            // a compaction that takes longer stops once the file is closed, which leaves the file as it was
+            compactor.awaitTermination(TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        lock.writeLock().lock();
+
+        try {
+            closed = true;
+            channel.force(true);
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes all appended records to the disk.
+     *
+     * @throws IOException If the records can't be written.
+     */
+    void force() throws IOException {
+        lock.readLock().lock();
+
+        try {
+            channel.force(false);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // rebuilds the index from the file
+    private void scan() throws IOException {
+        long length = channel.size();
+        long position = HEADER;
+        int damaged = 0;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("%s is not a player log".formatted(file));
+            }
+            int format = in.readInt();
+            if (format != FORMAT) {
+                throw new IOException("Unknown player log format version %d".formatted(format));
+            }
+
+            while (position + RECORD <= length) {
+                int valueLength = in.readInt();
+                UUID uuid = new UUID(in.readLong(), in.readLong());
+                int checksum = in.readInt();
+
+                if (valueLength < 0 || valueLength > MAX_VALUE || position + RECORD + valueLength > length) {
+                    break;
+                }
+
+                byte[] value = new byte[valueLength];
+                in.readFully(value);
+
+                long next = position + RECORD + valueLength;
+                if (checksum(uuid, value) != checksum) {
+                    // a damaged record before a valid one is skipped, which keeps the previous value of the player
+                    if (next < length && isValid(next, length)) {
+                        damaged++;
+                        position = next;
+                        continue;
+                    }
+                    break;
+                }
+
+                put(uuid, new Entry(position + RECORD, valueLength));
+                position = next;
+            }
+        }
+
+        if (damaged > 0) {
+            IP.logging().warn("Skipped %d damaged records in %s".formatted(damaged, file));
+        }
+
+        if (position < length) {
+            // only a record that was being appended when the server stopped is removed, other damage is not repaired automatically
+            if (!isTail(position, length)) {
+                throw new IOException("%s is damaged at position %d, restore it from a backup".formatted(file, position));
+            }
+
+            channel.truncate(position);
+        }
+        size = position;
+    }
+
+    // whether the record at the position is complete and has a valid checksum
+    private boolean isValid(long position, long length) throws IOException {
+        if (position + RECORD > length) {
+            return false;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(RECORD);
+        read(channel, header, position);
+        header.flip();
+
+        int valueLength = header.getInt();
+        UUID uuid = new UUID(header.getLong(), header.getLong());
+        int checksum = header.getInt();
+
+        if (valueLength < 0 || valueLength > MAX_VALUE || position + RECORD + valueLength > length) {
+            return false;
+        }
+
+        ByteBuffer value = ByteBuffer.allocate(valueLength);
+        read(channel, value, position + RECORD);
+
+        return checksum(uuid, value.array()) == checksum;
+    }
+
+    // whether everything from the position is a single partially written append:
+    // an incomplete record, a last record with an invalid checksum, or space which was never written
+    private boolean isTail(long position, long length) throws IOException {
+        if (position + RECORD > length) {
+            return true;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+        read(channel, header, position);
+        int valueLength = header.flip().getInt();
+
+        if (valueLength >= 0 && valueLength <= MAX_VALUE && position + RECORD + valueLength >= length) {
+            return true;
+        }
+
+        ByteBuffer rest = ByteBuffer.allocate(8192);
+        for (long at = position; at < length; at += rest.capacity()) {
+            rest.clear().limit((int) Math.min(rest.capacity(), length - at));
+            read(channel, rest, at);
+
+            for (int i = 0; i < rest.limit(); i++) {
+                if (rest.get(i) != 0) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private void put(UUID uuid, Entry entry) {
+        Entry previous = index.put(uuid, entry);
+
+        if (previous != null) {
+            live -= RECORD + previous.length;
+        }
+        live += RECORD + entry.length;
+    }
+
+    private static int checksum(UUID uuid, byte[] value) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).flip());
+        crc.update(value);
+
+        return (int) crc.getValue();
+    }
+
+    private static FileChannel open(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    /**
+     * The position of a value in the file.
+     *
+     * @param position The position of the value.
+     * @param length   The length of the value.
+     */
+    private record Entry(long position, int length) {
+
+    }
+}
@@ -0,0 +1,140 @@
+package dev.efnilite.ip.storage;
+
+import dev.efnilite.ip.IP;
+import org.jetbrains.annotations.NotNull;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps track of the schema version of every table in a schema table, so every migration step is applied once.
+ * A table is identified by its scope, e.g. {@code options}. Steps are applied in order of their version,
+ * and the version of the scope is stored after every step, so a step that fails is retried on the next start.
+ *
+ * @since 5.1.0
+ */
+final class SchemaMigrations {
+
+    private final ConnectionPool pool;
+    private final String table;
+
+    /**
+     * @param pool  The pool.
+     * @param table The name of the schema table.
+     */
+    SchemaMigrations(@NotNull ConnectionPool pool, @NotNull String table) throws SQLException {
+        this.pool = pool;
+        this.table = table;
+
+        pool.execute("""
+                CREATE TABLE IF NOT EXISTS `%s`
+                (
+                    scope   VARCHAR(128) NOT NULL PRIMARY KEY,
+                    version INT          NOT NULL
+                )
+                CHARSET = utf8 ENGINE = InnoDB;
+                """
+                .formatted(table));
+    }
+
+    /**
+     * Applies all steps of a scope that haven't been applied yet.
+     *
+     * @param scope The scope.
+     * @param steps The steps, in order of version.
+     */
+    void migrate(@NotNull String scope, @NotNull List<Step> steps) {
+        int current;
+        try {
+            current = getVersion(scope);
+        } catch (SQLException ex) {
+            IP.logging().stack("Error while trying to read schema version of %s".formatted(scope), ex);
+            return;
+        }
+
+        for (Step step : steps) {
+            if (step.version() <= current) {
+                continue;
+            }
+
+            try {
+                for (String sql : step.statements()) {
+                    try {
+                        pool.execute(sql);
+                    } catch (SQLException ex) {
+                        if (!step.legacy()) {
+                            throw ex;
+                        }
+                    }
+                }
+
+                pool.update("""
+                        INSERT INTO `%s` (scope, version) VALUES (?, ?)
+                        ON DUPLICATE KEY UPDATE version = VALUES(version);
+                        """
+                        .formatted(table), scope, step.version());
+                current = step.version();
+            } catch (SQLException ex) {
+                IP.logging().stack("Error while trying to migrate %s to schema version %d".formatted(scope, step.version()), ex);
+                return;
+            }
+        }
+    }
+
+    private int getVersion(String scope) throws SQLException {
+        return pool.query("""
+                SELECT version FROM `%s` WHERE scope = ?;
+                """
+                .formatted(table), results -> results.next() ? results.getInt(1) : 0, scope);
+    }
+
+    /**
+     * A migration step.
+     *
+     * @param version    The schema version after this step.
+     * @param legacy     Whether errors are ignored. Used for steps from before schema versions were stored,
+     *                   which may already have been applied to existing tables.
+     * @param statements The statements.
+     */
+    record Step(int version, boolean legacy, List<String> statements) {
+
+        Step(int version, boolean legacy, String... statements) {
+            this(version, legacy, List.of(statements));
+        }
+    }
+
+    /**
+     * Builds the steps of a scope.
+     */
+    static final class Steps {
+
+        private final List<Step> steps = new ArrayList<>();
+
+        /**
+         * Adds a step from before schema versions were stored, of which errors are ignored.
+         *
+         * @param statements The statements.
+         * @return This instance.
+         */
+        Steps legacy(String... statements) {
+            steps.add(new Step(steps.size() + 1, true, statements));
+            return this;
+        }
+
+        /**
+         * Adds a step.
+         *
+         * @param statements The statements.
+         * @return This instance.
+         */
+        Steps then(String... statements) {
+            steps.add(new Step(steps.size() + 1, false, statements));
+            return this;
+        }
+
+        List<Step> build() {
+            return steps;
+        }
+    }
+}
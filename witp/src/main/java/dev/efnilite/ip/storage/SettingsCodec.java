@@ -0,0 +1,225 @@
+package dev.efnilite.ip.storage;
+
+import dev.efnilite.ip.player.PlayerSettings;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * Encodes {@link PlayerSettings} in a compact binary format, which is used by every storage.
+ * <p>
+ * The format starts with the version and a byte with a bit for every setting that is set, followed by the boolean settings,
+ * which take two bits each: whether it's set and the value. Then the style, block lead, selected time, locale and schematic difficulty follow if set.
+ * Collected rewards are stored last, as the amount followed by the differences between the sorted scores.
+ * Numbers are stored as variable-length integers, so small numbers take a single byte.
+ *
+ * @since 5.1.0
+ */
+final class SettingsCodec {
+
+    /**
+     * The version of the format.
+     */
+    public static final int VERSION = 1;
+
+    private static final int STYLE = 1;
+    private static final int BLOCK_LEAD = 1 << 1;
+    private static final int SELECTED_TIME = 1 << 2;
+    private static final int LOCALE = 1 << 3;
+    private static final int SCHEMATIC_DIFFICULTY = 1 << 4;
+
+    // the index of the two bits of every boolean
+    private static final int PARTICLES = 0;
+    private static final int SPECIAL_BLOCKS = 1;
+    private static final int FALL_MESSAGE = 2;
+    private static final int SCOREBOARD = 3;
+    private static final int SOUND = 4;
+
+    private SettingsCodec() {
+
+    }
+
+    /**
+     * @param settings The settings.
+     * @return The encoded settings.
+     */
+    static byte[] encode(@NotNull PlayerSettings settings) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            int set = (settings.style() != null ? STYLE : 0)
+                    | (settings.blockLead() != null ? BLOCK_LEAD : 0)
+                    | (settings.selectedTime() != null ? SELECTED_TIME : 0)
+                    | (settings.locale() != null ? LOCALE : 0)
+                    | (settings.schematicDifficulty() != null ? SCHEMATIC_DIFFICULTY : 0);
+
+            int booleans = encode(PARTICLES, settings.particles())
+                    | encode(SPECIAL_BLOCKS, settings.specialBlocks())
+                    | encode(FALL_MESSAGE, settings.fallMessage())
+                    | encode(SCOREBOARD, settings.scoreboard())
+                    | encode(SOUND, settings.sound());
+
+            out.writeByte(VERSION);
+            out.writeByte(set);
+            writeVarInt(out, booleans);
+
+            if (settings.style() != null) {
+                out.writeUTF(settings.style());
+            }
+            if (settings.blockLead() != null) {
+                writeVarInt(out, settings.blockLead());
+            }
+            if (settings.selectedTime() != null) {
+                writeVarInt(out, settings.selectedTime());
+            }
+            if (settings.locale() != null) {
+                out.writeUTF(settings.locale());
+            }
+            if (settings.schematicDifficulty() != null) {
+                out.writeDouble(settings.schematicDifficulty());
+            }
+
+            int[] rewards = settings.collectedRewards().stream().mapToInt(Integer::intValue).sorted().toArray();
+            writeVarInt(out, rewards.length);
+
+            int previous = 0;
+            for (int reward : rewards) {
+                writeVarInt(out, reward - previous);
+                previous = reward;
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex); // byte arrays don't throw
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param data The encoded settings.
+     * @return The settings.
+     * @throws IOException If the data is not in a known format.
+     */
+    static PlayerSettings decode(byte @NotNull [] data) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            int version = in.readUnsignedByte();
+
+            if (version != VERSION) {
+                throw new IOException("Unknown settings format version %d".formatted(version));
+            }
+
+            int set = in.readUnsignedByte();
+            int booleans = readVarInt(in);
+
+            String style = (set & STYLE) != 0 ? in.readUTF() : null;
+            Integer blockLead = (set & BLOCK_LEAD) != 0 ? readVarInt(in) : null;
+            Integer selectedTime = (set & SELECTED_TIME) != 0 ? readVarInt(in) : null;
+            String locale = (set & LOCALE) != 0 ? in.readUTF() : null;
+            Double schematicDifficulty = (set & SCHEMATIC_DIFFICULTY) != 0 ? in.readDouble() : null;
+
+            int count = readVarInt(in);
+            Integer[] rewards = new Integer[count];
+
+            int previous = 0;
+            for (int i = 0; i < count; i++) {
+                previous += readVarInt(in);
+                rewards[i] = previous;
+            }
+
+            return new PlayerSettings(style, blockLead, decode(PARTICLES, booleans), decode(SPECIAL_BLOCKS, booleans),
+                    decode(FALL_MESSAGE, booleans), decode(SCOREBOARD, booleans), selectedTime, locale, schematicDifficulty,
+                    decode(SOUND, booleans), new HashSet<>(Arrays.asList(rewards)));
+        }
+    }
+
+    /**
+     * Reads settings from the {@code settings} column, or from the old columns if the player hasn't been written since 5.1.0.
+     *
+     * @param results The results, at the row of the player.
+     * @return The settings.
+     * @throws SQLException If a column can't be read or the settings are not in a known format.
+     */
+    static PlayerSettings decodeRow(@NotNull ResultSet results) throws SQLException {
+        byte[] data = results.getBytes("settings");
+
+        if (data == null) {
+            return decodeColumns(results);
+        }
+
+        try {
+            return decode(data);
+        } catch (IOException ex) {
+            throw new SQLException("Invalid settings", ex);
+        }
+    }
+
+    /**
+     * Reads settings from the columns which were used to store settings before 5.1.0.
+     *
+     * @param results The results, at the row of the player.
+     * @return The settings.
+     * @throws SQLException If a column can't be read.
+     */
+    static PlayerSettings decodeColumns(@NotNull ResultSet results) throws SQLException {
+        return new PlayerSettings(
+                results.getString("style"),
+                getObject(results, "blockLead", Integer.class),
+                getObject(results, "useParticles", Boolean.class),
+                getObject(results, "useSpecial", Boolean.class),
+                getObject(results, "showFallMsg", Boolean.class),
+                getObject(results, "showScoreboard", Boolean.class),
+                getObject(results, "selectedTime", Integer.class),
+                results.getString("locale"),
+                getObject(results, "schematicDifficulty", Double.class),
+                getObject(results, "sound", Boolean.class),
+                PlayerSettings.parseRewards(results.getString("collectedRewards")));
+    }
+
+    private static <T> T getObject(ResultSet results, String column, Class<T> type) throws SQLException {
+        T value = results.getObject(column, type);
+
+        return results.wasNull() ? null : value;
+    }
+
+    private static int encode(int index, Boolean value) {
+        if (value == null) {
+            return 0;
+        }
+
+        return 1 << (index * 2) | (value ? 1 << (index * 2 + 1) : 0);
+    }
+
+    private static Boolean decode(int index, int booleans) {
+        if ((booleans & 1 << (index * 2)) == 0) {
+            return null;
+        }
+
+        return (booleans & 1 << (index * 2 + 1)) != 0;
+    }
+
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Variable-length integer is too long");
+    }
+}
@@ -1,11 +1,17 @@
 package dev.efnilite.ip.storage;
 
+import dev.efnilite.ip.leaderboard.Leaderboard;
 import dev.efnilite.ip.leaderboard.Score;
+import dev.efnilite.ip.leaderboard.WindowedLeaderboard;
+import dev.efnilite.ip.menu.community.SingleLeaderboardMenu;
 import dev.efnilite.ip.player.ParkourPlayer;
+import dev.efnilite.ip.player.PlayerSettings;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.Map;
-import java.util.UUID;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
 
 /**
  * I/O handling.
@@ -27,6 +33,22 @@ public interface Storage {
      */
     void close();
 
+    /**
+     * Writes all writes that have been queued. By default, writes aren't queued.
+     */
+    default void flush() {
+
+    }
+
+    /**
+     * Writes the queued writes of a single player. By default, writes aren't queued.
+     *
+     * @param uuid The player's uuid.
+     */
+    default void flush(@NotNull UUID uuid) {
+
+    }
+
     /**
      * Reads scores.
      *
@@ -43,18 +65,231 @@ public interface Storage {
      */
     void writeScores(@NotNull String mode, @NotNull Map<UUID, Score> scores);
 
+    /**
+     * Reads the best scores.
+     *
+     * @param mode  The mode.
+     * @param sort  The sort which determines which scores are best.
+     * @param limit The maximum amount of scores.
+     * @return Map with the best scores, sorted from best to worst.
+     */
+    default @NotNull Map<UUID, Score> readScores(@NotNull String mode, @NotNull SingleLeaderboardMenu.Sort sort, int limit) {
+        return readScores(mode).entrySet().stream()
+                .sorted(Map.Entry.<UUID, Score>comparingByValue(Leaderboard.comparator(sort)))
+                .limit(limit)
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> b, LinkedHashMap::new));
+    }
+
+    /**
+     * Reads a single score.
+     *
+     * @param mode The mode.
+     * @param uuid The player's uuid.
+     * @return The score, null if the player has no score.
+     */
+    default @Nullable Score readScore(@NotNull String mode, @NotNull UUID uuid) {
+        return readScores(mode).get(uuid);
+    }
+
+    /**
+     * Reads the rank a score would have among all stored scores.
+     *
+     * @param mode  The mode.
+     * @param sort  The sort which determines which scores are best.
+     * @param score The score.
+     * @return The rank, starting from 1.
+     */
+    default int readRank(@NotNull String mode, @NotNull SingleLeaderboardMenu.Sort sort, @NotNull Score score) {
+        Comparator<Score> comparator = Leaderboard.comparator(sort);
+
+        return (int) readScores(mode).values().stream()
+                .filter(other -> comparator.compare(other, score) < 0)
+                .count() + 1;
+    }
+
+    /**
+     * Writes only the changed scores, leaving all other stored scores untouched.
+     *
+     * @param mode    The mode.
+     * @param changed The scores that have been added or changed.
+     * @param removed The uuids of the scores that have been removed.
+     */
+    default void updateScores(@NotNull String mode, @NotNull Map<UUID, Score> changed, @NotNull Set<UUID> removed) {
+        Map<UUID, Score> scores = new HashMap<>(readScores(mode));
+
+        scores.keySet().removeAll(removed);
+        scores.putAll(changed);
+
+        writeScores(mode, scores);
+    }
+
+    /**
+     * Reads the scores that have changed since a version, so servers that only show scores don't have to read all scores every time.
+     * By default, all scores are read every time.
+     *
+     * @param mode    The mode.
+     * @param version The version returned by the previous call, 0 if this is the first call.
+     * @return The changes since the version.
+     */
+    default @NotNull Changes readChanges(@NotNull String mode, long version) {
+        return new Changes(0, readScores(mode), Collections.emptySet(), true);
+    }
+
+    /**
+     * Reads the scores that have changed since a version, like {@link #readChanges(String, long)}.
+     * When all scores are read, these are passed to the consumer as these are read instead of being collected in {@link Changes#scores()},
+     * so large leaderboards don't have to be kept in memory twice. Storage that can order scores passes these from best to worst.
+     *
+     * @param mode     The mode.
+     * @param version  The version returned by the previous call, 0 if this is the first call.
+     * @param sort     The sort which determines which scores are best.
+     * @param consumer The consumer of all scores, only called if the changes are complete.
+     * @return The changes since the version. If complete, the scores are empty.
+     */
+    default @NotNull Changes readChanges(@NotNull String mode, long version, @NotNull SingleLeaderboardMenu.Sort sort, @NotNull BiConsumer<UUID, Score> consumer) {
+        Changes changes = readChanges(mode, version);
+
+        if (!changes.complete()) {
+            return changes;
+        }
+
+        changes.scores().forEach(consumer);
+
+        return new Changes(changes.version(), Collections.emptyMap(), Collections.emptySet(), true);
+    }
+
+    /**
+     * Reads the scores of a single period.
+     *
+     * @param mode   The mode.
+     * @param period The period.
+     * @param bucket The id of the period.
+     * @return Map with all scores of the period, unsorted.
+     */
+    @NotNull Map<UUID, Score> readWindowScores(@NotNull String mode, @NotNull WindowedLeaderboard.Period period, long bucket);
+
+    /**
+     * Writes the scores of a single period.
+     *
+     * @param mode   The mode.
+     * @param period The period.
+     * @param bucket The id of the period.
+     * @param scores The score map.
+     */
+    void writeWindowScores(@NotNull String mode, @NotNull WindowedLeaderboard.Period period, long bucket, @NotNull Map<UUID, Score> scores);
+
+    /**
+     * Writes only the changed scores of a single period, leaving all other stored scores of the period untouched.
+     *
+     * @param mode    The mode.
+     * @param period  The period.
+     * @param bucket  The id of the period.
+     * @param changed The scores that have been added or changed.
+     * @param removed The uuids of the scores that have been removed.
+     */
+    default void updateWindowScores(@NotNull String mode, @NotNull WindowedLeaderboard.Period period, long bucket,
+                                    @NotNull Map<UUID, Score> changed, @NotNull Set<UUID> removed) {
+        Map<UUID, Score> scores = new HashMap<>(readWindowScores(mode, period, bucket));
+
+        scores.keySet().removeAll(removed);
+        scores.putAll(changed);
+
+        writeWindowScores(mode, period, bucket, scores);
+    }
+
+    /**
+     * Deletes the scores of all periods before a period.
+     *
+     * @param mode   The mode.
+     * @param period The period.
+     * @param before The id of the oldest period to keep.
+     */
+    void deleteWindowScores(@NotNull String mode, @NotNull WindowedLeaderboard.Period period, long before);
+
+    /**
+     * Reads the settings of a player.
+     *
+     * @param uuid The player's uuid.
+     * @return The settings. Null if the player has no stored data.
+     */
+    @Nullable PlayerSettings readSettings(@NotNull UUID uuid);
+
+    /**
+     * Reads the settings of every player in order of uuid, e.g. to move these to another storage.
+     * Settings are passed to the consumer as these are read, so not all players have to be kept in memory.
+     *
+     * @param after    Only players of which the uuid comes after this uuid in text order are read, null to read all players.
+     * @param consumer The consumer of the settings of every player.
+     */
+    void readAllSettings(@Nullable UUID after, @NotNull BiConsumer<UUID, PlayerSettings> consumer);
+
     /**
      * Reads player data and applies changes.
      *
      * @param player The player.
      */
-    void readPlayer(@NotNull ParkourPlayer player);
+    default void readPlayer(@NotNull ParkourPlayer player) {
+        PlayerSettings settings = readSettings(player.getUUID());
+
+        player.setSettings(settings != null ? settings : PlayerSettings.EMPTY);
+    }
+
+    /**
+     * Returns the settings of a player if these are available without reading from storage.
+     * By default, nothing is kept in memory.
+     *
+     * @param uuid The player's uuid.
+     * @return The settings, null if these are not in memory.
+     */
+    default @Nullable PlayerSettings getCachedSettings(@NotNull UUID uuid) {
+        return null;
+    }
+
+    /**
+     * Starts reading the data of a player who is about to join, so it's in memory when it is needed.
+     * By default, nothing is read ahead.
+     *
+     * @param uuid The player's uuid.
+     */
+    default void prefetch(@NotNull UUID uuid) {
+
+    }
 
     /**
      * Writes player data.
      *
      * @param player The player.
+     * @throws StorageException If the data can't be written.
      */
     void writePlayer(@NotNull ParkourPlayer player);
 
+    /**
+     * Writes the data of multiple players.
+     *
+     * @param players The players.
+     * @throws StorageException If the data can't be written.
+     */
+    default void writePlayers(@NotNull Collection<ParkourPlayer> players) {
+        players.forEach(this::writePlayer);
+    }
+
+    /**
+     * Writes the settings of players who may not be online, e.g. when moving these from another storage.
+     *
+     * @param settings The settings, by uuid.
+     * @throws StorageException If the settings can't be written.
+     */
+    void writeSettings(@NotNull Map<UUID, PlayerSettings> settings);
+
+    /**
+     * The scores that have changed since a version.
+     *
+     * @param version  The current version, to pass to the next {@link #readChanges(String, long)} call.
+     * @param scores   The scores that have been added or changed. If complete, these are all stored scores.
+     * @param removed  The uuids of the scores that have been removed. Empty if complete.
+     * @param complete True if scores contains all stored scores, so any score which isn't in it has been removed.
+     */
+    record Changes(long version, @NotNull Map<UUID, Score> scores, @NotNull Set<UUID> removed, boolean complete) {
+
+    }
 }
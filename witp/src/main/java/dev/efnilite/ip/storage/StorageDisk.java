@@ -1,48 +1,365 @@
 package dev.efnilite.ip.storage;
 
+import com.google.gson.Gson;
 import com.google.gson.annotations.Expose;
 import dev.efnilite.ip.IP;
+import dev.efnilite.ip.config.Option;
+import dev.efnilite.ip.leaderboard.Leaderboard;
 import dev.efnilite.ip.leaderboard.Score;
+import dev.efnilite.ip.leaderboard.WindowedLeaderboard;
+import dev.efnilite.ip.menu.community.SingleLeaderboardMenu;
 import dev.efnilite.ip.player.ParkourPlayer;
+import dev.efnilite.ip.player.PlayerSettings;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.UUID;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
 
 /**
- * Local disk (json) storage manager.
+ * Local disk (json) storage manager. The settings of all players are stored in a single {@link PlayerLog} in the binary format of {@link SettingsCodec},
+ * into which player files of older versions are imported in the background when this storage is created.
+ * Files are written to a temporary file first, which then replaces the file, so a file is never read while it is only partially written.
+ * Every file is guarded by one of {@link #STRIPES} locks, so files of different modes can be accessed at the same time.
+ * If enabled, leaderboards are stored in the binary format of {@link BinaryLeaderboard} instead, which is converted from and to json automatically.
+ * Single scores, ranks and top scores are looked up in the scores of the last read, which are only read again when the file has changed.
  *
  * @since 5.0.0
  */
-// todo add concurrency locks
 public final class StorageDisk implements Storage {
 
+    /**
+     * The amount of locks that files are divided over.
+     */
+    public static final int STRIPES = 64;
+
+    /**
+     * The amount of player files that are read at the same time when importing these into the player log.
+     */
+    public static final int IMPORT_BATCH_SIZE = 256;
+
+    private final ReadWriteLock[] locks = new ReadWriteLock[STRIPES];
+
+    // the binary leaderboard of every mode, if enabled
+    private final Map<String, BinaryLeaderboard> binaries = new ConcurrentHashMap<>();
+
+    // the scores of every mode at the last read, so bounded leaderboards don't read the whole file for every lookup
+    private final Map<String, CachedScores> cached = new ConcurrentHashMap<>();
+
+    private final File folder;
+    private final Gson gson;
+
+    // the data of every player, opened in the background when this storage is created
+    private final CompletableFuture<PlayerLog> log;
+
+    public StorageDisk() {
+        this(IP.getPlugin().getDataFolder(), IP.getGson());
+    }
+
+    /**
+     * @param folder The folder in which all files are stored.
+     * @param gson   The gson instance used to read and write json files.
+     */
+    public StorageDisk(@NotNull File folder, @NotNull Gson gson) {
+        this.folder = folder;
+        this.gson = gson;
+
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+
+        // importing the player files of older versions may take a while, so players are read once it's done
+        this.log = CompletableFuture.supplyAsync(this::openLog, runnable -> {
+            Thread thread = new Thread(runnable, "IP Player Log");
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
     @Override
     public void init(String mode) {
-        // nothing to see here...
+        File json = getLeaderboardFile(mode);
+        File binary = getBinaryFile(mode);
+
+        try {
+            if (Option.LEADERBOARD_BINARY && json.exists() && !binary.exists()) {
+                IP.logging().info("Converting leaderboard %s to binary".formatted(mode));
+
+                getBinary(mode).write(readScores(json, mode));
+                json.delete();
+            } else if (!Option.LEADERBOARD_BINARY && binary.exists() && !json.exists()) {
+                IP.logging().info("Converting leaderboard %s to json".formatted(mode));
+
+                writeScores(json, mode, getBinary(mode).read());
+                binary.delete();
+                getBinaryNamesFile(mode).delete();
+                binaries.remove(mode.toLowerCase());
+            }
+        } catch (IOException ex) {
+            IP.logging().stack("Error while trying to convert leaderboard file %s".formatted(mode), ex);
+            StorageStats.fail();
+        }
     }
 
     @Override
     public void close() {
-        // nothing to see here...
+        if (log.isCompletedExceptionally()) {
+            return;
+        }
+
+        try {
+            getLog().close();
+        } catch (IOException ex) {
+            IP.logging().stack("Error while trying to close the player log", ex);
+            StorageStats.fail();
+        }
+    }
+
+    @Override
+    public void flush() {
+        // nothing has been written while the log is being opened
+        if (!log.isDone() || log.isCompletedExceptionally()) {
+            return;
+        }
+
+        try {
+            getLog().force();
+        } catch (IOException ex) {
+            IP.logging().stack("Error while trying to write the player log", ex);
+            StorageStats.fail();
+        }
     }
 
     @Override
     public @NotNull Map<UUID, Score> readScores(@NotNull String mode) {
+        if (!Option.LEADERBOARD_BINARY) {
+            return readScores(getLeaderboardFile(mode), mode);
+        }
+
+        try {
+            return getBinary(mode).read();
+        } catch (IOException ex) {
+            IP.logging().stack("Error while trying to read leaderboard file %s".formatted(mode), ex);
+            StorageStats.fail();
+            return new HashMap<>();
+        }
+    }
+
+    @Override
+    public void writeScores(@NotNull String mode, @NotNull Map<UUID, Score> scores) {
+        if (!Option.LEADERBOARD_BINARY) {
+            writeScores(getLeaderboardFile(mode), mode, scores);
+            return;
+        }
+
+        try {
+            getBinary(mode).write(scores);
+        } catch (IOException ex) {
+            IP.logging().stack("Error while trying to write to leaderboard file %s".formatted(mode), ex);
+            StorageStats.fail();
+        }
+    }
+
+    @Override
+    public @NotNull Map<UUID, Score> readScores(@NotNull String mode, @NotNull SingleLeaderboardMenu.Sort sort, int limit) {
+        Comparator<Map.Entry<UUID, Score>> order = Map.Entry.comparingByValue(Leaderboard.comparator(sort));
+
+        if (limit <= 0) {
+            return new LinkedHashMap<>();
+        }
+
+        // keeps the best scores, with the worst of these on top
+        PriorityQueue<Map.Entry<UUID, Score>> best = new PriorityQueue<>(limit + 1, order.reversed());
+        for (Map.Entry<UUID, Score> entry : readCached(mode).entrySet()) {
+            best.add(entry);
+
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+
+        List<Map.Entry<UUID, Score>> sorted = new ArrayList<>(best);
+        sorted.sort(order);
+
+        Map<UUID, Score> scores = new LinkedHashMap<>();
+        sorted.forEach(entry -> scores.put(entry.getKey(), entry.getValue()));
+        return scores;
+    }
+
+    @Override
+    public @Nullable Score readScore(@NotNull String mode, @NotNull UUID uuid) {
+        return readCached(mode).get(uuid);
+    }
+
+    @Override
+    public int readRank(@NotNull String mode, @NotNull SingleLeaderboardMenu.Sort sort, @NotNull Score score) {
+        Comparator<Score> comparator = Leaderboard.comparator(sort);
+        int rank = 1;
+
+        for (Score other : readCached(mode).values()) {
+            if (comparator.compare(other, score) < 0) {
+                rank++;
+            }
+        }
+
+        return rank;
+    }
+
+    @Override
+    public void updateScores(@NotNull String mode, @NotNull Map<UUID, Score> changed, @NotNull Set<UUID> removed) {
+        if (!Option.LEADERBOARD_BINARY) {
+            File file = getLeaderboardFile(mode);
+
+            // the file is locked from reading to writing, so updates of the same mode at the same time aren't lost
+            ReadWriteLock lock = getLock(file);
+            lock.writeLock().lock();
+
+            try {
+                Map<UUID, Score> scores = new HashMap<>(readCached(mode));
+
+                scores.keySet().removeAll(removed);
+                scores.putAll(changed);
+
+                writeScores(file, mode, scores);
+                cached.put(mode.toLowerCase(), new CachedScores(getVersion(file), Collections.unmodifiableMap(scores)));
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return;
+        }
+
+        try {
+            getBinary(mode).update(changed, removed);
+        } catch (IOException ex) {
+            IP.logging().stack("Error while trying to write to leaderboard file %s".formatted(mode), ex);
+            StorageStats.fail();
+        }
+    }
+
+    @Override
+    public @NotNull Changes readChanges(@NotNull String mode, long version) {
+        if (Option.LEADERBOARD_BINARY) {
+            try {
+                long revision = getBinary(mode).getRevision();
+
+                if (version != 0 && revision == version) {
+                    return new Changes(version, Collections.emptyMap(), Collections.emptySet(), false);
+                }
+
+                return new Changes(revision, getBinary(mode).read(), Collections.emptySet(), true);
+            } catch (IOException ex) {
+                IP.logging().stack("Error while trying to read leaderboard file %s".formatted(mode), ex);
+                StorageStats.fail();
+                return new Changes(version, Collections.emptyMap(), Collections.emptySet(), false);
+            }
+        }
+
         File file = getLeaderboardFile(mode);
+        long current = getVersion(file);
+
+        if (version != 0 && current == version) {
+            return new Changes(version, Collections.emptyMap(), Collections.emptySet(), false);
+        }
+
+        return new Changes(current, readScores(file, mode), Collections.emptySet(), true);
+    }
+
+    @Override
+    public @NotNull Map<UUID, Score> readWindowScores(@NotNull String mode, @NotNull WindowedLeaderboard.Period period, long bucket) {
+        return readScores(getWindowFile(mode, period, bucket), "%s %s".formatted(mode, period));
+    }
+
+    @Override
+    public void writeWindowScores(@NotNull String mode, @NotNull WindowedLeaderboard.Period period, long bucket, @NotNull Map<UUID, Score> scores) {
+        writeScores(getWindowFile(mode, period, bucket), "%s %s".formatted(mode, period), scores);
+    }
+
+    @Override
+    public void deleteWindowScores(@NotNull String mode, @NotNull WindowedLeaderboard.Period period, long before) {
+        File[] files = getWindowFile(mode, period, before).getParentFile().listFiles();
 
+        if (files == null) {
+            return;
+        }
+
+        String prefix = "%s-".formatted(mode.toLowerCase());
+        for (File file : files) {
+            String name = file.getName();
+
+            if (!name.startsWith(prefix) || !name.endsWith(".json")) {
+                continue;
+            }
+
+            try {
+                if (Long.parseLong(name.substring(prefix.length(), name.length() - ".json".length())) < before && !file.delete()) {
+                    IP.logging().error("Could not delete old leaderboard file %s".formatted(file));
+                }
+            } catch (NumberFormatException ignored) {
+                // the file of another mode whose name starts with this mode
+            }
+        }
+    }
+
+    // returns the scores at the last read, and reads these again if the file has changed since
+    private Map<UUID, Score> readCached(String mode) {
+        long version;
+
+        if (Option.LEADERBOARD_BINARY) {
+            try {
+                version = getBinary(mode).getRevision();
+            } catch (IOException ex) {
+                IP.logging().stack("Error while trying to read leaderboard file %s".formatted(mode), ex);
+                StorageStats.fail();
+                return Collections.emptyMap();
+            }
+        } else {
+            version = getVersion(getLeaderboardFile(mode));
+        }
+
+        CachedScores scores = cached.get(mode.toLowerCase());
+        if (scores != null && scores.version == version) {
+            return scores.scores;
+        }
+
+        // the version is read first, so scores that are written while reading are read again next time
+        Map<UUID, Score> read = Collections.unmodifiableMap(readScores(mode));
+        cached.put(mode.toLowerCase(), new CachedScores(version, read));
+        return read;
+    }
+
+    // the modification time and size change on every write, 0 if the file doesn't exist
+    private long getVersion(File file) {
+        return file.lastModified() * 31 + file.length();
+    }
+
+    private Map<UUID, Score> readScores(File file, String name) {
+        ReadWriteLock lock = getLock(file);
+        lock.readLock().lock();
+
+        try {
+            return readScoresLocked(file, name);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Map<UUID, Score> readScoresLocked(File file, String name) {
         if (!file.exists()) {
             return new HashMap<>();
         }
 
         try (FileReader reader = new FileReader(file)) {
-            LeaderboardContainer read = IP.getGson().fromJson(reader, LeaderboardContainer.class);
+            LeaderboardContainer read = gson.fromJson(reader, LeaderboardContainer.class);
 
             if (read == null) {
                 return new HashMap<>();
@@ -55,29 +372,58 @@ public final class StorageDisk implements Storage {
 
             return scores;
         } catch (IOException ex) {
-            IP.logging().stack("Error while trying to read leaderboard file %s".formatted(mode), ex);
+            IP.logging().stack("Error while trying to read leaderboard file %s".formatted(name), ex);
+            StorageStats.fail();
             return new HashMap<>();
         }
     }
 
-    @Override
-    public void writeScores(@NotNull String mode, @NotNull Map<UUID, Score> scores) {
+    private void writeScores(File file, String name, Map<UUID, Score> scores) {
         LeaderboardContainer container = new LeaderboardContainer();
         scores.forEach((uuid, score) -> container.serialized.put(uuid, score.toString()));
 
-        File file = getLeaderboardFile(mode);
-        createFile(file);
-
-        try (FileWriter writer = new FileWriter(file)) {
-            IP.getGson().toJson(container, writer);
-            writer.flush();
+        try {
+            write(file, writer -> gson.toJson(container, writer));
         } catch (IOException ex) {
-            IP.logging().stack("Error while trying to write to leaderboard file %s".formatted(mode), ex);
+            IP.logging().stack("Error while trying to write to leaderboard file %s".formatted(name), ex);
+            StorageStats.fail();
         }
     }
 
     private File getLeaderboardFile(String mode) {
-        return IP.getInFolder("leaderboards/%s.json".formatted(mode.toLowerCase()));
+        return new File(folder, "leaderboards/%s.json".formatted(mode.toLowerCase()));
+    }
+
+    private BinaryLeaderboard getBinary(String mode) {
+        return binaries.computeIfAbsent(mode.toLowerCase(), k -> new BinaryLeaderboard(getBinaryFile(k), getBinaryNamesFile(k)));
+    }
+
+    private File getBinaryFile(String mode) {
+        return new File(folder, "leaderboards/%s.lb".formatted(mode.toLowerCase()));
+    }
+
+    private File getBinaryNamesFile(String mode) {
+        return new File(folder, "leaderboards/%s.names".formatted(mode.toLowerCase()));
+    }
+
+    private File getWindowFile(String mode, WindowedLeaderboard.Period period, long bucket) {
+        return new File(folder, "leaderboards/%s/%s-%d.json".formatted(period.name().toLowerCase(), mode.toLowerCase(), bucket));
+    }
+
+    /**
+     * The scores of a mode at a version.
+     *
+     * @param version The version of the file, see {@link #readChanges(String, long)}.
+     * @param scores  The scores.
+     */
+    private record CachedScores(long version, Map<UUID, Score> scores) {
+
+    }
+
+    @FunctionalInterface
+    private interface FileWrite {
+
+        void write(FileWriter writer) throws IOException;
     }
 
     public static class LeaderboardContainer {
@@ -86,63 +432,200 @@ public final class StorageDisk implements Storage {
     }
 
     @Override
-    public void readPlayer(@NotNull ParkourPlayer player) {
-        if (!getPlayerFile(player).exists()) {
-            player.setSettings(new HashMap<>());
-            return;
+    public @Nullable PlayerSettings readSettings(@NotNull UUID uuid) {
+        try {
+            byte[] data = getLog().read(uuid);
+
+            return data != null ? SettingsCodec.decode(data) : null;
+        } catch (IOException ex) {
+            IP.logging().stack("Error while trying to read disk data of %s".formatted(uuid), ex);
+            StorageStats.fail();
+            return null;
         }
+    }
 
-        try (FileReader reader = new FileReader(getPlayerFile(player))) {
-            ParkourPlayer from = IP.getGson().fromJson(reader, ParkourPlayer.class);
+    @Override
+    public void readAllSettings(@Nullable UUID after, @NotNull BiConsumer<UUID, PlayerSettings> consumer) {
+        try {
+            PlayerLog log = getLog();
 
-            Map<String, Object> settings = new HashMap<>();
+            // sorted by text to read in order of uuid
+            SortedMap<String, UUID> uuids = new TreeMap<>();
+            log.keys().forEach(uuid -> uuids.put(uuid.toString(), uuid));
 
-            settings.put("style", from.style);
-            settings.put("blockLead", from.blockLead);
-            settings.put("useParticles", from.particles);
-            settings.put("useSpecial", from.useSpecialBlocks);
-            settings.put("showFallMsg", from.showFallMessage);
-            settings.put("showScoreboard", from.showScoreboard);
-            settings.put("selectedTime", from.selectedTime);
-            settings.put("collectedRewards", from.collectedRewards);
-            settings.put("locale", from._locale);
-            settings.put("schematicDifficulty", from.schematicDifficulty);
-            settings.put("sound", from.sound);
+            for (UUID uuid : (after != null ? uuids.tailMap(after + "\0") : uuids).values()) {
+                byte[] data = log.read(uuid);
 
-            player.setSettings(settings);
+                if (data != null) {
+                    consumer.accept(uuid, SettingsCodec.decode(data));
+                }
+            }
         } catch (IOException ex) {
-            IP.logging().stack("Error while trying to read disk data of %s".formatted(player.getName()), ex);
+            IP.logging().stack("Error while trying to read disk data of all players", ex);
+            StorageStats.fail();
         }
     }
 
     @Override
     public void writePlayer(@NotNull ParkourPlayer player) {
-        File file = getPlayerFile(player);
+        writeSettings(Map.of(player.getUUID(), player.getSettings()));
+    }
 
-        createFile(file);
+    @Override
+    public void writePlayers(@NotNull Collection<ParkourPlayer> players) {
+        Map<UUID, PlayerSettings> settings = new LinkedHashMap<>();
+        players.forEach(player -> settings.put(player.getUUID(), player.getSettings()));
+
+        writeSettings(settings);
+    }
+
+    @Override
+    public void writeSettings(@NotNull Map<UUID, PlayerSettings> settings) {
+        Map<UUID, byte[]> values = new LinkedHashMap<>();
+        settings.forEach((uuid, value) -> values.put(uuid, SettingsCodec.encode(value)));
+
+        try {
+            getLog().write(values);
+        } catch (IOException ex) {
+            throw new StorageException("Error while trying to write disk data of %d players".formatted(settings.size()), ex);
+        }
+    }
+
+    // waits until the player log has been opened
+    private PlayerLog getLog() throws IOException {
+        try {
+            return log.join();
+        } catch (CompletionException ex) {
+            throw new IOException("The player log could not be opened", ex.getCause());
+        }
+    }
 
-        try (FileWriter writer = new FileWriter(file)) {
-            IP.getGson().toJson(player, writer);
-            writer.flush();
+    // opens the player log and imports the player files of older versions
+    private PlayerLog openLog() {
+        try {
+            PlayerLog log = new PlayerLog(new File(folder, "players.log"));
+
+            importPlayerFiles(log);
+
+            return log;
         } catch (IOException ex) {
-            IP.logging().stack("Error while trying to write disk data of %s to file %s".formatted(player.getName(), file), ex);
+            IP.logging().stack("Error while trying to open the player log", ex);
+            throw new CompletionException(ex);
         }
     }
 
-    private void createFile(File file) {
-        if (file.exists()) {
+    // imports players/<uuid>.json and players/<uuid>.dat files, which are deleted once their data is in the log
+    private void importPlayerFiles(PlayerLog log) throws IOException {
+        File directory = new File(folder, "players");
+        Set<UUID> uuids = new HashSet<>();
+
+        if (!directory.exists()) {
+            return;
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory.toPath())) {
+            for (Path path : files) {
+                String name = path.getFileName().toString();
+                int extension = name.lastIndexOf('.');
+
+                if (extension > 0 && (name.endsWith(".dat") || name.endsWith(".json"))) {
+                    try {
+                        uuids.add(UUID.fromString(name.substring(0, extension)));
+                    } catch (IllegalArgumentException ignored) {
+
+                    }
+                }
+            }
+        }
+
+        if (uuids.isEmpty()) {
             return;
         }
 
+        IP.logging().info("Importing %d player files into %s".formatted(uuids.size(), "players.log"));
+
+        // files are read in parallel in parts, players that are already in the log have been imported before the files were deleted
+        List<UUID> all = new ArrayList<>(uuids);
+        for (int from = 0; from < all.size(); from += IMPORT_BATCH_SIZE) {
+            List<UUID> part = all.subList(from, Math.min(all.size(), from + IMPORT_BATCH_SIZE));
+
+            Map<UUID, byte[]> values = new LinkedHashMap<>();
+            part.parallelStream()
+                    .filter(uuid -> !log.contains(uuid))
+                    .map(uuid -> Map.entry(uuid, readPlayerFile(uuid)))
+                    .filter(entry -> entry.getValue().isPresent())
+                    .toList()
+                    .forEach(entry -> values.put(entry.getKey(), SettingsCodec.encode(entry.getValue().get())));
+
+            log.write(values);
+            log.force();
+
+            for (UUID uuid : part) {
+                if (log.contains(uuid)) {
+                    getPlayerFile(uuid).delete();
+                    getLegacyPlayerFile(uuid).delete();
+                }
+            }
+        }
+
+        directory.delete(); // only deleted if empty
+
+        IP.logging().info("Imported %d player files".formatted(uuids.size()));
+    }
+
+    private Optional<PlayerSettings> readPlayerFile(UUID uuid) {
+        File file = getPlayerFile(uuid);
+        File json = getLegacyPlayerFile(uuid);
+
+        try {
+            if (file.exists()) {
+                return Optional.of(SettingsCodec.decode(Files.readAllBytes(file.toPath())));
+            }
+
+            try (FileReader reader = new FileReader(json)) {
+                ParkourPlayer from = gson.fromJson(reader, ParkourPlayer.class);
+
+                return Optional.ofNullable(from != null ? from.getSettings() : null);
+            }
+        } catch (Exception ex) {
+            IP.logging().stack("Error while trying to import disk data of %s, the file is kept".formatted(uuid), ex);
+            return Optional.empty();
+        }
+    }
+
+    // writes to a temporary file which then replaces the file, so readers see either the old or the new file
+    private void write(File file, FileWrite write) throws IOException {
+        ReadWriteLock lock = getLock(file);
+        lock.writeLock().lock();
+
         try {
             file.getParentFile().mkdirs();
-            file.createNewFile();
-        } catch (IOException ex) {
-            IP.logging().stack("Error while trying to create file %s".formatted(file), ex);
+
+            File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+            try (FileWriter writer = new FileWriter(temp)) {
+                write.write(writer);
+                writer.flush();
+            }
+
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
-    private File getPlayerFile(ParkourPlayer player) {
-        return IP.getInFolder("players/%s.json".formatted(player.getUUID()));
+    private ReadWriteLock getLock(File file) {
+        return locks[Math.floorMod(file.getAbsolutePath().hashCode(), STRIPES)];
+    }
+
+    private File getPlayerFile(UUID uuid) {
+        return new File(folder, "players/%s.dat".formatted(uuid));
+    }
+
+    private File getLegacyPlayerFile(UUID uuid) {
+        return new File(folder, "players/%s.json".formatted(uuid));
     }
-}
\ No newline at end of file
+}
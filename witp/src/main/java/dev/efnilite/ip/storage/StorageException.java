@@ -0,0 +1,19 @@
+package dev.efnilite.ip.storage;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Thrown by {@link Storage} when data can't be read or written and the caller has to know, e.g. to retry a write.
+ *
+ * @since 5.1.0
+ */
+public class StorageException extends RuntimeException {
+
+    public StorageException(@NotNull String message) {
+        super(message);
+    }
+
+    public StorageException(@NotNull String message, @NotNull Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,356 @@
+package dev.efnilite.ip.storage;
+
+import com.google.gson.Gson;
+import com.google.gson.annotations.Expose;
+import dev.efnilite.ip.IP;
+import dev.efnilite.ip.api.Registry;
+import dev.efnilite.ip.config.Option;
+import dev.efnilite.ip.leaderboard.Leaderboard;
+import dev.efnilite.ip.leaderboard.Score;
+import dev.efnilite.ip.mode.Mode;
+import dev.efnilite.ip.player.PlayerSettings;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Copies all player settings and the scores of every mode from one {@link Storage} to another.
+ * Everything is streamed from the source and written to the target in batches of {@link #BATCH_SIZE},
+ * so only a single batch is kept in memory. Players are read in order of uuid, and the progress is stored
+ * in a checkpoint file after every batch, so a migration that is stopped continues where it left off when it is started again.
+ * A migration stops with a {@link StorageException} at the first error, before the batch that failed is added to the checkpoint.
+ * When the target is {@link StorageDisk} with JSON leaderboards, which rewrites the whole file on every write,
+ * all scores of a mode are kept in memory and written at once instead.
+ * If the server itself uses the source or target, see {@link #create(String)}, the leaderboards of the server are written before
+ * their scores are read and read again after their scores are copied.
+ * Scores of windowed leaderboards are not copied.
+ *
+ * @since 5.1.0
+ */
+public final class StorageMigration {
+
+    /**
+     * The amount of players or scores that are written at once.
+     */
+    public static final int BATCH_SIZE = 1000;
+
+    private final Storage source;
+    private final Storage target;
+    private final File file;
+    private final Gson gson;
+
+    private Checkpoint checkpoint;
+    private Consumer<Progress> listener;
+
+    /**
+     * @param source     The storage to read from.
+     * @param target     The storage to write to.
+     * @param checkpoint The file in which the progress is stored.
+     */
+    public StorageMigration(@NotNull Storage source, @NotNull Storage target, @NotNull File checkpoint) {
+        this(source, target, checkpoint, IP.getGson());
+    }
+
+    /**
+     * @param source     The storage to read from.
+     * @param target     The storage to write to.
+     * @param checkpoint The file in which the progress is stored.
+     * @param gson       The gson instance used to read and write the checkpoint.
+     */
+    StorageMigration(@NotNull Storage source, @NotNull Storage target, @NotNull File checkpoint, @NotNull Gson gson) {
+        this.source = source;
+        this.target = target;
+        this.file = checkpoint;
+        this.gson = gson;
+    }
+
+    /**
+     * Returns the storage of a type. If the server uses this type, the storage of the server is returned instead of a new one,
+     * since a second storage on the same files or database would overwrite the data that the server writes, and the other way around.
+     * This storage must not be closed.
+     *
+     * @param type The type of storage, disk, sqlite or mysql.
+     * @return The storage of the server if it is of the type, otherwise a new storage of the type. Null if the type is unknown.
+     * @throws StorageException If the storage can't be connected to.
+     */
+    public static @Nullable Storage create(@NotNull String type) {
+        if (type.equalsIgnoreCase(getActiveType())) {
+            return IP.getStorage();
+        }
+
+        return switch (type.toLowerCase()) {
+            case "disk" -> new StorageDisk();
+            case "sqlite" -> new StorageSQLite(true);
+            case "mysql" -> new StorageSQL(true);
+            default -> null;
+        };
+    }
+
+    /**
+     * @return The type of storage that the server uses, disk, sqlite or mysql.
+     */
+    public static @NotNull String getActiveType() {
+        if (Option.SQL) {
+            return "mysql";
+        } else if (Option.EMBEDDED_DATABASE) {
+            return "sqlite";
+        } else {
+            return "disk";
+        }
+    }
+
+    /**
+     * Copies all data. Blocks until done, so this should be called asynchronously.
+     * The checkpoint file is removed once all data has been copied.
+     *
+     * @param listener The consumer of the progress, called after every batch.
+     * @return The final progress.
+     * @throws StorageException If data can't be read or written. The progress up to the failed batch is kept.
+     */
+    public synchronized Progress run(@NotNull Consumer<Progress> listener) {
+        this.listener = listener;
+        this.checkpoint = readCheckpoint();
+
+        if (checkpoint.players > 0 || checkpoint.playersDone || !checkpoint.modesDone.isEmpty()) {
+            IP.logging().info("Continuing storage migration after %d players and %d scores".formatted(checkpoint.players, checkpoint.scores));
+        }
+
+        if (!checkpoint.playersDone) {
+            migratePlayers();
+        }
+
+        for (Mode mode : Registry.getModes()) {
+            Leaderboard leaderboard = mode.getLeaderboard();
+
+            if (leaderboard == null || checkpoint.modesDone.contains(leaderboard.mode)) {
+                continue;
+            }
+
+            migrateScores(leaderboard);
+        }
+
+        call("write the data to disk", target::flush);
+        file.delete();
+
+        Progress progress = getProgress("done");
+        listener.accept(progress);
+        return progress;
+    }
+
+    private void migratePlayers() {
+        Map<UUID, PlayerSettings> batch = new LinkedHashMap<>();
+
+        UUID after = checkpoint.lastPlayer != null ? UUID.fromString(checkpoint.lastPlayer) : null;
+
+        call("read players", () -> source.readAllSettings(after, (uuid, settings) -> {
+            batch.put(uuid, settings);
+
+            if (batch.size() >= BATCH_SIZE) {
+                writePlayers(batch);
+            }
+        }));
+        writePlayers(batch);
+
+        checkpoint.playersDone = true;
+        writeCheckpoint();
+    }
+
+    private void writePlayers(Map<UUID, PlayerSettings> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        call("write players", () -> target.writeSettings(batch));
+
+        UUID last = null;
+        for (UUID uuid : batch.keySet()) {
+            last = uuid;
+        }
+
+        checkpoint.players += batch.size();
+        checkpoint.lastPlayer = last.toString();
+        batch.clear();
+
+        writeCheckpoint();
+        listener.accept(getProgress("players"));
+    }
+
+    // scores are upserted, so a mode that was stopped halfway is copied again from the start
+    private void migrateScores(Leaderboard leaderboard) {
+        String mode = leaderboard.mode;
+        Map<UUID, Score> batch = new HashMap<>();
+
+        call("create the tables of %s".formatted(mode), () -> target.init(mode));
+
+        // scores of the server that haven't been written yet are copied too
+        if (source == IP.getStorage()) {
+            leaderboard.write(false);
+        }
+
+        // every write to a json file rewrites all scores, so these are written at once
+        boolean whole = unwrap(target) instanceof StorageDisk && !Option.LEADERBOARD_BINARY;
+
+        Storage.Changes[] changes = new Storage.Changes[1];
+        call("read scores of %s".formatted(mode), () -> changes[0] = source.readChanges(mode, 0, leaderboard.sort, (uuid, score) -> {
+            batch.put(uuid, score);
+
+            if (!whole && batch.size() >= BATCH_SIZE) {
+                writeScores(mode, batch);
+            }
+        }));
+        changes[0].scores().forEach(batch::put);
+
+        if (whole) {
+            writeAllScores(leaderboard, batch);
+        } else {
+            writeScores(mode, batch);
+        }
+
+        // the leaderboard of the server would otherwise write its old scores over the copied ones
+        if (target == IP.getStorage()) {
+            leaderboard.read(false);
+        }
+
+        checkpoint.modesDone.add(mode);
+        writeCheckpoint();
+    }
+
+    // the storage that the server uses is wrapped, so the type of the storage that is written to is found by unwrapping it
+    private static Storage unwrap(Storage storage) {
+        if (storage instanceof WriteBehindStorage writeBehind) {
+            return unwrap(writeBehind.getStorage());
+        } else if (storage instanceof InstrumentedStorage instrumented) {
+            return unwrap(instrumented.getStorage());
+        } else {
+            return storage;
+        }
+    }
+
+    // writes all scores of a mode in a single write
+    private void writeAllScores(Leaderboard leaderboard, Map<UUID, Score> scores) {
+        String mode = leaderboard.mode;
+        Map<UUID, Score> all = new HashMap<>();
+
+        // scores that are already stored in the target are kept, like with an upsert
+        call("read scores of %s".formatted(mode), () -> all.putAll(target.readScores(mode)));
+        all.putAll(scores);
+
+        Map<UUID, Score> ordered = new LinkedHashMap<>();
+        all.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue(Leaderboard.comparator(leaderboard.sort)))
+                .forEach(entry -> ordered.put(entry.getKey(), entry.getValue()));
+
+        call("write scores of %s".formatted(mode), () -> target.writeScores(mode, ordered));
+
+        checkpoint.scores += scores.size();
+        scores.clear();
+
+        listener.accept(getProgress("scores of %s".formatted(mode)));
+    }
+
+    private void writeScores(String mode, Map<UUID, Score> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        call("write scores of %s".formatted(mode), () -> target.updateScores(mode, batch, Collections.emptySet()));
+
+        checkpoint.scores += batch.size();
+        batch.clear();
+
+        listener.accept(getProgress("scores of %s".formatted(mode)));
+    }
+
+    // storage logs most errors instead of throwing these, so these are found through the failure that storage records
+    // calls are nested when batches are written while reading, so a failed read is kept when a write starts
+    private void call(String operation, Runnable runnable) {
+        boolean outer = StorageStats.begin();
+
+        runnable.run();
+
+        if (StorageStats.end(outer)) {
+            throw new StorageException("Could not %s, see the error above".formatted(operation));
+        }
+    }
+
+    private Progress getProgress(String phase) {
+        return new Progress(phase, checkpoint.players, checkpoint.scores);
+    }
+
+    private Checkpoint readCheckpoint() {
+        String from = source.getClass().getSimpleName();
+        String to = target.getClass().getSimpleName();
+
+        if (file.exists()) {
+            try (FileReader reader = new FileReader(file)) {
+                Checkpoint read = gson.fromJson(reader, Checkpoint.class);
+
+                // a checkpoint of another migration is ignored
+                if (read != null && from.equals(read.source) && to.equals(read.target)) {
+                    return read;
+                }
+            } catch (IOException ex) {
+                IP.logging().stack("Error while trying to read storage migration checkpoint %s".formatted(file), ex);
+            }
+        }
+
+        Checkpoint checkpoint = new Checkpoint();
+        checkpoint.source = from;
+        checkpoint.target = to;
+        return checkpoint;
+    }
+
+    // writes to a temporary file which then replaces the file, so the checkpoint is never partially written
+    private void writeCheckpoint() {
+        try {
+            file.getParentFile().mkdirs();
+
+            File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+            try (FileWriter writer = new FileWriter(temp)) {
+                gson.toJson(checkpoint, writer);
+            }
+
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ex) {
+            IP.logging().stack("Error while trying to write storage migration checkpoint %s".formatted(file), ex);
+        }
+    }
+
+    /**
+     * The progress of a migration.
+     *
+     * @param phase   What is being copied, e.g. {@code players}, or {@code done} when finished.
+     * @param players The amount of players that have been copied.
+     * @param scores  The amount of scores that have been copied.
+     */
+    public record Progress(String phase, long players, long scores) {
+
+    }
+
+    private static class Checkpoint {
+        @Expose
+        String source;
+        @Expose
+        String target;
+        @Expose
+        String lastPlayer;
+        @Expose
+        boolean playersDone;
+        @Expose
+        long players;
+        @Expose
+        long scores;
+        @Expose
+        List<String> modesDone = new ArrayList<>();
+    }
+}
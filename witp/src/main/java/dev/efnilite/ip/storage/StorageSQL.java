@@ -3,15 +3,17 @@ package dev.efnilite.ip.storage;
 import dev.efnilite.ip.IP;
 import dev.efnilite.ip.config.Option;
 import dev.efnilite.ip.leaderboard.Score;
+import dev.efnilite.ip.leaderboard.WindowedLeaderboard;
+import dev.efnilite.ip.menu.community.SingleLeaderboardMenu;
 import dev.efnilite.ip.player.ParkourPlayer;
-import dev.efnilite.vilib.util.Colls;
+import dev.efnilite.ip.player.PlayerSettings;
 import org.bukkit.Bukkit;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.sql.*;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
+import java.util.*;
+import java.util.function.BiConsumer;
 
 /**
  * MySQL storage manager.
@@ -20,234 +22,584 @@ import java.util.UUID;
  */
 public final class StorageSQL implements Storage {
 
-    private Connection connection;
+    // the current time of the database in millis, used for versions so the clocks of servers don't matter
+    private static final String NOW = "ROUND(UNIX_TIMESTAMP(NOW(3)) * 1000)";
+
+    // the time in millis in which a write that has started may not be visible yet
+    private static final long VISIBILITY_MARGIN = 1000;
+
+    // the columns of a score, so other columns aren't sent
+    private static final String COLUMNS = "uuid, name, time, difficulty, score";
+
+    private ConnectionPool pool;
+    private SchemaMigrations migrations;
 
     public StorageSQL() {
-        connect();
+        this(false);
+    }
+
+    /**
+     * @param strict Whether a {@link StorageException} is thrown if the database can't be connected to, instead of disabling the plugin.
+     *               Used for storage which is only opened to migrate data, see {@link StorageMigration}.
+     */
+    StorageSQL(boolean strict) {
+        if (!strict) {
+            connect();
+            return;
+        }
+
+        try {
+            open();
+        } catch (Exception ex) {
+            throw new StorageException("Could not connect to MySQL", ex);
+        }
     }
 
     @Override
     public void init(String mode) {
-        sendUpdate("""
-                    CREATE TABLE IF NOT EXISTS `%s`
-                    (
-                        uuid       CHAR(36) NOT NULL PRIMARY KEY,
-                        name       VARCHAR(16),
-                        time       VARCHAR(16),
-                        difficulty VARCHAR(3),
-                        score      INT
-                    )
-                    CHARSET = utf8 ENGINE = InnoDB;
-                    """
-                    .formatted(getTableName(mode)));
+        if (migrations == null) {
+            return;
+        }
+
+        migrations.migrate(getTableName(mode), new SchemaMigrations.Steps()
+                .legacy("""
+                        CREATE TABLE IF NOT EXISTS `%s`
+                        (
+                            uuid       CHAR(36) NOT NULL PRIMARY KEY,
+                            name       VARCHAR(16),
+                            time       VARCHAR(16),
+                            difficulty VARCHAR(3),
+                            score      INT,
+                            updated_at BIGINT   NOT NULL DEFAULT 0,
+                            INDEX (updated_at)
+                        )
+                        CHARSET = utf8 ENGINE = InnoDB;
+                        """
+                        .formatted(getTableName(mode)))
+                // 5.1.0, for tables that were created before updated_at was added
+                .legacy("ALTER TABLE `%s` ADD `updated_at` BIGINT NOT NULL DEFAULT 0;".formatted(getTableName(mode)),
+                        "ALTER TABLE `%s` ADD INDEX (`updated_at`);".formatted(getTableName(mode)))
+                .build());
+
+        for (WindowedLeaderboard.Period period : Option.LEADERBOARD_WINDOWS) {
+            migrations.migrate(getWindowTableName(mode, period), new SchemaMigrations.Steps()
+                    .then("""
+                            CREATE TABLE IF NOT EXISTS `%s`
+                            (
+                                bucket     BIGINT   NOT NULL,
+                                uuid       CHAR(36) NOT NULL,
+                                name       VARCHAR(16),
+                                time       VARCHAR(16),
+                                difficulty VARCHAR(3),
+                                score      INT,
+                                PRIMARY KEY (bucket, uuid)
+                            )
+                            CHARSET = utf8 ENGINE = InnoDB;
+                            """
+                            .formatted(getWindowTableName(mode, period)))
+                    .build());
+        }
     }
 
     @Override
     public void close() {
-        try {
-            connection.close();
-            IP.logging().info("Closed connection to MySQL");
-        } catch (SQLException ex) {
-            IP.logging().stack("Error while trying to close connection to SQL database", ex);
-        }
+        pool.close();
+        IP.logging().info("Closed connection to MySQL");
     }
 
     @Override
     public @NotNull Map<UUID, Score> readScores(@NotNull String mode) {
-        try (ResultSet results = sendQuery(
-                """
-                SELECT * FROM `%s`;
-                """
-                .formatted(getTableName(mode)))) {
+        Map<UUID, Score> scores = new HashMap<>();
 
-            if (results == null) {
-                return new HashMap<>();
-            }
+        readScores(mode, SingleLeaderboardMenu.Sort.SCORE, scores::put);
 
-            Map<UUID, Score> scores = new HashMap<>();
+        return scores;
+    }
 
-            while (results.next()) { // advance row
-                scores.put(UUID.fromString(results.getString("uuid")), new Score(
-                        results.getString("name"),
-                        results.getString("time"),
-                        results.getString("difficulty"),
-                        results.getInt("score")));
-            }
+    // streams all scores, ordered from best to worst if the database can order these
+    private void readScores(String mode, SingleLeaderboardMenu.Sort sort, BiConsumer<UUID, Score> consumer) {
+        try {
+            pool.stream(
+                    """
+                    SELECT %s FROM `%s`%s;
+                    """
+                    .formatted(COLUMNS, getTableName(mode), sort == SingleLeaderboardMenu.Sort.SCORE ? " ORDER BY score DESC" : ""), results -> {
+                while (results.next()) { // advance row
+                    consumer.accept(UUID.fromString(results.getString("uuid")), readScore(results));
+                }
 
-            return scores;
+                return null;
+            });
         } catch (SQLException ex) {
             IP.logging().stack("Error while trying to read SQL data of %s".formatted(mode), ex);
-            return new HashMap<>();
+            StorageStats.fail();
         }
     }
 
     @Override
     public void writeScores(@NotNull String mode, @NotNull Map<UUID, Score> scores) {
-        scores.forEach((uuid, score) -> sendUpdate(
-                """
-                INSERT INTO `%s`
-                    (uuid, name, time, difficulty, score)
-                VALUES ('%s', '%s', '%s', '%s', %d)
-                ON DUPLICATE KEY UPDATE name       = '%s',
-                                        time       = '%s',
-                                        difficulty = '%s',
-                                        score      = %d;
-                """
-                .formatted(getTableName(mode), uuid.toString(), score.name(), score.time(), score.difficulty(), score.score(),
-                        score.name(), score.time(), score.difficulty(), score.score())));
+        try {
+            pool.batch(getUpsert(mode), scores.entrySet(), (statement, entry) -> bindScore(statement, 1, entry.getKey(), entry.getValue()));
+        } catch (SQLException ex) {
+            IP.logging().stack("Error while trying to write SQL data of %s".formatted(mode), ex);
+            StorageStats.fail();
+        }
     }
 
-    // returns leaderboard table name
-    private String getTableName(String mode) {
-        return "%sleaderboard-%s".formatted(Option.SQL_PREFIX, mode);
+    @Override
+    public @NotNull Changes readChanges(@NotNull String mode, long version) {
+        Map<UUID, Score> scores = new HashMap<>();
+        Changes changes = readChanges(mode, version, SingleLeaderboardMenu.Sort.SCORE, scores::put);
+
+        return changes.complete() ? new Changes(changes.version(), scores, Collections.emptySet(), true) : changes;
     }
 
     @Override
-    public void readPlayer(@NotNull ParkourPlayer player) {
-        try (ResultSet results = sendQuery(
-                """
-                SELECT * FROM `%s` WHERE uuid = '%s';
-                """
-                .formatted("%soptions".formatted(Option.SQL_PREFIX), player.getUUID()))) {
+    public @NotNull Changes readChanges(@NotNull String mode, long version, @NotNull SingleLeaderboardMenu.Sort sort, @NotNull BiConsumer<UUID, Score> consumer) {
+        long[] versions;
+
+        try {
+            versions = pool.query(
+                    """
+                    SELECT %s AS now,
+                           (SELECT MAX(updated_at) FROM `%s`) AS updated,
+                           (SELECT removed FROM `%s` WHERE mode = ?) AS removed;
+                    """
+                    .formatted(NOW, getTableName(mode), getVersionTableName()), results -> {
+                if (!results.next()) {
+                    return null;
+                }
 
-            if (results == null) {
-                player.setSettings(new HashMap<>());
-                return;
-            }
+                return new long[]{results.getLong("now"), results.getLong("updated"), results.getLong("removed")};
+            }, mode);
+        } catch (SQLException ex) {
+            IP.logging().stack("Error while trying to read SQL version of %s".formatted(mode), ex);
+            StorageStats.fail();
+            return new Changes(version, Collections.emptyMap(), Collections.emptySet(), false);
+        }
+
+        if (versions == null) {
+            return new Changes(version, Collections.emptyMap(), Collections.emptySet(), false);
+        }
 
-            boolean hasNext = results.next(); // move cursor
+        long now = versions[0];
+        long updated = versions[1];
+        long removed = versions[2];
 
-            if (!hasNext) {
-                player.setSettings(new HashMap<>());
-                return;
-            }
+        if (version != 0 && updated <= version && removed <= version) {
+            return new Changes(version, Collections.emptyMap(), Collections.emptySet(), false);
+        }
 
-            Map<String, Object> settings = Colls.thread(ParkourPlayer.PLAYER_COLUMNS).mapv((key, value) -> {
-                try {
-                    return results.getObject(key);
-                } catch (SQLException ex) {
-                    IP.logging().stack("Error while trying to read SQL data of %s, option = %s".formatted(player.getName(), key), ex);
-                    return null;
+        // writes that were still in progress during this read are read again next time
+        long next = now - VISIBILITY_MARGIN;
+
+        // removed rows can't be found, so read everything
+        if (version == 0 || removed > version) {
+            readScores(mode, sort, consumer);
+
+            return new Changes(next, Collections.emptyMap(), Collections.emptySet(), true);
+        }
+
+        try {
+            return pool.query(
+                    """
+                    SELECT %s FROM `%s` WHERE updated_at > ?;
+                    """
+                    .formatted(COLUMNS, getTableName(mode)), results -> {
+                Map<UUID, Score> scores = new HashMap<>();
+
+                while (results.next()) { // advance row
+                    scores.put(UUID.fromString(results.getString("uuid")), readScore(results));
                 }
-            }).get();
 
-            player.setSettings(settings);
+                return new Changes(next, scores, Collections.emptySet(), false);
+            }, version);
         } catch (SQLException ex) {
-            IP.logging().stack("Error while trying to read SQL data of %s".formatted(player.getName()), ex);
+            IP.logging().stack("Error while trying to read changed SQL data of %s".formatted(mode), ex);
+            StorageStats.fail();
+            return new Changes(version, Collections.emptyMap(), Collections.emptySet(), false);
         }
     }
 
     @Override
-    public void writePlayer(@NotNull ParkourPlayer player) {
-        sendUpdate("""
-                INSERT INTO `%s`
-                (uuid, style, blockLead, useParticles, useSpecial, showFallMsg, showScoreboard,
-                 selectedTime, collectedRewards, locale, schematicDifficulty, sound)
-                VALUES ('%s', '%s', %d, %b, %b, %b, %b, %d, '%s', '%s', %f, %b)
-                ON DUPLICATE KEY UPDATE style               = '%s',
-                                        blockLead           = %d,
-                                        useParticles        = %b,
-                                        useSpecial          = %b,
-                                        showFallMsg         = %b,
-                                        showScoreboard      = %b,
-                                        selectedTime        = %d,
-                                        collectedRewards    = '%s',
-                                        locale              = '%s',
-                                        schematicDifficulty = %f,
-                                        sound               = %b;
-                                        """
-                .formatted("%soptions".formatted(Option.SQL_PREFIX), player.getUUID(), player.style, player.blockLead,
-                        player.particles, player.useSpecialBlocks, player.showFallMessage,
-                        player.showScoreboard, player.selectedTime, String.join(",", player.collectedRewards), player.locale,
-                        player.schematicDifficulty, player.sound,
-
-                        player.style, player.blockLead,
-                        player.particles, player.useSpecialBlocks, player.showFallMessage,
-                        player.showScoreboard, player.selectedTime, String.join(",", player.collectedRewards), player.locale,
-                        player.schematicDifficulty, player.sound));
+    public @NotNull Map<UUID, Score> readScores(@NotNull String mode, @NotNull SingleLeaderboardMenu.Sort sort, int limit) {
+        // time and difficulty are stored as strings, so these can't be ordered by the database
+        if (sort != SingleLeaderboardMenu.Sort.SCORE) {
+            return Storage.super.readScores(mode, sort, limit);
+        }
+
+        try {
+            return pool.query(
+                    """
+                    SELECT %s FROM `%s` ORDER BY score DESC LIMIT ?;
+                    """
+                    .formatted(COLUMNS, getTableName(mode)), results -> {
+                Map<UUID, Score> scores = new LinkedHashMap<>();
+
+                while (results.next()) { // advance row
+                    scores.put(UUID.fromString(results.getString("uuid")), readScore(results));
+                }
+
+                return scores;
+            }, limit);
+        } catch (SQLException ex) {
+            IP.logging().stack("Error while trying to read top SQL data of %s".formatted(mode), ex);
+            StorageStats.fail();
+            return new LinkedHashMap<>();
+        }
     }
 
-    public void connect() {
+    @Override
+    public @Nullable Score readScore(@NotNull String mode, @NotNull UUID uuid) {
         try {
-            IP.logging().info("Connecting to MySQL");
+            return pool.query(
+                    """
+                    SELECT %s FROM `%s` WHERE uuid = ?;
+                    """
+                    .formatted(COLUMNS, getTableName(mode)), results -> {
+                if (!results.next()) {
+                    return null;
+                }
 
-	    Class.forName("org.mariadb.jdbc.Driver");
+                return readScore(results);
+            }, uuid.toString());
+        } catch (SQLException ex) {
+            IP.logging().stack("Error while trying to read SQL score of %s in %s".formatted(uuid, mode), ex);
+            StorageStats.fail();
+            return null;
+        }
+    }
 
-            connection = DriverManager.getConnection("jdbc:mariadb://" + Option.SQL_URL + ":" + Option.SQL_PORT + "/" + Option.SQL_DB +
-                    "?allowPublicKeyRetrieval=true" + "&useSSL=false" + "&useUnicode=true" + "&characterEncoding=utf-8" + "&autoReconnect=true" +
-                    "&maxReconnects=5" + "&user=" + Option.SQL_USERNAME + "&password=" + Option.SQL_PASSWORD);
+    @Override
+    public int readRank(@NotNull String mode, @NotNull SingleLeaderboardMenu.Sort sort, @NotNull Score score) {
+        if (sort != SingleLeaderboardMenu.Sort.SCORE) {
+            return Storage.super.readRank(mode, sort, score);
+        }
 
-            sendUpdate("CREATE DATABASE IF NOT EXISTS `%s`;".formatted(Option.SQL_DB));
-            sendUpdate("USE `" + Option.SQL_DB + "`;");
+        try {
+            return pool.query(
+                    """
+                    SELECT COUNT(*) FROM `%s` WHERE score > ?;
+                    """
+                    .formatted(getTableName(mode)), results -> {
+                if (!results.next()) {
+                    return 0;
+                }
 
-            sendUpdate("CREATE TABLE IF NOT EXISTS `" + Option.SQL_PREFIX + "options` " + "(`uuid` CHAR(36) NOT NULL, `time` VARCHAR(8), `style` VARCHAR(32), " + "`blockLead` INT, `useParticles` BOOLEAN, `useDifficulty` BOOLEAN, `useSpecial` BOOLEAN, " + "`showFallMsg` BOOLEAN, `showScoreboard` BOOLEAN, PRIMARY KEY (`uuid`)) ENGINE = InnoDB CHARSET = utf8;");
+                return results.getInt(1) + 1;
+            }, score.score());
+        } catch (SQLException ex) {
+            IP.logging().stack("Error while trying to read SQL rank in %s".formatted(mode), ex);
+            StorageStats.fail();
+            return 0;
+        }
+    }
 
-            // v3.0.0
-            sendUpdateSuppressed("ALTER TABLE `" + Option.SQL_PREFIX + "options` DROP COLUMN `time`;");
-            sendUpdateSuppressed("ALTER TABLE `" + Option.SQL_PREFIX + "options` ADD `selectedTime` INT NOT NULL;");
+    @Override
+    public void updateScores(@NotNull String mode, @NotNull Map<UUID, Score> changed, @NotNull Set<UUID> removed) {
+        try {
+            pool.transaction(connection -> {
+                pool.batch(getUpsert(mode), changed.entrySet(), (statement, entry) -> bindScore(statement, 1, entry.getKey(), entry.getValue()));
 
-            // v3.1.0
-            sendUpdateSuppressed("ALTER TABLE `" + Option.SQL_PREFIX + "options` ADD `collectedRewards` MEDIUMTEXT;");
+                if (removed.isEmpty()) {
+                    return null;
+                }
 
-            // v3.6.0
-            sendUpdateSuppressed("ALTER TABLE `%s` ADD `locale` VARCHAR(8);".formatted(Option.SQL_PREFIX + "options"));
-            sendUpdateSuppressed("ALTER TABLE `%s` ADD `schematicDifficulty` DOUBLE;".formatted(Option.SQL_PREFIX + "options"));
+                pool.batch("""
+                        DELETE FROM `%s` WHERE uuid = ?;
+                        """
+                        .formatted(getTableName(mode)), removed, (statement, uuid) -> statement.setString(1, uuid.toString()));
+
+                // let other servers know that they have to read all scores again
+                pool.update("""
+                        INSERT INTO `%s` (mode, removed)
+                        VALUES (?, %s)
+                        ON DUPLICATE KEY UPDATE removed = VALUES(removed);
+                        """
+                        .formatted(getVersionTableName(), NOW), mode);
+                return null;
+            });
+        } catch (SQLException ex) {
+            IP.logging().stack("Error while trying to update SQL data of %s".formatted(mode), ex);
+            StorageStats.fail();
+        }
+    }
 
-            // v4.0.0
-            sendUpdateSuppressed("ALTER TABLE `%s` ADD `sound` BOOLEAN;".formatted(Option.SQL_PREFIX + "options"));
+    @Override
+    public @NotNull Map<UUID, Score> readWindowScores(@NotNull String mode, @NotNull WindowedLeaderboard.Period period, long bucket) {
+        try {
+            return pool.query(
+                    """
+                    SELECT %s FROM `%s` WHERE bucket = ?;
+                    """
+                    .formatted(COLUMNS, getWindowTableName(mode, period)), results -> {
+                Map<UUID, Score> scores = new HashMap<>();
 
-            // 5.0.0
-            sendUpdateSuppressed("ALTER TABLE `%soptions` DROP COLUMN `useDifficulty`;".formatted(Option.SQL_PREFIX));
-            sendUpdateSuppressed("ALTER TABLE `%soptions` DROP COLUMN `useStructure`;".formatted(Option.SQL_PREFIX));
+                while (results.next()) { // advance row
+                    scores.put(UUID.fromString(results.getString("uuid")), readScore(results));
+                }
 
-            IP.logging().info("Connected to MySQL");
-        } catch (Exception ex) {
-            IP.logging().stack("Could not connect to MySQL", "check your SQL settings in the config", ex);
-            Bukkit.getPluginManager().disablePlugin(IP.getPlugin()); // disable plugin since data handling without db will go horribly wrong
+                return scores;
+            }, bucket);
+        } catch (SQLException ex) {
+            IP.logging().stack("Error while trying to read SQL data of %s %s".formatted(mode, period), ex);
+            StorageStats.fail();
+            return new HashMap<>();
         }
     }
 
-    private void validateConnection() {
+    @Override
+    public void writeWindowScores(@NotNull String mode, @NotNull WindowedLeaderboard.Period period, long bucket, @NotNull Map<UUID, Score> scores) {
+        String table = getWindowTableName(mode, period);
+
         try {
-            if (!connection.isValid(10)) {
-                connect();
-            }
-        } catch (Exception ex) {
-            IP.logging().stack("Error while trying to reconnect to MySQL", ex);
+            // replace the entire bucket, so removed scores get removed
+            pool.transaction(connection -> {
+                pool.update("""
+                        DELETE FROM `%s` WHERE bucket = ?;
+                        """
+                        .formatted(table), bucket);
+
+                pool.batch("""
+                        INSERT INTO `%s`
+                            (bucket, uuid, name, time, difficulty, score)
+                        VALUES (?, ?, ?, ?, ?, ?);
+                        """
+                        .formatted(table), scores.entrySet(), (statement, entry) -> {
+                    statement.setLong(1, bucket);
+                    bindScore(statement, 2, entry.getKey(), entry.getValue());
+                });
+                return null;
+            });
+        } catch (SQLException ex) {
+            IP.logging().stack("Error while trying to write SQL data of %s %s".formatted(mode, period), ex);
+            StorageStats.fail();
         }
     }
 
-    // send query and get result
-    private ResultSet sendQuery(String sql) {
-        validateConnection();
+    @Override
+    public void updateWindowScores(@NotNull String mode, @NotNull WindowedLeaderboard.Period period, long bucket,
+                                   @NotNull Map<UUID, Score> changed, @NotNull Set<UUID> removed) {
+        String table = getWindowTableName(mode, period);
 
         try {
-            return connection.prepareStatement(sql).executeQuery();
+            pool.transaction(connection -> {
+                pool.batch("""
+                        INSERT INTO `%s`
+                            (bucket, uuid, name, time, difficulty, score)
+                        VALUES (?, ?, ?, ?, ?, ?)
+                        ON DUPLICATE KEY UPDATE name = VALUES(name), time = VALUES(time), difficulty = VALUES(difficulty), score = VALUES(score);
+                        """
+                        .formatted(table), changed.entrySet(), (statement, entry) -> {
+                    statement.setLong(1, bucket);
+                    bindScore(statement, 2, entry.getKey(), entry.getValue());
+                });
+
+                pool.batch("""
+                        DELETE FROM `%s` WHERE bucket = ? AND uuid = ?;
+                        """
+                        .formatted(table), removed, (statement, uuid) -> {
+                    statement.setLong(1, bucket);
+                    statement.setString(2, uuid.toString());
+                });
+                return null;
+            });
         } catch (SQLException ex) {
-            IP.logging().stack("Error while sending query %s".formatted(sql), ex);
+            IP.logging().stack("Error while trying to update SQL data of %s %s".formatted(mode, period), ex);
+            StorageStats.fail();
+        }
+    }
+
+    @Override
+    public void deleteWindowScores(@NotNull String mode, @NotNull WindowedLeaderboard.Period period, long before) {
+        try {
+            pool.update("""
+                    DELETE FROM `%s` WHERE bucket < ?;
+                    """
+                    .formatted(getWindowTableName(mode, period)), before);
+        } catch (SQLException ex) {
+            IP.logging().stack("Error while trying to delete old SQL data of %s %s".formatted(mode, period), ex);
+            StorageStats.fail();
+        }
+    }
+
+    // reads the score in the current row
+    private Score readScore(ResultSet results) throws SQLException {
+        return new Score(
+                results.getString("name"),
+                results.getString("time"),
+                results.getString("difficulty"),
+                results.getInt("score"));
+    }
+
+    // sets the uuid, name, time, difficulty and score parameters, starting at index
+    private void bindScore(PreparedStatement statement, int index, UUID uuid, Score score) throws SQLException {
+        statement.setString(index, uuid.toString());
+        statement.setString(index + 1, score.name());
+        statement.setString(index + 2, score.time());
+        statement.setString(index + 3, score.difficulty());
+        statement.setInt(index + 4, score.score());
+    }
+
+    // returns the statement which inserts or updates a score
+    private String getUpsert(String mode) {
+        // updated_at is only changed when the score has changed, so other servers only read actual changes
+        return """
+                INSERT INTO `%s`
+                    (uuid, name, time, difficulty, score, updated_at)
+                VALUES (?, ?, ?, ?, ?, %s)
+                ON DUPLICATE KEY UPDATE updated_at = IF(name <=> VALUES(name) AND time <=> VALUES(time)
+                                                            AND difficulty <=> VALUES(difficulty) AND score <=> VALUES(score),
+                                                        updated_at, VALUES(updated_at)),
+                                        name       = VALUES(name),
+                                        time       = VALUES(time),
+                                        difficulty = VALUES(difficulty),
+                                        score      = VALUES(score);
+                """
+                .formatted(getTableName(mode), NOW);
+    }
+
+    // returns leaderboard table name
+    private String getTableName(String mode) {
+        return "%sleaderboard-%s".formatted(Option.SQL_PREFIX, mode);
+    }
+
+    // returns the name of the table with the last time scores were removed per mode
+    private String getVersionTableName() {
+        return "%sleaderboard_versions".formatted(Option.SQL_PREFIX);
+    }
+
+    // returns windowed leaderboard table name
+    private String getWindowTableName(String mode, WindowedLeaderboard.Period period) {
+        return "%sleaderboard-%s-%s".formatted(Option.SQL_PREFIX, mode, period.name().toLowerCase());
+    }
+
+    @Override
+    public @Nullable PlayerSettings readSettings(@NotNull UUID uuid) {
+        try {
+            return pool.query(
+                    """
+                    SELECT * FROM `%soptions` WHERE uuid = ?;
+                    """
+                    .formatted(Option.SQL_PREFIX), results -> {
+                if (!results.next()) {
+                    return null;
+                }
+
+                return SettingsCodec.decodeRow(results);
+            }, uuid.toString());
+        } catch (SQLException ex) {
+            IP.logging().stack("Error while trying to read SQL data of %s".formatted(uuid), ex);
+            StorageStats.fail();
             return null;
         }
     }
 
-    // send update
-    private void sendUpdate(String sql) {
-        validateConnection();
+    @Override
+    public void readAllSettings(@Nullable UUID after, @NotNull BiConsumer<UUID, PlayerSettings> consumer) {
+        try {
+            pool.stream(
+                    """
+                    SELECT * FROM `%soptions` WHERE uuid > ? ORDER BY uuid;
+                    """
+                    .formatted(Option.SQL_PREFIX), results -> {
+                while (results.next()) {
+                    consumer.accept(UUID.fromString(results.getString("uuid")), SettingsCodec.decodeRow(results));
+                }
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.executeUpdate();
+                return null;
+            }, after != null ? after.toString() : "");
         } catch (SQLException ex) {
-            IP.logging().stack("Error while sending query %s".formatted(sql), ex);
+            IP.logging().stack("Error while trying to read SQL data of all players", ex);
+            StorageStats.fail();
         }
     }
 
-    // if query throws an error, ignore it
-    private void sendUpdateSuppressed(String sql) {
-        validateConnection();
+    @Override
+    public void writePlayer(@NotNull ParkourPlayer player) {
+        writePlayers(List.of(player));
+    }
+
+    @Override
+    public void writePlayers(@NotNull Collection<ParkourPlayer> players) {
+        Map<UUID, PlayerSettings> settings = new LinkedHashMap<>();
+        players.forEach(player -> settings.put(player.getUUID(), player.getSettings()));
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.executeUpdate();
-        } catch (SQLException ignored) {
+        writeSettings(settings);
+    }
 
+    @Override
+    public void writeSettings(@NotNull Map<UUID, PlayerSettings> settings) {
+        try {
+            pool.batch("""
+                    INSERT INTO `%soptions` (uuid, settings)
+                    VALUES (?, ?)
+                    ON DUPLICATE KEY UPDATE settings = VALUES(settings);
+                    """
+                    .formatted(Option.SQL_PREFIX), settings.entrySet(), (statement, entry) -> {
+                statement.setString(1, entry.getKey().toString());
+                statement.setBytes(2, SettingsCodec.encode(entry.getValue()));
+            });
+        } catch (SQLException ex) {
+            throw new StorageException("Error while trying to write SQL data of %d players".formatted(settings.size()), ex);
         }
     }
+
+    public void connect() {
+        try {
+            open();
+        } catch (Exception ex) {
+            IP.logging().stack("Could not connect to MySQL", "check your SQL settings in the config", ex);
+            Bukkit.getPluginManager().disablePlugin(IP.getPlugin()); // disable plugin since data handling without db will go horribly wrong
+        }
+    }
+
+    private void open() throws Exception {
+        IP.logging().info("Connecting to MySQL");
+
+	    Class.forName("org.mariadb.jdbc.Driver");
+
+        pool = new ConnectionPool("jdbc:mariadb://" + Option.SQL_URL + ":" + Option.SQL_PORT + "/" + Option.SQL_DB +
+                "?allowPublicKeyRetrieval=true" + "&useSSL=false" + "&useUnicode=true" + "&characterEncoding=utf-8" +
+                "&user=" + Option.SQL_USERNAME + "&password=" + Option.SQL_PASSWORD, Option.SQL_POOL_SIZE);
+
+        // the pool never runs these again, so reconnecting doesn't send any schema changes
+        migrations = new SchemaMigrations(pool, Option.SQL_PREFIX + "schema");
+
+        String options = Option.SQL_PREFIX + "options";
+        migrations.migrate(options, new SchemaMigrations.Steps()
+                .legacy("CREATE TABLE IF NOT EXISTS `" + options + "` " + "(`uuid` CHAR(36) NOT NULL, `time` VARCHAR(8), `style` VARCHAR(32), " + "`blockLead` INT, `useParticles` BOOLEAN, `useDifficulty` BOOLEAN, `useSpecial` BOOLEAN, " + "`showFallMsg` BOOLEAN, `showScoreboard` BOOLEAN, PRIMARY KEY (`uuid`)) ENGINE = InnoDB CHARSET = utf8;")
+                // v3.0.0
+                .legacy("ALTER TABLE `%s` DROP COLUMN `time`;".formatted(options),
+                        "ALTER TABLE `%s` ADD `selectedTime` INT NOT NULL;".formatted(options))
+                // v3.1.0
+                .legacy("ALTER TABLE `%s` ADD `collectedRewards` MEDIUMTEXT;".formatted(options))
+                // v3.6.0
+                .legacy("ALTER TABLE `%s` ADD `locale` VARCHAR(8);".formatted(options),
+                        "ALTER TABLE `%s` ADD `schematicDifficulty` DOUBLE;".formatted(options))
+                // v4.0.0
+                .legacy("ALTER TABLE `%s` ADD `sound` BOOLEAN;".formatted(options))
+                // 5.0.0
+                .legacy("ALTER TABLE `%s` DROP COLUMN `useDifficulty`;".formatted(options),
+                        "ALTER TABLE `%s` DROP COLUMN `useStructure`;".formatted(options))
+                // 5.1.0, settings are stored in a single column in the format of SettingsCodec
+                .then("ALTER TABLE `%s` ADD `settings` BLOB;".formatted(options),
+                        "ALTER TABLE `%s` MODIFY `selectedTime` INT NULL;".formatted(options))
+                .build());
+
+        // 5.1.0
+        migrations.migrate(getVersionTableName(), new SchemaMigrations.Steps()
+                .then("""
+                        CREATE TABLE IF NOT EXISTS `%s`
+                        (
+                            mode    VARCHAR(64) NOT NULL PRIMARY KEY,
+                            removed BIGINT      NOT NULL DEFAULT 0
+                        )
+                        CHARSET = utf8 ENGINE = InnoDB;
+                        """
+                        .formatted(getVersionTableName()))
+                .build());
+
+        IP.logging().info("Connected to MySQL");
+    }
 }
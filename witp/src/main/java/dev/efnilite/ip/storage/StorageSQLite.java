@@ -0,0 +1,520 @@
+package dev.efnilite.ip.storage;
+
+import dev.efnilite.ip.IP;
+import dev.efnilite.ip.config.Option;
+import dev.efnilite.ip.leaderboard.Score;
+import dev.efnilite.ip.leaderboard.WindowedLeaderboard;
+import dev.efnilite.ip.menu.community.SingleLeaderboardMenu;
+import dev.efnilite.ip.player.ParkourPlayer;
+import dev.efnilite.ip.player.PlayerSettings;
+import org.bukkit.Bukkit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Embedded SQLite storage manager, which stores all data in a single file in the plugin folder.
+ * Unlike {@link StorageDisk}, scores are indexed and all writes are transactions, without needing a database server.
+ *
+ * @since 5.1.0
+ */
+public final class StorageSQLite implements Storage {
+
+    // the columns of a score, so other columns aren't sent
+    private static final String COLUMNS = "uuid, name, time, difficulty, score";
+
+    private ConnectionPool pool;
+
+    public StorageSQLite() {
+        this(false);
+    }
+
+    /**
+     * @param strict Whether a {@link StorageException} is thrown if the database can't be connected to, instead of disabling the plugin.
+     *               Used for storage which is only opened to migrate data, see {@link StorageMigration}.
+     */
+    StorageSQLite(boolean strict) {
+        if (!strict) {
+            connect();
+            return;
+        }
+
+        try {
+            open(IP.getInFolder("data.db"), true);
+        } catch (Exception ex) {
+            throw new StorageException("Could not connect to SQLite", ex);
+        }
+    }
+
+    /**
+     * Opens a database in another file, without checking connections in the background, so no server is required.
+     *
+     * @param file The database file.
+     * @throws StorageException If the database can't be opened.
+     */
+    StorageSQLite(@NotNull File file) {
+        try {
+            open(file, false);
+        } catch (Exception ex) {
+            throw new StorageException("Could not open SQLite database %s".formatted(file), ex);
+        }
+    }
+
+    @Override
+    public void init(String mode) {
+        sendUpdate("""
+                CREATE TABLE IF NOT EXISTS "%s"
+                (
+                    uuid       TEXT NOT NULL PRIMARY KEY,
+                    name       TEXT,
+                    time       TEXT,
+                    difficulty TEXT,
+                    score      INTEGER
+                );
+                """
+                .formatted(getTableName(mode)));
+
+        sendUpdate("""
+                CREATE INDEX IF NOT EXISTS "%s_score" ON "%s" (score DESC);
+                """
+                .formatted(getTableName(mode), getTableName(mode)));
+
+        for (WindowedLeaderboard.Period period : Option.LEADERBOARD_WINDOWS) {
+            sendUpdate("""
+                    CREATE TABLE IF NOT EXISTS "%s"
+                    (
+                        bucket     INTEGER NOT NULL,
+                        uuid       TEXT    NOT NULL,
+                        name       TEXT,
+                        time       TEXT,
+                        difficulty TEXT,
+                        score      INTEGER,
+                        PRIMARY KEY (bucket, uuid)
+                    );
+                    """
+                    .formatted(getWindowTableName(mode, period)));
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+        IP.logging().info("Closed connection to SQLite");
+    }
+
+    @Override
+    public @NotNull Map<UUID, Score> readScores(@NotNull String mode) {
+        Map<UUID, Score> scores = new HashMap<>();
+
+        readScores(mode, SingleLeaderboardMenu.Sort.SCORE, scores::put);
+
+        return scores;
+    }
+
+    @Override
+    public @NotNull Changes readChanges(@NotNull String mode, long version, @NotNull SingleLeaderboardMenu.Sort sort, @NotNull BiConsumer<UUID, Score> consumer) {
+        readScores(mode, sort, consumer);
+
+        return new Changes(0, Collections.emptyMap(), Collections.emptySet(), true);
+    }
+
+    // streams all scores, ordered from best to worst if the database can order these
+    private void readScores(String mode, SingleLeaderboardMenu.Sort sort, BiConsumer<UUID, Score> consumer) {
+        try {
+            pool.stream(
+                    """
+                    SELECT %s FROM "%s"%s;
+                    """
+                    .formatted(COLUMNS, getTableName(mode), sort == SingleLeaderboardMenu.Sort.SCORE ? " ORDER BY score DESC" : ""), results -> {
+                while (results.next()) { // advance row
+                    consumer.accept(UUID.fromString(results.getString("uuid")), readScore(results));
+                }
+
+                return null;
+            });
+        } catch (SQLException ex) {
+            IP.logging().stack("Error while trying to read SQLite data of %s".formatted(mode), ex);
+            StorageStats.fail();
+        }
+    }
+
+    @Override
+    public void writeScores(@NotNull String mode, @NotNull Map<UUID, Score> scores) {
+        try {
+            pool.batch(getUpsert(mode), scores.entrySet(), (statement, entry) -> bindScore(statement, 1, entry.getKey(), entry.getValue()));
+        } catch (SQLException ex) {
+            IP.logging().stack("Error while trying to write SQLite data of %s".formatted(mode), ex);
+            StorageStats.fail();
+        }
+    }
+
+    @Override
+    public @NotNull Map<UUID, Score> readScores(@NotNull String mode, @NotNull SingleLeaderboardMenu.Sort sort, int limit) {
+        // time and difficulty are stored as strings, so these can't be ordered by the database
+        if (sort != SingleLeaderboardMenu.Sort.SCORE) {
+            return Storage.super.readScores(mode, sort, limit);
+        }
+
+        try {
+            return pool.query(
+                    """
+                    SELECT %s FROM "%s" ORDER BY score DESC LIMIT ?;
+                    """
+                    .formatted(COLUMNS, getTableName(mode)), results -> {
+                Map<UUID, Score> scores = new LinkedHashMap<>();
+
+                while (results.next()) { // advance row
+                    scores.put(UUID.fromString(results.getString("uuid")), readScore(results));
+                }
+
+                return scores;
+            }, limit);
+        } catch (SQLException ex) {
+            IP.logging().stack("Error while trying to read top SQLite data of %s".formatted(mode), ex);
+            StorageStats.fail();
+            return new LinkedHashMap<>();
+        }
+    }
+
+    @Override
+    public @Nullable Score readScore(@NotNull String mode, @NotNull UUID uuid) {
+        try {
+            return pool.query(
+                    """
+                    SELECT %s FROM "%s" WHERE uuid = ?;
+                    """
+                    .formatted(COLUMNS, getTableName(mode)), results -> {
+                if (!results.next()) {
+                    return null;
+                }
+
+                return readScore(results);
+            }, uuid.toString());
+        } catch (SQLException ex) {
+            IP.logging().stack("Error while trying to read SQLite score of %s in %s".formatted(uuid, mode), ex);
+            StorageStats.fail();
+            return null;
+        }
+    }
+
+    @Override
+    public int readRank(@NotNull String mode, @NotNull SingleLeaderboardMenu.Sort sort, @NotNull Score score) {
+        if (sort != SingleLeaderboardMenu.Sort.SCORE) {
+            return Storage.super.readRank(mode, sort, score);
+        }
+
+        try {
+            return pool.query(
+                    """
+                    SELECT COUNT(*) FROM "%s" WHERE score > ?;
+                    """
+                    .formatted(getTableName(mode)), results -> {
+                if (!results.next()) {
+                    return 0;
+                }
+
+                return results.getInt(1) + 1;
+            }, score.score());
+        } catch (SQLException ex) {
+            IP.logging().stack("Error while trying to read SQLite rank in %s".formatted(mode), ex);
+            StorageStats.fail();
+            return 0;
+        }
+    }
+
+    @Override
+    public void updateScores(@NotNull String mode, @NotNull Map<UUID, Score> changed, @NotNull Set<UUID> removed) {
+        try {
+            pool.transaction(connection -> {
+                pool.batch(getUpsert(mode), changed.entrySet(), (statement, entry) -> bindScore(statement, 1, entry.getKey(), entry.getValue()));
+
+                pool.batch("""
+                        DELETE FROM "%s" WHERE uuid = ?;
+                        """
+                        .formatted(getTableName(mode)), removed, (statement, uuid) -> statement.setString(1, uuid.toString()));
+                return null;
+            });
+        } catch (SQLException ex) {
+            IP.logging().stack("Error while trying to update SQLite data of %s".formatted(mode), ex);
+            StorageStats.fail();
+        }
+    }
+
+    @Override
+    public @NotNull Map<UUID, Score> readWindowScores(@NotNull String mode, @NotNull WindowedLeaderboard.Period period, long bucket) {
+        try {
+            return pool.query(
+                    """
+                    SELECT %s FROM "%s" WHERE bucket = ?;
+                    """
+                    .formatted(COLUMNS, getWindowTableName(mode, period)), results -> {
+                Map<UUID, Score> scores = new HashMap<>();
+
+                while (results.next()) { // advance row
+                    scores.put(UUID.fromString(results.getString("uuid")), readScore(results));
+                }
+
+                return scores;
+            }, bucket);
+        } catch (SQLException ex) {
+            IP.logging().stack("Error while trying to read SQLite data of %s %s".formatted(mode, period), ex);
+            StorageStats.fail();
+            return new HashMap<>();
+        }
+    }
+
+    @Override
+    public void writeWindowScores(@NotNull String mode, @NotNull WindowedLeaderboard.Period period, long bucket, @NotNull Map<UUID, Score> scores) {
+        String table = getWindowTableName(mode, period);
+
+        try {
+            // replace the entire bucket, so removed scores get removed
+            pool.transaction(connection -> {
+                pool.update("""
+                        DELETE FROM "%s" WHERE bucket = ?;
+                        """
+                        .formatted(table), bucket);
+
+                pool.batch("""
+                        INSERT INTO "%s"
+                            (bucket, uuid, name, time, difficulty, score)
+                        VALUES (?, ?, ?, ?, ?, ?);
+                        """
+                        .formatted(table), scores.entrySet(), (statement, entry) -> {
+                    statement.setLong(1, bucket);
+                    bindScore(statement, 2, entry.getKey(), entry.getValue());
+                });
+                return null;
+            });
+        } catch (SQLException ex) {
+            IP.logging().stack("Error while trying to write SQLite data of %s %s".formatted(mode, period), ex);
+            StorageStats.fail();
+        }
+    }
+
+    @Override
+    public void updateWindowScores(@NotNull String mode, @NotNull WindowedLeaderboard.Period period, long bucket,
+                                   @NotNull Map<UUID, Score> changed, @NotNull Set<UUID> removed) {
+        String table = getWindowTableName(mode, period);
+
+        try {
+            pool.transaction(connection -> {
+                pool.batch("""
+                        INSERT INTO "%s"
+                            (bucket, uuid, name, time, difficulty, score)
+                        VALUES (?, ?, ?, ?, ?, ?)
+                        ON CONFLICT (bucket, uuid) DO UPDATE SET name       = excluded.name,
+                                                                 time       = excluded.time,
+                                                                 difficulty = excluded.difficulty,
+                                                                 score      = excluded.score;
+                        """
+                        .formatted(table), changed.entrySet(), (statement, entry) -> {
+                    statement.setLong(1, bucket);
+                    bindScore(statement, 2, entry.getKey(), entry.getValue());
+                });
+
+                pool.batch("""
+                        DELETE FROM "%s" WHERE bucket = ? AND uuid = ?;
+                        """
+                        .formatted(table), removed, (statement, uuid) -> {
+                    statement.setLong(1, bucket);
+                    statement.setString(2, uuid.toString());
+                });
+                return null;
+            });
+        } catch (SQLException ex) {
+            IP.logging().stack("Error while trying to update SQLite data of %s %s".formatted(mode, period), ex);
+            StorageStats.fail();
+        }
+    }
+
+    @Override
+    public void deleteWindowScores(@NotNull String mode, @NotNull WindowedLeaderboard.Period period, long before) {
+        try {
+            pool.update("""
+                    DELETE FROM "%s" WHERE bucket < ?;
+                    """
+                    .formatted(getWindowTableName(mode, period)), before);
+        } catch (SQLException ex) {
+            IP.logging().stack("Error while trying to delete old SQLite data of %s %s".formatted(mode, period), ex);
+            StorageStats.fail();
+        }
+    }
+
+    @Override
+    public @Nullable PlayerSettings readSettings(@NotNull UUID uuid) {
+        try {
+            return pool.query(
+                    """
+                    SELECT * FROM options WHERE uuid = ?;
+                    """, results -> {
+                if (!results.next()) {
+                    return null;
+                }
+
+                return SettingsCodec.decodeRow(results);
+            }, uuid.toString());
+        } catch (SQLException ex) {
+            IP.logging().stack("Error while trying to read SQLite data of %s".formatted(uuid), ex);
+            StorageStats.fail();
+            return null;
+        }
+    }
+
+    @Override
+    public void readAllSettings(@Nullable UUID after, @NotNull BiConsumer<UUID, PlayerSettings> consumer) {
+        try {
+            pool.stream(
+                    """
+                    SELECT * FROM options WHERE uuid > ? ORDER BY uuid;
+                    """, results -> {
+                while (results.next()) {
+                    consumer.accept(UUID.fromString(results.getString("uuid")), SettingsCodec.decodeRow(results));
+                }
+
+                return null;
+            }, after != null ? after.toString() : "");
+        } catch (SQLException ex) {
+            IP.logging().stack("Error while trying to read SQLite data of all players", ex);
+            StorageStats.fail();
+        }
+    }
+
+    @Override
+    public void writePlayer(@NotNull ParkourPlayer player) {
+        writePlayers(List.of(player));
+    }
+
+    @Override
+    public void writePlayers(@NotNull Collection<ParkourPlayer> players) {
+        Map<UUID, PlayerSettings> settings = new LinkedHashMap<>();
+        players.forEach(player -> settings.put(player.getUUID(), player.getSettings()));
+
+        writeSettings(settings);
+    }
+
+    @Override
+    public void writeSettings(@NotNull Map<UUID, PlayerSettings> settings) {
+        try {
+            pool.batch("""
+                    INSERT INTO options (uuid, settings)
+                    VALUES (?, ?)
+                    ON CONFLICT (uuid) DO UPDATE SET settings = excluded.settings;
+                    """, settings.entrySet(), (statement, entry) -> {
+                statement.setString(1, entry.getKey().toString());
+                statement.setBytes(2, SettingsCodec.encode(entry.getValue()));
+            });
+        } catch (SQLException ex) {
+            throw new StorageException("Error while trying to write SQLite data of %d players".formatted(settings.size()), ex);
+        }
+    }
+
+    public void connect() {
+        try {
+            open(IP.getInFolder("data.db"), true);
+        } catch (Exception ex) {
+            IP.logging().stack("Could not connect to SQLite", "check whether the plugin folder can be written to", ex);
+            Bukkit.getPluginManager().disablePlugin(IP.getPlugin()); // disable plugin since data handling without db will go horribly wrong
+        }
+    }
+
+    private void open(File file, boolean monitor) throws Exception {
+        IP.logging().info("Connecting to SQLite");
+
+        Class.forName("org.sqlite.JDBC");
+
+        file.getParentFile().mkdirs();
+
+        // write-ahead logging allows reading while another connection writes
+        pool = new ConnectionPool("jdbc:sqlite:%s?journal_mode=WAL&synchronous=NORMAL&busy_timeout=%d"
+                .formatted(file.getAbsolutePath(), ConnectionPool.TIMEOUT * 1000), Option.STORAGE_THREADS, monitor);
+
+        sendUpdate("""
+                CREATE TABLE IF NOT EXISTS options
+                (
+                    uuid                TEXT NOT NULL PRIMARY KEY,
+                    style               TEXT,
+                    blockLead           INTEGER,
+                    useParticles        INTEGER,
+                    useSpecial          INTEGER,
+                    showFallMsg         INTEGER,
+                    showScoreboard      INTEGER,
+                    selectedTime        INTEGER,
+                    collectedRewards    TEXT,
+                    locale              TEXT,
+                    schematicDifficulty REAL,
+                    sound               INTEGER,
+                    settings            BLOB
+                );
+                """);
+
+        // the settings column was added after the table was first created
+        boolean settings = pool.query("""
+                SELECT COUNT(*) FROM pragma_table_info('options') WHERE name = 'settings';
+                """, results -> results.next() && results.getInt(1) > 0);
+        if (!settings) {
+            sendUpdate("""
+                    ALTER TABLE options ADD COLUMN settings BLOB;
+                    """);
+        }
+
+        IP.logging().info("Connected to SQLite");
+    }
+
+    // reads the score in the current row
+    private Score readScore(ResultSet results) throws SQLException {
+        return new Score(
+                results.getString("name"),
+                results.getString("time"),
+                results.getString("difficulty"),
+                results.getInt("score"));
+    }
+
+    // sets the uuid, name, time, difficulty and score parameters, starting at index
+    private void bindScore(PreparedStatement statement, int index, UUID uuid, Score score) throws SQLException {
+        statement.setString(index, uuid.toString());
+        statement.setString(index + 1, score.name());
+        statement.setString(index + 2, score.time());
+        statement.setString(index + 3, score.difficulty());
+        statement.setInt(index + 4, score.score());
+    }
+
+    // returns the statement which inserts or updates a score
+    private String getUpsert(String mode) {
+        return """
+                INSERT INTO "%s"
+                    (uuid, name, time, difficulty, score)
+                VALUES (?, ?, ?, ?, ?)
+                ON CONFLICT (uuid) DO UPDATE SET name       = excluded.name,
+                                                 time       = excluded.time,
+                                                 difficulty = excluded.difficulty,
+                                                 score      = excluded.score;
+                """
+                .formatted(getTableName(mode));
+    }
+
+    // returns leaderboard table name
+    private String getTableName(String mode) {
+        return "leaderboard-%s".formatted(mode.toLowerCase());
+    }
+
+    // returns windowed leaderboard table name
+    private String getWindowTableName(String mode, WindowedLeaderboard.Period period) {
+        return "leaderboard-%s-%s".formatted(mode.toLowerCase(), period.name().toLowerCase());
+    }
+
+    // send update, used for statements that are only sent once
+    private void sendUpdate(String sql) {
+        try {
+            pool.execute(sql);
+        } catch (SQLException ex) {
+            IP.logging().stack("Error while sending query %s".formatted(sql), ex);
+        }
+    }
+}
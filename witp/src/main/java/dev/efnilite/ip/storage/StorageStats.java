@@ -0,0 +1,191 @@
+package dev.efnilite.ip.storage;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The amount of calls, failed calls and the latency of every storage operation, recorded by {@link InstrumentedStorage}.
+ * Operations are recorded once in total and once per mode, e.g. {@code readScores} and {@code readScores default}.
+ *
+ * @since 5.1.0
+ */
+public final class StorageStats {
+
+    // whether the current operation has failed, set by storage that handles its own errors
+    private static final ThreadLocal<Boolean> failed = ThreadLocal.withInitial(() -> false);
+
+    private final Map<String, Metric> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * Marks the operation on the current thread as failed. Called by storage which logs errors instead of throwing these.
+     */
+    static void fail() {
+        failed.set(true);
+    }
+
+    /**
+     * Called when an operation starts, so failures outside of operations aren't counted.
+     * Operations may be nested, e.g. a write in the consumer of a read, so the failure of the outer operation
+     * is returned and has to be passed to {@link #end(boolean)} once the operation is done.
+     *
+     * @return True if an operation on the current thread had already failed.
+     */
+    public static boolean begin() {
+        boolean outer = failed.get();
+        failed.set(false);
+
+        return outer;
+    }
+
+    /**
+     * Called when an operation that was started with {@link #begin()} is done.
+     *
+     * @param outer The value returned by {@link #begin()}.
+     * @return True if an operation on the current thread has failed since {@link #begin()} was called.
+     */
+    public static boolean end(boolean outer) {
+        boolean failed = StorageStats.failed.get();
+        StorageStats.failed.set(outer || failed);
+
+        return failed;
+    }
+
+    /**
+     * Records an operation.
+     *
+     * @param operation The name of the operation.
+     * @param mode      The mode, null if the operation doesn't belong to a mode.
+     * @param nanos     The time the operation took, in nanoseconds.
+     * @param failed    Whether the operation threw an error or failed.
+     */
+    void record(@NotNull String operation, @Nullable String mode, long nanos, boolean failed) {
+        metrics.computeIfAbsent(operation, k -> new Metric()).record(nanos, failed);
+        if (mode != null) {
+            metrics.computeIfAbsent("%s %s".formatted(operation, mode), k -> new Metric()).record(nanos, failed);
+        }
+    }
+
+    /**
+     * Resets all metrics.
+     */
+    public void reset() {
+        metrics.clear();
+    }
+
+    /**
+     * @return All metrics, by operation and operation followed by the mode, in alphabetical order.
+     */
+    public @NotNull Map<String, Metric> getMetrics() {
+        return new TreeMap<>(metrics);
+    }
+
+    /**
+     * @param operation The operation, optionally followed by a space and the mode.
+     * @return The metric, null if the operation hasn't been recorded.
+     */
+    public @Nullable Metric getMetric(@NotNull String operation) {
+        return metrics.get(operation);
+    }
+
+    /**
+     * The calls of a single operation. Latencies are kept in buckets of powers of 2 microseconds.
+     */
+    public static final class Metric {
+
+        /**
+         * The amount of latency buckets. The last bucket contains all calls that took longer than 2^(BUCKETS - 2) microseconds.
+         */
+        public static final int BUCKETS = 32;
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private volatile long max;
+
+        private void record(long nanos, boolean error) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+
+            count.increment();
+            total.add(micros);
+            buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+
+            if (error) {
+                errors.increment();
+            }
+            if (micros > max) {
+                max = micros;
+            }
+        }
+
+        /**
+         * @return The amount of calls.
+         */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * @return The amount of calls that failed.
+         */
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        /**
+         * @return The average latency in microseconds.
+         */
+        public long getMean() {
+            long count = getCount();
+
+            return count == 0 ? 0 : total.sum() / count;
+        }
+
+        /**
+         * @return The highest latency in microseconds.
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @param bucket The bucket.
+         * @return The amount of calls which took less than 2^bucket microseconds and at least 2^(bucket - 1) microseconds.
+         */
+        public long getCount(int bucket) {
+            return buckets.get(bucket);
+        }
+
+        /**
+         * @param percentile The percentile, from 0 to 100.
+         * @return The upper bound of the latency in microseconds under which the percentile of calls finished.
+         */
+        public long getPercentile(double percentile) {
+            long count = getCount();
+
+            if (count == 0) {
+                return 0;
+            }
+
+            long required = (long) Math.ceil(count * percentile / 100);
+            long seen = 0;
+
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                seen += buckets.get(bucket);
+
+                if (seen >= required) {
+                    return Math.min(1L << bucket, max);
+                }
+            }
+
+            return max;
+        }
+    }
+}
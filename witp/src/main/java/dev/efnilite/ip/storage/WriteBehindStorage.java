@@ -0,0 +1,273 @@
+package dev.efnilite.ip.storage;
+
+import dev.efnilite.ip.IP;
+import dev.efnilite.ip.leaderboard.Score;
+import dev.efnilite.ip.leaderboard.WindowedLeaderboard;
+import dev.efnilite.ip.menu.community.SingleLeaderboardMenu;
+import dev.efnilite.ip.player.ParkourPlayer;
+import dev.efnilite.ip.player.PlayerSettings;
+import dev.efnilite.vilib.util.Task;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * {@link Storage} which queues player writes and writes them in the background, so writing player data never blocks the caller.
+ * Repeated writes of the same player before the next flush are written once, with the player's latest data.
+ * Player settings that have been read or written recently are kept in a {@link PlayerCache}, so players who rejoin
+ * or whose data was {@link #prefetch(UUID) prefetched} before joining don't have to wait for storage.
+ * If the storage is shared with other servers, written settings are only cached until they have been written,
+ * so settings that another server changes in the meantime are never replaced by an old copy.
+ * All other methods are passed to the underlying storage.
+ *
+ * @since 5.1.0
+ */
+public final class WriteBehindStorage implements Storage {
+
+    /**
+     * The interval in ticks at which queued writes are written.
+     */
+    public static final int INTERVAL = 20;
+
+    private final Storage storage;
+
+    // whether other servers write to the same storage
+    private final boolean shared;
+
+    // the settings that have to be written, by uuid. Settings are copied when these are queued,
+    // since the settings of a player are changed on the main thread while these are written
+    private final Map<UUID, PlayerSettings> dirty = new ConcurrentHashMap<>();
+
+    private final PlayerCache cache = new PlayerCache();
+
+    /**
+     * @param storage The storage to which writes are passed.
+     * @param shared  Whether other servers write to the same storage, e.g. MySQL.
+     */
+    public WriteBehindStorage(@NotNull Storage storage, boolean shared) {
+        this.storage = storage;
+        this.shared = shared;
+
+        Task.create(IP.getPlugin())
+                .delay(INTERVAL)
+                .repeat(INTERVAL)
+                .async()
+                .execute(this::flush)
+                .run();
+    }
+
+    /**
+     * @return The storage to which writes are passed.
+     */
+    public Storage getStorage() {
+        return storage;
+    }
+
+    /**
+     * @return The amount of players that haven't been written yet.
+     */
+    public int getQueued() {
+        return dirty.size();
+    }
+
+    @Override
+    public void init(String mode) {
+        storage.init(mode);
+    }
+
+    @Override
+    public void close() {
+        flush();
+        storage.close();
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+
+        Map<UUID, PlayerSettings> settings = new LinkedHashMap<>();
+        for (UUID uuid : new ArrayList<>(dirty.keySet())) {
+            PlayerSettings queued = dirty.remove(uuid);
+
+            if (queued != null) {
+                settings.put(uuid, queued);
+            }
+        }
+
+        write(settings);
+        storage.flush();
+    }
+
+    // not synchronized, so a player who leaves doesn't wait for the writes of all other players
+    @Override
+    public void flush(@NotNull UUID uuid) {
+        PlayerSettings settings = dirty.remove(uuid);
+
+        if (settings == null) {
+            return;
+        }
+
+        write(Map.of(uuid, settings));
+        storage.flush();
+    }
+
+    // settings that couldn't be written are queued again, unless the player has been queued again in the meantime
+    private void write(Map<UUID, PlayerSettings> settings) {
+        boolean outer = StorageStats.begin();
+        boolean failed;
+
+        try {
+            storage.writeSettings(settings);
+
+            failed = StorageStats.end(outer);
+        } catch (Exception ex) {
+            IP.logging().stack("Error while trying to write data of %d players, retrying later".formatted(settings.size()), ex);
+            failed = true;
+        }
+
+        if (failed) {
+            settings.forEach(dirty::putIfAbsent);
+            return;
+        }
+
+        // another server may change these settings once they've been written, so the next read has to come from storage.
+        // players who have been queued again are read from the queue instead
+        if (shared) {
+            settings.keySet().forEach(cache::remove);
+        }
+    }
+
+    @Override
+    public @NotNull Map<UUID, Score> readScores(@NotNull String mode) {
+        return storage.readScores(mode);
+    }
+
+    @Override
+    public void writeScores(@NotNull String mode, @NotNull Map<UUID, Score> scores) {
+        storage.writeScores(mode, scores);
+    }
+
+    @Override
+    public @NotNull Map<UUID, Score> readScores(@NotNull String mode, @NotNull SingleLeaderboardMenu.Sort sort, int limit) {
+        return storage.readScores(mode, sort, limit);
+    }
+
+    @Override
+    public @Nullable Score readScore(@NotNull String mode, @NotNull UUID uuid) {
+        return storage.readScore(mode, uuid);
+    }
+
+    @Override
+    public int readRank(@NotNull String mode, @NotNull SingleLeaderboardMenu.Sort sort, @NotNull Score score) {
+        return storage.readRank(mode, sort, score);
+    }
+
+    @Override
+    public void updateScores(@NotNull String mode, @NotNull Map<UUID, Score> changed, @NotNull Set<UUID> removed) {
+        storage.updateScores(mode, changed, removed);
+    }
+
+    @Override
+    public @NotNull Changes readChanges(@NotNull String mode, long version) {
+        return storage.readChanges(mode, version);
+    }
+
+    @Override
+    public @NotNull Changes readChanges(@NotNull String mode, long version, @NotNull SingleLeaderboardMenu.Sort sort, @NotNull BiConsumer<UUID, Score> consumer) {
+        return storage.readChanges(mode, version, sort, consumer);
+    }
+
+    @Override
+    public @NotNull Map<UUID, Score> readWindowScores(@NotNull String mode, @NotNull WindowedLeaderboard.Period period, long bucket) {
+        return storage.readWindowScores(mode, period, bucket);
+    }
+
+    @Override
+    public void writeWindowScores(@NotNull String mode, @NotNull WindowedLeaderboard.Period period, long bucket, @NotNull Map<UUID, Score> scores) {
+        storage.writeWindowScores(mode, period, bucket, scores);
+    }
+
+    @Override
+    public void updateWindowScores(@NotNull String mode, @NotNull WindowedLeaderboard.Period period, long bucket,
+                                   @NotNull Map<UUID, Score> changed, @NotNull Set<UUID> removed) {
+        storage.updateWindowScores(mode, period, bucket, changed, removed);
+    }
+
+    @Override
+    public void deleteWindowScores(@NotNull String mode, @NotNull WindowedLeaderboard.Period period, long before) {
+        storage.deleteWindowScores(mode, period, before);
+    }
+
+    @Override
+    public @Nullable PlayerSettings readSettings(@NotNull UUID uuid) {
+        PlayerSettings cached = getCachedSettings(uuid);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        PlayerSettings settings = storage.readSettings(uuid);
+
+        // players without data are cached too, so a prefetch of a new player isn't repeated when they join
+        cache.put(uuid, settings != null ? settings : PlayerSettings.EMPTY);
+
+        return settings;
+    }
+
+    @Override
+    public @Nullable PlayerSettings getCachedSettings(@NotNull UUID uuid) {
+        // a player who rejoins before their data has been written would otherwise read old data
+        PlayerSettings queued = dirty.get(uuid);
+
+        if (queued != null) {
+            return queued;
+        }
+
+        return cache.get(uuid);
+    }
+
+    @Override
+    public void readAllSettings(@Nullable UUID after, @NotNull BiConsumer<UUID, PlayerSettings> consumer) {
+        flush();
+        storage.readAllSettings(after, consumer);
+    }
+
+    @Override
+    public void prefetch(@NotNull UUID uuid) {
+        if (dirty.containsKey(uuid) || cache.contains(uuid)) {
+            return;
+        }
+
+        try {
+            readSettings(uuid);
+        } catch (Exception ex) {
+            IP.logging().stack("Error while trying to prefetch data of %s".formatted(uuid), ex);
+        }
+    }
+
+    @Override
+    public void writePlayer(@NotNull ParkourPlayer player) {
+        PlayerSettings settings = player.getSettings();
+
+        cache.put(player.getUUID(), settings);
+        dirty.put(player.getUUID(), settings);
+    }
+
+    @Override
+    public void writePlayers(@NotNull Collection<ParkourPlayer> players) {
+        players.forEach(this::writePlayer);
+    }
+
+    @Override
+    public void writeSettings(@NotNull Map<UUID, PlayerSettings> settings) {
+        if (!shared) {
+            settings.forEach(cache::put);
+        }
+        storage.writeSettings(settings);
+    }
+}
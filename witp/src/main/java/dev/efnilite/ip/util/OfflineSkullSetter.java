@@ -1,17 +1,65 @@
 package dev.efnilite.ip.util;
 
+import dev.efnilite.ip.IP;
+import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.meta.SkullMeta;
 
 import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class OfflineSkullSetter {
 
+    /**
+     * The maximum amount of profiles that are cached.
+     */
+    public static final int CACHE_SIZE = 512;
+
+    /**
+     * The maximum amount of profiles that may wait to be resolved. Heads of players that don't fit are resolved by a later call.
+     */
+    public static final int QUEUE_SIZE = 256;
+
+    /**
+     * The minimum time in milliseconds between resolving two profiles, to stay below the rate limit of Mojang.
+     */
+    public static final long INTERVAL = 300;
+
     private static boolean isPaper;
     private static Method getPlayerProfileMethod;
     private static Method hasTexturesMethod;
     private static Method setPlayerProfileMethod;
+    private static Method createProfileMethod;
+    private static Method completeMethod;
+
+    // profiles with textures, or NONE if the profile has no textures
+    private static final Map<UUID, Object> profiles = Collections.synchronizedMap(new LinkedHashMap<UUID, Object>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, Object> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    });
+
+    private static final Object NONE = new Object();
+
+    // the uuids of which the profile is being resolved
+    private static final Set<UUID> pending = ConcurrentHashMap.newKeySet();
+
+    // the amount of profiles that have been resolved
+    private static final AtomicLong resolved = new AtomicLong();
+
+    // resolves profiles one by one
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(QUEUE_SIZE), runnable -> {
+        Thread thread = new Thread(runnable, "IP Profile Resolver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // the time in millis at which the last profile was resolved
+    private static volatile long last;
 
     static {
         try {
@@ -19,10 +67,14 @@ public class OfflineSkullSetter {
             getPlayerProfileMethod = Player.class.getDeclaredMethod("getPlayerProfile");
             hasTexturesMethod = playerProfileClass.getDeclaredMethod("hasTextures");
             setPlayerProfileMethod = SkullMeta.class.getDeclaredMethod("setPlayerProfile", playerProfileClass);
+            createProfileMethod = Bukkit.class.getDeclaredMethod("createProfile", UUID.class, String.class);
+            completeMethod = playerProfileClass.getDeclaredMethod("complete", boolean.class);
             isPaper = true;
         } catch (Exception ex) {
             isPaper = false;
         }
+
+        executor.allowCoreThreadTimeOut(true);
     }
 
     public static void setPlayerHead(OfflinePlayer player, SkullMeta meta) {
@@ -41,4 +93,84 @@ public class OfflineSkullSetter {
             meta.setOwningPlayer(player);
         }
     }
+
+    /**
+     * Sets the head of a player using the cached profile. Never blocks.
+     * If the profile isn't cached, it is resolved in the background, so it can be set by a later call.
+     *
+     * @param uuid The player's uuid.
+     * @param name The player's name.
+     * @param meta The meta.
+     * @return True if the profile was found, false if it is still being resolved.
+     */
+    public static boolean setPlayerHead(UUID uuid, String name, SkullMeta meta) {
+        if (!isPaper) { // getting an offline player by uuid doesn't look up its profile
+            meta.setOwningPlayer(Bukkit.getOfflinePlayer(uuid));
+            return true;
+        }
+
+        Object profile = profiles.get(uuid);
+
+        if (profile == null) {
+            resolve(uuid, name);
+            return false;
+        }
+
+        if (profile != NONE) {
+            try {
+                setPlayerProfileMethod.invoke(meta, profile);
+            } catch (Exception ex) {
+                IP.logging().stack("Error while trying to set profile of %s".formatted(name), ex);
+            }
+        }
+        return true;
+    }
+
+    // completes the profile of a player asynchronously, which may require a request to Mojang
+    private static void resolve(UUID uuid, String name) {
+        if (!pending.add(uuid)) {
+            return;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    waitForInterval();
+
+                    Object profile = createProfileMethod.invoke(null, uuid, name);
+                    boolean complete = (boolean) completeMethod.invoke(profile, true);
+
+                    profiles.put(uuid, complete && (boolean) hasTexturesMethod.invoke(profile) ? profile : NONE);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception ex) {
+                    profiles.put(uuid, NONE);
+                } finally {
+                    pending.remove(uuid);
+                    resolved.incrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            // the queue is full, so this is tried again by a later call
+            pending.remove(uuid);
+        }
+    }
+
+    // waits until the rate limit allows the next profile, only called by the resolver thread
+    private static void waitForInterval() throws InterruptedException {
+        long wait = last + INTERVAL - System.currentTimeMillis();
+
+        if (wait > 0) {
+            Thread.sleep(wait);
+        }
+
+        last = System.currentTimeMillis();
+    }
+
+    /**
+     * @return The amount of profiles that have been resolved, used to find out whether heads should be set again.
+     */
+    public static long getResolved() {
+        return resolved.get();
+    }
 }
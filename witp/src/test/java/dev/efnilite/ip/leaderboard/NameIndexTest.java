@@ -0,0 +1,97 @@
+package dev.efnilite.ip.leaderboard;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests finding players in a {@link NameIndex} by name and by prefix.
+ */
+class NameIndexTest {
+
+    private static final UUID FIRST = new UUID(0, 1);
+    private static final UUID SECOND = new UUID(0, 2);
+    private static final UUID THIRD = new UUID(0, 3);
+
+    @Test
+    void namesAreCaseInsensitive() {
+        NameIndex index = new NameIndex();
+
+        index.put(FIRST, "Efnilite");
+
+        assertEquals(FIRST, index.get("efnilite"));
+        assertEquals(FIRST, index.get("EFNILITE"));
+        assertEquals("Efnilite", index.getName(FIRST));
+    }
+
+    @Test
+    void searchFindsPrefixSortedByName() {
+        NameIndex index = new NameIndex();
+
+        index.put(FIRST, "Steve");
+        index.put(SECOND, "alex");
+        index.put(THIRD, "Stefan");
+
+        assertEquals(List.of(THIRD, FIRST), index.search("ste", 10));
+        assertEquals(List.of(THIRD), index.search("ST", 1));
+        assertEquals(List.of(SECOND, THIRD, FIRST), index.search("", 10));
+        assertEquals(List.of(), index.search("z", 10));
+    }
+
+    @Test
+    void putReplacesPreviousName() {
+        NameIndex index = new NameIndex();
+
+        index.put(FIRST, "Steve");
+        index.put(FIRST, "Alex");
+
+        assertNull(index.get("steve"));
+        assertEquals(FIRST, index.get("alex"));
+        assertEquals(List.of(), index.search("st", 10));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void removeKeepsPlayerWithSameName() {
+        NameIndex index = new NameIndex();
+
+        index.put(FIRST, "Steve");
+        index.put(SECOND, "steve");
+        index.remove(FIRST);
+
+        assertEquals(SECOND, index.get("Steve"));
+        assertNull(index.getName(FIRST));
+    }
+
+    @Test
+    void unknownNamesAreNotIndexed() {
+        NameIndex index = new NameIndex();
+
+        index.put(FIRST, "?");
+        index.put(SECOND, "");
+
+        assertEquals(0, index.size());
+        assertNull(index.getName(FIRST));
+    }
+
+    @Test
+    void resetReplacesAllNames() {
+        NameIndex index = new NameIndex();
+        index.put(FIRST, "Steve");
+
+        index.reset(Map.of(SECOND, new Score("Alex", "0:10:000", "0.5", 10)));
+
+        assertNull(index.get("steve"));
+        assertEquals(SECOND, index.get("alex"));
+
+        NameIndex other = new NameIndex();
+        other.reset(index);
+
+        assertEquals(SECOND, other.get("alex"));
+        assertEquals(1, other.size());
+    }
+}
@@ -0,0 +1,149 @@
+package dev.efnilite.ip.leaderboard;
+
+import dev.efnilite.ip.menu.community.SingleLeaderboardMenu;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests {@link Ranking}: ranks, ranges and pages after scores are put, removed, replaced and trimmed.
+ */
+class RankingTest {
+
+    private static final UUID FIRST = new UUID(0, 1);
+    private static final UUID SECOND = new UUID(0, 2);
+    private static final UUID THIRD = new UUID(0, 3);
+
+    @Test
+    void putKeepsScoresBestFirst() {
+        Ranking ranking = new Ranking(SingleLeaderboardMenu.Sort.SCORE);
+
+        ranking.put(FIRST, score(10));
+        ranking.put(SECOND, score(30));
+        ranking.put(THIRD, score(20));
+
+        assertEquals(List.of(SECOND, THIRD, FIRST), uuids(ranking.range(1, 3)));
+        assertEquals(1, ranking.getRank(SECOND));
+        assertEquals(3, ranking.getRank(FIRST));
+        assertEquals(score(20), ranking.getScoreAtRank(2));
+        assertEquals(3, ranking.size());
+    }
+
+    @Test
+    void putReplacesPreviousScore() {
+        Ranking ranking = new Ranking(SingleLeaderboardMenu.Sort.SCORE);
+
+        ranking.put(FIRST, score(10));
+        ranking.put(SECOND, score(20));
+
+        assertEquals(score(10), ranking.put(FIRST, score(30)));
+        assertEquals(List.of(FIRST, SECOND), uuids(ranking.range(1, 2)));
+        assertEquals(2, ranking.size());
+    }
+
+    @Test
+    void removeMovesLowerScoresUp() {
+        Ranking ranking = new Ranking(SingleLeaderboardMenu.Sort.SCORE);
+
+        ranking.put(FIRST, score(10));
+        ranking.put(SECOND, score(30));
+        ranking.put(THIRD, score(20));
+
+        assertEquals(score(30), ranking.remove(SECOND));
+        assertNull(ranking.remove(SECOND));
+
+        assertEquals(0, ranking.getRank(SECOND));
+        assertEquals(1, ranking.getRank(THIRD));
+        assertEquals(2, ranking.getRank(FIRST));
+        assertFalse(ranking.getScores().containsKey(SECOND));
+    }
+
+    @Test
+    void equalScoresAreOrderedByUuid() {
+        Ranking ranking = new Ranking(SingleLeaderboardMenu.Sort.SCORE);
+
+        ranking.put(THIRD, score(10));
+        ranking.put(FIRST, score(10));
+        ranking.put(SECOND, score(10));
+
+        assertEquals(List.of(FIRST, SECOND, THIRD), uuids(ranking.range(1, 3)));
+        assertEquals(2, ranking.getRank(SECOND));
+    }
+
+    @Test
+    void replaceKeepsOnlyBestScores() {
+        Ranking ranking = new Ranking(SingleLeaderboardMenu.Sort.SCORE);
+        ranking.put(FIRST, score(100));
+
+        List<Map.Entry<UUID, Score>> entries = new ArrayList<>(List.of(
+                Map.entry(FIRST, score(10)), Map.entry(SECOND, score(30)), Map.entry(THIRD, score(20))));
+        ranking.replace(entries, 2);
+
+        assertEquals(List.of(SECOND, THIRD), uuids(ranking.range(1, 10)));
+        assertEquals(Set.of(SECOND, THIRD), ranking.getScores().keySet());
+    }
+
+    @Test
+    void trimReturnsScoresBelowSize() {
+        Ranking ranking = new Ranking(SingleLeaderboardMenu.Sort.SCORE);
+
+        ranking.put(FIRST, score(10));
+        ranking.put(SECOND, score(30));
+        ranking.put(THIRD, score(20));
+
+        assertEquals(List.of(FIRST), uuids(ranking.trim(2)));
+        assertEquals(Collections.emptyList(), ranking.trim(2));
+        assertEquals(2, ranking.size());
+        assertEquals(0, ranking.getRank(FIRST));
+    }
+
+    @Test
+    void rangesLeaveOutMissingRanks() {
+        Ranking ranking = new Ranking(SingleLeaderboardMenu.Sort.SCORE);
+
+        ranking.put(FIRST, score(10));
+        ranking.put(SECOND, score(20));
+
+        assertEquals(List.of(FIRST), uuids(ranking.range(2, 5)));
+        assertEquals(Collections.emptyList(), ranking.range(3, 5));
+        assertEquals(List.of(SECOND), uuids(ranking.range(-1, 1)));
+        assertThrows(UnsupportedOperationException.class, () -> ranking.range(1, 2).clear());
+    }
+
+    @Test
+    void pagesOfOwnSortMatchOtherSorts() {
+        Ranking ranking = new Ranking(SingleLeaderboardMenu.Sort.TIME);
+
+        ranking.put(FIRST, new Score("first", "0:30:000", "0.5", 30));
+        ranking.put(SECOND, new Score("second", "0:10:000", "0.5", 10));
+        ranking.put(THIRD, new Score("third", "0:20:000", "0.5", 20));
+
+        // the fastest time is the best time
+        assertEquals(List.of(SECOND, THIRD, FIRST), uuids(ranking.page(SingleLeaderboardMenu.Sort.TIME, 0, 3)));
+        assertEquals(List.of(SECOND, THIRD, FIRST), uuids(ranking.range(1, 3)));
+        assertEquals(1, ranking.getRank(SECOND));
+
+        assertEquals(List.of(FIRST, THIRD), uuids(ranking.page(SingleLeaderboardMenu.Sort.SCORE, 0, 2)));
+        assertEquals(List.of(SECOND), uuids(ranking.page(SingleLeaderboardMenu.Sort.SCORE, 1, 2)));
+    }
+
+    @Test
+    void revisionChangesWithScores() {
+        Ranking ranking = new Ranking(SingleLeaderboardMenu.Sort.SCORE);
+        long revision = ranking.getRevision();
+
+        ranking.put(FIRST, score(10));
+
+        assertNotEquals(revision, ranking.getRevision());
+    }
+
+    private static Score score(int score) {
+        return new Score("player", "0:10:000", "0.5", score);
+    }
+
+    private static List<UUID> uuids(List<Map.Entry<UUID, Score>> entries) {
+        return entries.stream().map(Map.Entry::getKey).toList();
+    }
+}
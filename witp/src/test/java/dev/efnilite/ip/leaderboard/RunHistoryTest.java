@@ -0,0 +1,139 @@
+package dev.efnilite.ip.leaderboard;
+
+import dev.efnilite.ip.IP;
+import dev.efnilite.vilib.util.Logging;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests writing a {@link RunHistory} in blocks, reading it again and repairing files that were partially written.
+ */
+class RunHistoryTest {
+
+    private static final UUID FIRST = new UUID(0, 1);
+    private static final UUID SECOND = new UUID(0, 2);
+
+    // midnight of the 100th day after the epoch of the history, in millis
+    private static final long DAY = (RunHistory.EPOCH + 100 * 86400L) * 1000;
+
+    @TempDir
+    Path folder;
+
+    @BeforeAll
+    static void setupLogging() throws ReflectiveOperationException {
+        // the history logs through the plugin, which isn't enabled in tests
+        Field logging = IP.class.getDeclaredField("logging");
+        logging.setAccessible(true);
+        logging.set(null, Mockito.mock(Logging.class));
+    }
+
+    @Test
+    void runsAreReadAsWritten() {
+        RunHistory history = open();
+
+        history.add(new RunHistory.Run(FIRST, DAY + 1000, 10, 5000, 0.5));
+        history.add(new RunHistory.Run(SECOND, DAY + 2000, 20, 6000, -1));
+        history.add(new RunHistory.Run(FIRST, DAY + 3000, 30, 7000, 0.25));
+        history.flush();
+
+        assertEquals(List.of(new RunHistory.Run(FIRST, DAY + 3000, 30, 7000, 0.25), new RunHistory.Run(FIRST, DAY + 1000, 10, 5000, 0.5)),
+                history.getLastRuns(FIRST, 10));
+        assertEquals(List.of(new RunHistory.Run(SECOND, DAY + 2000, 20, 6000, -1)), history.getLastRuns(SECOND, 10));
+        assertEquals(1, history.getLastRuns(FIRST, 1).size());
+        assertEquals(3, history.size());
+    }
+
+    @Test
+    void runsAreKeptAfterReopening() {
+        RunHistory history = open();
+        addRuns(history, FIRST, DAY, RunHistory.BLOCK_SIZE + 5);
+        addRuns(history, SECOND, DAY + 86400_000L, 3);
+        history.flush();
+
+        RunHistory reopened = open();
+
+        assertEquals(3, reopened.getLastRuns(SECOND, 10).size());
+        assertEquals(RunHistory.BLOCK_SIZE + 8, reopened.size());
+
+        LocalDate day = LocalDate.ofEpochDay(DAY / 86400_000L);
+        assertEquals(Map.of(day.minusDays(1), 0, day, RunHistory.BLOCK_SIZE + 5, day.plusDays(1), 3),
+                reopened.getRunsPerDay(day.minusDays(1), day.plusDays(1), ZoneOffset.UTC));
+        assertEquals(Map.of(day.plusDays(1), 3), reopened.getRunsPerDay(day.plusDays(1), day.plusDays(1), ZoneOffset.UTC));
+    }
+
+    @Test
+    void partialBlockIsCutOff() throws IOException {
+        RunHistory history = open();
+        addRuns(history, FIRST, DAY, 5);
+        history.flush();
+        addRuns(history, FIRST, DAY + 10_000, 5);
+        history.flush();
+
+        // the second block was cut off while being appended
+        File data = folder.resolve("runs.dat").toFile();
+        try (RandomAccessFile file = new RandomAccessFile(data, "rw")) {
+            file.setLength(data.length() - 3);
+        }
+
+        RunHistory reopened = open();
+
+        assertEquals(5, reopened.getLastRuns(FIRST, 100).size());
+        assertEquals(5, reopened.size());
+        assertEquals(20, folder.resolve("blocks.idx").toFile().length());
+
+        // runs are appended after the cut
+        reopened.add(new RunHistory.Run(FIRST, DAY + 20_000, 99, 1000, 0.5));
+        reopened.flush();
+
+        assertEquals(new RunHistory.Run(FIRST, DAY + 20_000, 99, 1000, 0.5), open().getLastRuns(FIRST, 1).get(0));
+    }
+
+    @Test
+    void tornTailsAreCutOff() throws IOException {
+        RunHistory history = open();
+        addRuns(history, FIRST, DAY, 5);
+        history.flush();
+
+        // half of a player and half of an index entry were appended
+        Files.write(folder.resolve("players.dat"), new byte[7], StandardOpenOption.APPEND);
+        Files.write(folder.resolve("blocks.idx"), new byte[11], StandardOpenOption.APPEND);
+
+        RunHistory reopened = open();
+        reopened.add(new RunHistory.Run(SECOND, DAY + 20_000, 99, 1000, 0.5));
+        reopened.flush();
+
+        RunHistory read = open();
+
+        assertEquals(5, read.getLastRuns(FIRST, 100).size());
+        assertEquals(List.of(new RunHistory.Run(SECOND, DAY + 20_000, 99, 1000, 0.5)), read.getLastRuns(SECOND, 100));
+        assertEquals(32, folder.resolve("players.dat").toFile().length());
+    }
+
+    private RunHistory open() {
+        return new RunHistory("test", folder.toFile());
+    }
+
+    // adds runs a second apart
+    private static void addRuns(RunHistory history, UUID uuid, long from, int amount) {
+        for (int i = 0; i < amount; i++) {
+            history.add(new RunHistory.Run(uuid, from + i * 1000L, i, 1000 + i, 0.5));
+        }
+    }
+}
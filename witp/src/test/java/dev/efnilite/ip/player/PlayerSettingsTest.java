@@ -0,0 +1,37 @@
+package dev.efnilite.ip.player;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests combining stored settings with settings that a player changed while these were read.
+ */
+class PlayerSettingsTest {
+
+    private static final PlayerSettings START = new PlayerSettings("red", 4, true, true, true, true, 6000, "en", 0.2, true, Set.of());
+
+    @Test
+    void storedSettingsReplaceUnchangedSettings() {
+        PlayerSettings stored = new PlayerSettings("blue", 2, false, false, false, false, 18000, "nl", 0.8, false, Set.of(10));
+
+        assertEquals(stored, stored.merge(START, START));
+    }
+
+    @Test
+    void changedSettingsAreKept() {
+        PlayerSettings stored = new PlayerSettings("blue", 2, false, false, false, false, 18000, "nl", 0.8, false, Set.of(10));
+        PlayerSettings current = new PlayerSettings("green", 4, true, true, true, true, 6000, "de", 0.2, true, Set.of(50));
+
+        PlayerSettings merged = stored.merge(START, current);
+
+        assertEquals(new PlayerSettings("green", 2, false, false, false, false, 18000, "de", 0.8, false, Set.of(10, 50)), merged);
+    }
+
+    @Test
+    void unsetStoredSettingsStayUnset() {
+        assertEquals(PlayerSettings.EMPTY, PlayerSettings.EMPTY.merge(START, START));
+    }
+}
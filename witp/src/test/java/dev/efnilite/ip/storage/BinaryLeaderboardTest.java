@@ -0,0 +1,178 @@
+package dev.efnilite.ip.storage;
+
+import dev.efnilite.ip.leaderboard.Score;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests reading and updating a {@link BinaryLeaderboard}, and finishing updates from its journal.
+ */
+class BinaryLeaderboardTest {
+
+    private static final UUID FIRST = new UUID(0, 1);
+    private static final UUID SECOND = new UUID(0, 2);
+    private static final UUID THIRD = new UUID(0, 3);
+
+    @TempDir
+    Path folder;
+
+    private File file;
+    private File names;
+    private File journal;
+
+    @BeforeEach
+    void setup() {
+        file = folder.resolve("test.lb").toFile();
+        names = folder.resolve("names.dat").toFile();
+        journal = folder.resolve("test.lb.journal").toFile();
+    }
+
+    @Test
+    void scoresAreReadAsWritten() throws IOException {
+        Map<UUID, Score> scores = Map.of(FIRST, score("first", 10), SECOND, score("second", 20), THIRD, new Score("third", "?", "?", 30));
+
+        open().write(scores);
+
+        assertEquals(scores, open().read());
+        assertEquals(BinaryLeaderboard.HEADER + 3 * BinaryLeaderboard.RECORD, file.length());
+        assertFalse(journal.exists());
+    }
+
+    @Test
+    void updatesAreWrittenInPlace() throws IOException {
+        BinaryLeaderboard leaderboard = open();
+        leaderboard.write(Map.of(FIRST, score("first", 10), SECOND, score("second", 20), THIRD, score("third", 30)));
+
+        leaderboard.update(Map.of(THIRD, score("third", 40)), Set.of(FIRST));
+
+        assertEquals(Map.of(SECOND, score("second", 20), THIRD, score("third", 40)), open().read());
+
+        // the removed slot is reused
+        leaderboard.update(Map.of(FIRST, score("first", 50)), Set.of());
+
+        assertEquals(Map.of(FIRST, score("first", 50), SECOND, score("second", 20), THIRD, score("third", 40)), open().read());
+    }
+
+    @Test
+    void writeRemovesMissingScores() throws IOException {
+        BinaryLeaderboard leaderboard = open();
+        leaderboard.write(Map.of(FIRST, score("first", 10), SECOND, score("second", 20)));
+
+        leaderboard.write(Map.of(SECOND, score("second", 30)));
+
+        assertEquals(Map.of(SECOND, score("second", 30)), open().read());
+    }
+
+    @Test
+    void revisionChangesOnEveryWrite() throws IOException {
+        BinaryLeaderboard leaderboard = open();
+        assertEquals(0, leaderboard.getRevision());
+
+        leaderboard.write(Map.of(FIRST, score("first", 10)));
+        long revision = leaderboard.getRevision();
+
+        // another instance, like another server, writes the same file
+        open().update(Map.of(SECOND, score("second", 20)), Set.of());
+
+        assertNotEquals(revision, leaderboard.getRevision());
+
+        leaderboard.update(Map.of(THIRD, score("third", 30)), Set.of());
+
+        assertEquals(Map.of(FIRST, score("first", 10), SECOND, score("second", 20), THIRD, score("third", 30)), open().read());
+    }
+
+    @Test
+    void interruptedUpdateIsFinishedFromJournal() throws IOException {
+        open().write(Map.of(FIRST, score("first", 10)));
+        long revision = open().getRevision();
+
+        // the update added a second record, but stopped after writing the journal
+        writeJournal(Map.of(1, record(SECOND, 20)), 2, revision + 1);
+
+        BinaryLeaderboard leaderboard = open();
+
+        assertEquals(revision + 1, leaderboard.getRevision());
+        assertFalse(journal.exists());
+        assertEquals(Map.of(FIRST, score("first", 10), SECOND, score("first", 20)), leaderboard.read());
+    }
+
+    @Test
+    void partialJournalIsDiscarded() throws IOException {
+        open().write(Map.of(FIRST, score("first", 10)));
+        long revision = open().getRevision();
+
+        writeJournal(Map.of(0, record(SECOND, 20)), 1, revision + 1);
+
+        // the journal was cut off while being written
+        byte[] bytes = Files.readAllBytes(journal.toPath());
+        Files.write(journal.toPath(), Arrays.copyOf(bytes, bytes.length - 5));
+
+        assertEquals(Map.of(FIRST, score("first", 10)), open().read());
+        assertFalse(journal.exists());
+        assertEquals(revision, open().getRevision());
+    }
+
+    @Test
+    void partialNameIsIgnored() throws IOException {
+        open().write(Map.of(FIRST, score("first", 10)));
+
+        // the length of a name was written, but not the name itself
+        Files.write(names.toPath(), new byte[]{0, 20, 'a'}, StandardOpenOption.APPEND);
+
+        BinaryLeaderboard leaderboard = open();
+        assertEquals(Map.of(FIRST, score("first", 10)), leaderboard.read());
+
+        leaderboard.update(Map.of(SECOND, score("second", 20)), Set.of());
+
+        assertEquals(Map.of(FIRST, score("first", 10), SECOND, score("second", 20)), open().read());
+    }
+
+    private BinaryLeaderboard open() {
+        return new BinaryLeaderboard(file, names);
+    }
+
+    private static Score score(String name, int score) {
+        return new Score(name, Score.timeFromMillis(score * 1000), "0.5", score);
+    }
+
+    // a record with the name at the start of the name table, which is the name of the first score written
+    private static byte[] record(UUID uuid, int score) {
+        return ByteBuffer.allocate(BinaryLeaderboard.RECORD)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .putInt(score)
+                .putInt(score * 1000)
+                .putInt(5)
+                .putInt(0)
+                .array();
+    }
+
+    // writes a journal as the leaderboard does before updating records in place
+    private void writeJournal(Map<Integer, byte[]> writes, int count, long revision) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(20 + writes.size() * (Integer.BYTES + BinaryLeaderboard.RECORD) + Integer.BYTES);
+
+        buffer.putInt(0x49504C42).putInt(writes.size()).putInt(count).putLong(revision);
+        writes.forEach((slot, record) -> buffer.putInt(slot).put(record));
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+
+        Files.write(journal.toPath(), buffer.array());
+    }
+}
@@ -0,0 +1,207 @@
+package dev.efnilite.ip.storage;
+
+import dev.efnilite.ip.IP;
+import dev.efnilite.vilib.util.Logging;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests writing and reading a {@link PlayerLog}, rebuilding its index from the file, repairing a torn tail and compacting it.
+ */
+class PlayerLogTest {
+
+    private static final UUID FIRST = new UUID(0, 1);
+    private static final UUID SECOND = new UUID(0, 2);
+
+    @TempDir
+    Path folder;
+
+    private File file;
+
+    @BeforeAll
+    static void setupLogging() throws ReflectiveOperationException {
+        // the log warns through the plugin, which isn't enabled in tests
+        Field logging = IP.class.getDeclaredField("logging");
+        logging.setAccessible(true);
+        logging.set(null, Mockito.mock(Logging.class));
+    }
+
+    @BeforeEach
+    void setup() {
+        file = folder.resolve("players.log").toFile();
+    }
+
+    @Test
+    void latestValuesAreReadAfterReopening() throws IOException {
+        PlayerLog log = new PlayerLog(file);
+        log.write(Map.of(FIRST, bytes("first"), SECOND, bytes("second")));
+        log.write(Map.of(FIRST, bytes("first again")));
+
+        assertArrayEquals(bytes("first again"), log.read(FIRST));
+        log.close();
+
+        PlayerLog reopened = new PlayerLog(file);
+
+        assertArrayEquals(bytes("first again"), reopened.read(FIRST));
+        assertArrayEquals(bytes("second"), reopened.read(SECOND));
+        assertNull(reopened.read(new UUID(0, 3)));
+        assertEquals(Set.of(FIRST, SECOND), reopened.keys());
+        reopened.close();
+    }
+
+    @Test
+    void partialRecordIsCutOff() throws IOException {
+        PlayerLog log = new PlayerLog(file);
+        log.write(Map.of(FIRST, bytes("first")));
+        log.close();
+        long length = file.length();
+
+        // the server stopped while the header of a record was being appended
+        Files.write(file.toPath(), new byte[]{0, 0, 0, 5, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        PlayerLog reopened = new PlayerLog(file);
+
+        assertEquals(length, file.length());
+        assertArrayEquals(bytes("first"), reopened.read(FIRST));
+
+        reopened.write(Map.of(SECOND, bytes("second")));
+        reopened.close();
+
+        assertArrayEquals(bytes("second"), read(SECOND));
+    }
+
+    @Test
+    void lastRecordWithInvalidChecksumIsCutOff() throws IOException {
+        PlayerLog log = new PlayerLog(file);
+        log.write(Map.of(FIRST, bytes("first")));
+        log.write(Map.of(FIRST, bytes("later")));
+        log.close();
+
+        // the value of the last record was only partially written
+        damage(file.length() - 1);
+
+        assertArrayEquals(bytes("first"), read(FIRST));
+        assertEquals(PlayerLog.HEADER + PlayerLog.RECORD + 5, file.length());
+    }
+
+    @Test
+    void unwrittenSpaceIsCutOff() throws IOException {
+        PlayerLog log = new PlayerLog(file);
+        log.write(Map.of(FIRST, bytes("first")));
+        log.close();
+        long length = file.length();
+
+        // the file was made longer, but the record wasn't written
+        Files.write(file.toPath(), new byte[100], StandardOpenOption.APPEND);
+
+        assertArrayEquals(bytes("first"), read(FIRST));
+        assertEquals(length, file.length());
+    }
+
+    @Test
+    void damagedRecordBeforeValidRecordIsSkipped() throws IOException {
+        PlayerLog log = new PlayerLog(file);
+        log.write(Map.of(FIRST, bytes("first")));
+        log.write(Map.of(FIRST, bytes("later")));
+        log.write(Map.of(SECOND, bytes("second")));
+        log.close();
+
+        // the value of the second record
+        damage(PlayerLog.HEADER + 2 * PlayerLog.RECORD + 5);
+
+        PlayerLog reopened = new PlayerLog(file);
+
+        assertArrayEquals(bytes("first"), reopened.read(FIRST));
+        assertArrayEquals(bytes("second"), reopened.read(SECOND));
+        reopened.close();
+    }
+
+    @Test
+    void damageBeforeTailIsNotRepaired() throws IOException {
+        PlayerLog log = new PlayerLog(file);
+        log.write(Map.of(FIRST, bytes("first")));
+        log.write(Map.of(SECOND, bytes("second")));
+        log.close();
+        long length = file.length();
+
+        // the length of the first record is far too long, with a valid record after it
+        try (RandomAccessFile access = new RandomAccessFile(file, "rw")) {
+            access.seek(PlayerLog.HEADER);
+            access.writeInt(Integer.MAX_VALUE);
+        }
+
+        assertThrows(IOException.class, () -> new PlayerLog(file));
+        assertEquals(length, file.length());
+    }
+
+    @Test
+    void otherFileIsNotOpened() throws IOException {
+        Files.write(file.toPath(), bytes("not a player log"));
+
+        assertThrows(IOException.class, () -> new PlayerLog(file));
+    }
+
+    @Test
+    void compactionKeepsLatestValues() throws IOException {
+        PlayerLog log = new PlayerLog(file);
+        for (int i = 0; i < 100; i++) {
+            log.write(Map.of(FIRST, bytes("first %03d".formatted(i))));
+        }
+        log.write(Map.of(SECOND, bytes("second")));
+
+        log.compact();
+
+        assertEquals(PlayerLog.HEADER + 2 * PlayerLog.RECORD + 9 + 6, file.length());
+        assertFalse(new File(folder.toFile(), "players.log.tmp").exists());
+        assertArrayEquals(bytes("first 099"), log.read(FIRST));
+
+        // records are appended after the compacted records
+        log.write(Map.of(SECOND, bytes("second again")));
+        log.close();
+
+        assertArrayEquals(bytes("first 099"), read(FIRST));
+        assertArrayEquals(bytes("second again"), read(SECOND));
+    }
+
+    // reads a value after opening the file again
+    private byte[] read(UUID uuid) throws IOException {
+        PlayerLog log = new PlayerLog(file);
+
+        try {
+            return log.read(uuid);
+        } finally {
+            log.close();
+        }
+    }
+
+    // changes a single byte of the file
+    private void damage(long position) throws IOException {
+        try (RandomAccessFile access = new RandomAccessFile(file, "rw")) {
+            access.seek(position);
+            int value = access.read();
+            access.seek(position);
+            access.write(value ^ 0xFF);
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
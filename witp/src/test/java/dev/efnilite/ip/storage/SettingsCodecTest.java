@@ -0,0 +1,100 @@
+package dev.efnilite.ip.storage;
+
+import dev.efnilite.ip.player.PlayerSettings;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests encoding and decoding {@link PlayerSettings} with {@link SettingsCodec}, and reading settings from the columns of earlier versions.
+ */
+class SettingsCodecTest {
+
+    private static final PlayerSettings SETTINGS = new PlayerSettings("red", 4, true, false, true, false, 18000, "en", 0.5, true, Set.of(10, 50, 1000));
+
+    @Test
+    void settingsAreDecodedAsEncoded() throws IOException {
+        assertEquals(SETTINGS, SettingsCodec.decode(SettingsCodec.encode(SETTINGS)));
+    }
+
+    @Test
+    void unsetSettingsStayUnset() throws IOException {
+        PlayerSettings partial = new PlayerSettings(null, 2, null, false, null, true, null, "nl", null, null, Set.of());
+
+        assertEquals(partial, SettingsCodec.decode(SettingsCodec.encode(partial)));
+        assertEquals(PlayerSettings.EMPTY, SettingsCodec.decode(SettingsCodec.encode(PlayerSettings.EMPTY)));
+    }
+
+    @Test
+    void smallSettingsTakeFewBytes() {
+        // version, set settings, the booleans in two bytes, block lead and the amount of rewards
+        assertEquals(6, SettingsCodec.encode(new PlayerSettings(null, 4, true, true, true, true, null, null, null, true, Set.of())).length);
+    }
+
+    @Test
+    void unknownVersionIsRejected() {
+        byte[] data = SettingsCodec.encode(SETTINGS);
+        data[0] = SettingsCodec.VERSION + 1;
+
+        assertThrows(IOException.class, () -> SettingsCodec.decode(data));
+        assertThrows(IOException.class, () -> SettingsCodec.decode(new byte[]{SettingsCodec.VERSION}));
+    }
+
+    @Test
+    void rowIsDecodedFromSettingsColumn() throws SQLException {
+        Map<String, Object> row = new HashMap<>();
+        row.put("settings", SettingsCodec.encode(SETTINGS));
+        row.put("style", "blue");
+
+        assertEquals(SETTINGS, SettingsCodec.decodeRow(row(row)));
+    }
+
+    @Test
+    void rowWithoutSettingsColumnIsDecodedFromOldColumns() throws SQLException {
+        Map<String, Object> row = new HashMap<>();
+        row.put("style", "red");
+        row.put("blockLead", 4);
+        row.put("useParticles", true);
+        row.put("useSpecial", false);
+        row.put("showFallMsg", true);
+        row.put("showScoreboard", false);
+        row.put("selectedTime", 18000);
+        row.put("locale", "en");
+        row.put("schematicDifficulty", 0.5);
+        row.put("sound", true);
+        row.put("collectedRewards", "[10, 50, 1000]");
+
+        assertEquals(SETTINGS, SettingsCodec.decodeRow(row(row)));
+
+        // columns that are null in the database are unset
+        assertEquals(PlayerSettings.EMPTY, SettingsCodec.decodeRow(row(new HashMap<>())));
+    }
+
+    @Test
+    void invalidSettingsColumnIsRejected() {
+        Map<String, Object> row = new HashMap<>();
+        row.put("settings", new byte[]{0});
+
+        assertThrows(SQLException.class, () -> SettingsCodec.decodeRow(row(row)));
+    }
+
+    // a row of results with the values of the columns, where missing columns are null
+    private static ResultSet row(Map<String, Object> values) {
+        Object[] last = new Object[1];
+
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class}, (proxy, method, args) -> switch (method.getName()) {
+            case "getBytes", "getString" -> last[0] = values.get((String) args[0]);
+            case "getObject" -> last[0] = ((Class<?>) args[1]).cast(values.get((String) args[0]));
+            case "wasNull" -> last[0] == null;
+            default -> throw new UnsupportedOperationException(method.getName());
+        });
+    }
+}
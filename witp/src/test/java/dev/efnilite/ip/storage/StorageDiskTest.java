@@ -0,0 +1,226 @@
+package dev.efnilite.ip.storage;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import dev.efnilite.ip.IP;
+import dev.efnilite.ip.config.Option;
+import dev.efnilite.ip.leaderboard.Score;
+import dev.efnilite.ip.menu.community.SingleLeaderboardMenu;
+import dev.efnilite.vilib.util.Logging;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests looking up top scores, single scores and ranks in {@link StorageDisk}, with json and binary leaderboards,
+ * and reading and writing leaderboard files from multiple threads.
+ */
+class StorageDiskTest {
+
+    private static final Gson GSON = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create();
+
+    private static final String MODE = "test";
+
+    private static final UUID FIRST = new UUID(0, 1);
+    private static final UUID SECOND = new UUID(0, 2);
+    private static final UUID THIRD = new UUID(0, 3);
+
+    // the amount of updates of every thread in concurrency tests
+    private static final int UPDATES = 50;
+
+    @TempDir
+    Path folder;
+
+    private StorageDisk storage;
+
+    @BeforeAll
+    static void setupLogging() throws ReflectiveOperationException {
+        // storage logs through the plugin, which isn't enabled in tests
+        Field logging = IP.class.getDeclaredField("logging");
+        logging.setAccessible(true);
+        logging.set(null, Mockito.mock(Logging.class));
+    }
+
+    @BeforeEach
+    void setup() {
+        Option.LEADERBOARD_BINARY = false;
+
+        storage = open();
+
+        StorageStats.begin();
+    }
+
+    @AfterEach
+    void teardown() {
+        storage.close();
+        Option.LEADERBOARD_BINARY = false;
+
+        assertFalse(StorageStats.end(false), "a storage call failed");
+    }
+
+    @Test
+    void topScoresAreBestFirstAndLimited() {
+        writeScores(storage);
+
+        Map<UUID, Score> top = storage.readScores(MODE, SingleLeaderboardMenu.Sort.SCORE, 2);
+
+        assertEquals(List.of(SECOND, THIRD), new ArrayList<>(top.keySet()));
+        assertEquals(score("second", 30, 10), top.get(SECOND));
+        assertEquals(Map.of(), storage.readScores(MODE, SingleLeaderboardMenu.Sort.SCORE, 0));
+        assertEquals(3, storage.readScores(MODE, SingleLeaderboardMenu.Sort.SCORE, 10).size());
+    }
+
+    @Test
+    void topTimesAreFastestFirst() {
+        writeScores(storage);
+
+        Map<UUID, Score> top = storage.readScores(MODE, SingleLeaderboardMenu.Sort.TIME, 3);
+
+        assertEquals(List.of(FIRST, SECOND, THIRD), new ArrayList<>(top.keySet()));
+    }
+
+    @Test
+    void singleScoresAndRanksAreLookedUp() {
+        writeScores(storage);
+
+        assertEquals(score("third", 20, 20), storage.readScore(MODE, THIRD));
+        assertNull(storage.readScore(MODE, new UUID(0, 4)));
+
+        assertEquals(1, storage.readRank(MODE, SingleLeaderboardMenu.Sort.SCORE, score("second", 30, 10)));
+        assertEquals(3, storage.readRank(MODE, SingleLeaderboardMenu.Sort.SCORE, score("first", 10, 5)));
+        assertEquals(1, storage.readRank(MODE, SingleLeaderboardMenu.Sort.TIME, score("first", 10, 5)));
+
+        // a score that isn't stored is ranked below the scores that are better
+        assertEquals(2, storage.readRank(MODE, SingleLeaderboardMenu.Sort.SCORE, score("other", 25, 5)));
+    }
+
+    @Test
+    void lookupsSeeScoresWrittenElsewhere() {
+        writeScores(storage);
+        assertEquals(1, storage.readRank(MODE, SingleLeaderboardMenu.Sort.SCORE, score("second", 30, 10)));
+
+        // another storage on the same files, like a second server
+        StorageDisk other = open();
+        other.updateScores(MODE, Map.of(new UUID(0, 4), score("fourth", 40, 10)), Set.of(THIRD));
+        other.close();
+
+        assertEquals(2, storage.readRank(MODE, SingleLeaderboardMenu.Sort.SCORE, score("second", 30, 10)));
+        assertNull(storage.readScore(MODE, THIRD));
+        assertEquals(List.of(new UUID(0, 4), SECOND), new ArrayList<>(storage.readScores(MODE, SingleLeaderboardMenu.Sort.SCORE, 2).keySet()));
+    }
+
+    @Test
+    void binaryLeaderboardsAreLookedUp() {
+        Option.LEADERBOARD_BINARY = true;
+        storage.init(MODE);
+
+        writeScores(storage);
+        storage.updateScores(MODE, Map.of(FIRST, score("first", 50, 5)), Set.of(THIRD));
+
+        assertEquals(List.of(FIRST, SECOND), new ArrayList<>(storage.readScores(MODE, SingleLeaderboardMenu.Sort.SCORE, 3).keySet()));
+        assertEquals(score("first", 50, 5), storage.readScore(MODE, FIRST));
+        assertEquals(2, storage.readRank(MODE, SingleLeaderboardMenu.Sort.SCORE, score("second", 30, 10)));
+    }
+
+    @Test
+    void concurrentUpdatesOfDifferentModesAreWritten() throws InterruptedException {
+        List<String> modes = List.of("a", "b", "c", "d");
+        modes.forEach(storage::init);
+
+        run(modes.size(), (thread, i) -> storage.updateScores(modes.get(thread), Map.of(new UUID(thread, i), score("player", i, i)), Set.of()));
+
+        for (String mode : modes) {
+            assertEquals(UPDATES, open().readScores(mode).size());
+        }
+        assertNoTemporaryFiles();
+    }
+
+    @Test
+    void concurrentUpdatesOfSameModeAreWritten() throws InterruptedException {
+        run(4, (thread, i) -> storage.updateScores(MODE, Map.of(new UUID(thread, i), score("player", i, i)), Set.of()));
+
+        assertEquals(4 * UPDATES, open().readScores(MODE).size());
+        assertNoTemporaryFiles();
+    }
+
+    @Test
+    void filesAreNotReadWhileWritten() throws InterruptedException {
+        writeScores(storage);
+
+        // every write replaces all scores with the same amount of scores, so every read sees three scores
+        run(2, (thread, i) -> {
+            if (thread == 0) {
+                storage.writeScores(MODE, Map.of(FIRST, score("first", i, 5), SECOND, score("second", i, 10), THIRD, score("third", i, 20)));
+            } else {
+                assertEquals(3, storage.readScores(MODE).size());
+            }
+        });
+    }
+
+    private StorageDisk open() {
+        StorageDisk disk = new StorageDisk(folder.toFile(), GSON);
+        disk.init(MODE);
+
+        return disk;
+    }
+
+    // runs the updates of every thread at the same time, and fails if one of them fails
+    private static void run(int threads, BiIntConsumer update) throws InterruptedException {
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> started = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread runner = new Thread(() -> {
+                try {
+                    start.await();
+
+                    for (int i = 0; i < UPDATES; i++) {
+                        update.accept(thread, i);
+                    }
+                } catch (Throwable ex) {
+                    errors.add(ex);
+                }
+            });
+            runner.start();
+            started.add(runner);
+        }
+
+        start.countDown();
+        for (Thread runner : started) {
+            runner.join();
+        }
+
+        assertEquals(List.of(), errors);
+    }
+
+    private void assertNoTemporaryFiles() {
+        File[] files = folder.resolve("leaderboards").toFile().listFiles((directory, name) -> name.endsWith(".tmp"));
+
+        assertNotNull(files);
+        assertEquals(0, files.length);
+    }
+
+    private static void writeScores(StorageDisk storage) {
+        storage.updateScores(MODE, Map.of(FIRST, score("first", 10, 5), SECOND, score("second", 30, 10), THIRD, score("third", 20, 20)), Set.of());
+    }
+
+    private static Score score(String name, int score, int seconds) {
+        return new Score(name, Score.timeFromMillis(seconds * 1000), "0.5", score);
+    }
+
+    @FunctionalInterface
+    private interface BiIntConsumer {
+
+        void accept(int thread, int update);
+    }
+}
@@ -0,0 +1,216 @@
+package dev.efnilite.ip.storage;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import dev.efnilite.ip.IP;
+import dev.efnilite.ip.leaderboard.Score;
+import dev.efnilite.ip.leaderboard.WindowedLeaderboard;
+import dev.efnilite.ip.player.ParkourPlayer;
+import dev.efnilite.ip.player.PlayerSettings;
+import dev.efnilite.vilib.util.Logging;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests {@link StorageMigration} between two storages in memory, and continuing a migration from its checkpoint.
+ */
+class StorageMigrationTest {
+
+    private static final Gson GSON = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create();
+
+    @TempDir
+    Path folder;
+
+    private File checkpoint;
+
+    @BeforeAll
+    static void setupLogging() throws ReflectiveOperationException {
+        // storage logs through the plugin, which isn't enabled in tests
+        Field logging = IP.class.getDeclaredField("logging");
+        logging.setAccessible(true);
+        logging.set(null, Mockito.mock(Logging.class));
+    }
+
+    @BeforeEach
+    void setup() {
+        checkpoint = folder.resolve("migration.json").toFile();
+    }
+
+    @Test
+    void copiesAllPlayers() {
+        MemoryStorage source = new MemoryStorage();
+        MemoryStorage target = new MemoryStorage();
+        source.addPlayers(StorageMigration.BATCH_SIZE * 2 + 10);
+
+        StorageMigration.Progress progress = new StorageMigration(source, target, checkpoint, GSON).run(update -> {});
+
+        assertEquals("done", progress.phase());
+        assertEquals(source.settings.size(), progress.players());
+        assertEquals(source.settings, target.settings);
+        assertFalse(checkpoint.exists());
+    }
+
+    @Test
+    void failedReadStopsMigration() {
+        MemoryStorage source = new MemoryStorage() {
+            @Override
+            public void readAllSettings(@Nullable UUID after, @NotNull BiConsumer<UUID, PlayerSettings> consumer) {
+                // the error is logged before a whole batch is written while reading
+                StorageStats.fail();
+
+                super.readAllSettings(after, consumer);
+            }
+        };
+        MemoryStorage target = new MemoryStorage();
+        source.addPlayers(StorageMigration.BATCH_SIZE + 10);
+
+        assertThrows(StorageException.class, () -> new StorageMigration(source, target, checkpoint, GSON).run(update -> {}));
+
+        assertTrue(checkpoint.exists());
+    }
+
+    @Test
+    void failedWriteStopsMigration() {
+        MemoryStorage source = new MemoryStorage();
+        MemoryStorage target = new MemoryStorage() {
+            @Override
+            public void writeSettings(@NotNull Map<UUID, PlayerSettings> settings) {
+                StorageStats.fail();
+            }
+        };
+        source.addPlayers(10);
+
+        assertThrows(StorageException.class, () -> new StorageMigration(source, target, checkpoint, GSON).run(update -> {}));
+    }
+
+    @Test
+    void stoppedMigrationContinuesAfterCheckpoint() {
+        MemoryStorage source = new MemoryStorage();
+        MemoryStorage target = new MemoryStorage();
+        source.addPlayers(StorageMigration.BATCH_SIZE * 3);
+
+        // the second batch can't be written
+        target.failingWrite = 2;
+
+        assertThrows(StorageException.class, () -> new StorageMigration(source, target, checkpoint, GSON).run(update -> {}));
+        assertEquals(StorageMigration.BATCH_SIZE, target.settings.size());
+        assertTrue(checkpoint.exists());
+
+        target.failingWrite = -1;
+        target.writes = 0;
+
+        StorageMigration.Progress progress = new StorageMigration(source, target, checkpoint, GSON).run(update -> {});
+
+        // only the batches after the first are read and written again
+        assertEquals(new UUID(0, StorageMigration.BATCH_SIZE - 1), source.after);
+        assertEquals(2, target.writes);
+        assertEquals(StorageMigration.BATCH_SIZE * 3, progress.players());
+        assertEquals(source.settings, target.settings);
+        assertFalse(checkpoint.exists());
+    }
+
+    private static PlayerSettings settings(int index) {
+        return new PlayerSettings("style %d".formatted(index), index % 10, true, false, true, false, index, "en", 0.5, true, Set.of(index));
+    }
+
+    /**
+     * Storage of players and scores in memory, which reads players in order of uuid like the other storage types.
+     */
+    static class MemoryStorage implements Storage {
+
+        final SortedMap<UUID, PlayerSettings> settings = new TreeMap<>();
+        final Map<String, Map<UUID, Score>> scores = new HashMap<>();
+
+        // the player after which settings were last read
+        UUID after;
+
+        // the amount of times settings were written, and the write that fails, -1 if none
+        int writes;
+        int failingWrite = -1;
+
+        void addPlayers(int amount) {
+            for (int i = settings.size(); amount > 0; i++, amount--) {
+                settings.put(new UUID(0, i), settings(i));
+            }
+        }
+
+        @Override
+        public void init(String mode) {
+            scores.putIfAbsent(mode, new HashMap<>());
+        }
+
+        @Override
+        public void close() {
+
+        }
+
+        @Override
+        public @NotNull Map<UUID, Score> readScores(@NotNull String mode) {
+            return new HashMap<>(scores.getOrDefault(mode, Map.of()));
+        }
+
+        @Override
+        public void writeScores(@NotNull String mode, @NotNull Map<UUID, Score> scores) {
+            this.scores.put(mode, new HashMap<>(scores));
+        }
+
+        @Override
+        public @NotNull Map<UUID, Score> readWindowScores(@NotNull String mode, @NotNull WindowedLeaderboard.Period period, long bucket) {
+            return new HashMap<>();
+        }
+
+        @Override
+        public void writeWindowScores(@NotNull String mode, @NotNull WindowedLeaderboard.Period period, long bucket, @NotNull Map<UUID, Score> scores) {
+
+        }
+
+        @Override
+        public void deleteWindowScores(@NotNull String mode, @NotNull WindowedLeaderboard.Period period, long before) {
+
+        }
+
+        @Override
+        public @Nullable PlayerSettings readSettings(@NotNull UUID uuid) {
+            return settings.get(uuid);
+        }
+
+        @Override
+        public void readAllSettings(@Nullable UUID after, @NotNull BiConsumer<UUID, PlayerSettings> consumer) {
+            this.after = after;
+
+            (after != null ? settings.tailMap(after) : settings).forEach((uuid, settings) -> {
+                if (!uuid.equals(after)) {
+                    consumer.accept(uuid, settings);
+                }
+            });
+        }
+
+        @Override
+        public void writePlayer(@NotNull ParkourPlayer player) {
+            settings.put(player.getUUID(), player.getSettings());
+        }
+
+        @Override
+        public void writeSettings(@NotNull Map<UUID, PlayerSettings> settings) {
+            if (++writes == failingWrite) {
+                StorageStats.fail();
+                return;
+            }
+
+            this.settings.putAll(settings);
+        }
+    }
+}
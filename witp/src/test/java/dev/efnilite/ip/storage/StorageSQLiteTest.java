@@ -0,0 +1,123 @@
+package dev.efnilite.ip.storage;
+
+import dev.efnilite.ip.IP;
+import dev.efnilite.ip.config.Option;
+import dev.efnilite.ip.leaderboard.Score;
+import dev.efnilite.ip.menu.community.SingleLeaderboardMenu;
+import dev.efnilite.vilib.util.Logging;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.lang.reflect.Field;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests {@link StorageSQLite} against a temporary {@code data.db}: upserts, deletes, top scores and ranks.
+ */
+class StorageSQLiteTest {
+
+    private static final String MODE = "test";
+
+    private static final UUID FIRST = new UUID(0, 1);
+    private static final UUID SECOND = new UUID(0, 2);
+    private static final UUID THIRD = new UUID(0, 3);
+
+    @TempDir
+    Path folder;
+
+    private StorageSQLite storage;
+
+    @BeforeAll
+    static void setupLogging() throws ReflectiveOperationException {
+        // storage logs through the plugin, which isn't enabled in tests
+        Field logging = IP.class.getDeclaredField("logging");
+        logging.setAccessible(true);
+        logging.set(null, Mockito.mock(Logging.class));
+    }
+
+    @BeforeEach
+    void setup() {
+        Option.LEADERBOARD_WINDOWS = List.of();
+        Option.STORAGE_THREADS = 2;
+
+        storage = new StorageSQLite(folder.resolve("data.db").toFile());
+        storage.init(MODE);
+
+        StorageStats.begin();
+    }
+
+    @AfterEach
+    void teardown() {
+        storage.close();
+
+        assertFalse(StorageStats.end(false), "a storage call failed");
+    }
+
+    @Test
+    void upsertInsertsAndReplacesScores() {
+        storage.updateScores(MODE, Map.of(FIRST, score("first", 10), SECOND, score("second", 20)), Set.of());
+        storage.updateScores(MODE, Map.of(FIRST, score("first", 30)), Set.of());
+
+        assertEquals(score("first", 30), storage.readScore(MODE, FIRST));
+        assertEquals(score("second", 20), storage.readScore(MODE, SECOND));
+        assertEquals(2, storage.readScores(MODE).size());
+    }
+
+    @Test
+    void deleteRemovesOnlyRemovedScores() {
+        storage.updateScores(MODE, Map.of(FIRST, score("first", 10), SECOND, score("second", 20)), Set.of());
+        storage.updateScores(MODE, Map.of(), Set.of(FIRST));
+
+        assertNull(storage.readScore(MODE, FIRST));
+        assertEquals(Map.of(SECOND, score("second", 20)), storage.readScores(MODE));
+    }
+
+    @Test
+    void upsertAndDeleteInOneUpdate() {
+        storage.updateScores(MODE, Map.of(FIRST, score("first", 10)), Set.of());
+        storage.updateScores(MODE, Map.of(SECOND, score("second", 20)), Set.of(FIRST));
+
+        assertEquals(Map.of(SECOND, score("second", 20)), storage.readScores(MODE));
+    }
+
+    @Test
+    void topScoresAreBestFirstAndLimited() {
+        storage.updateScores(MODE, Map.of(FIRST, score("first", 10), SECOND, score("second", 30), THIRD, score("third", 20)), Set.of());
+
+        Map<UUID, Score> top = storage.readScores(MODE, SingleLeaderboardMenu.Sort.SCORE, 2);
+
+        assertEquals(List.of(SECOND, THIRD), new ArrayList<>(top.keySet()));
+        assertEquals(score("second", 30), top.get(SECOND));
+    }
+
+    @Test
+    void rankCountsBetterScores() {
+        storage.updateScores(MODE, Map.of(FIRST, score("first", 10), SECOND, score("second", 30), THIRD, score("third", 20)), Set.of());
+
+        assertEquals(1, storage.readRank(MODE, SingleLeaderboardMenu.Sort.SCORE, score("second", 30)));
+        assertEquals(2, storage.readRank(MODE, SingleLeaderboardMenu.Sort.SCORE, score("third", 20)));
+        assertEquals(3, storage.readRank(MODE, SingleLeaderboardMenu.Sort.SCORE, score("first", 10)));
+
+        // a score that isn't stored is ranked below the scores that are better
+        assertEquals(2, storage.readRank(MODE, SingleLeaderboardMenu.Sort.SCORE, score("other", 25)));
+    }
+
+    @Test
+    void scoresAreKeptAfterReopening() {
+        storage.updateScores(MODE, Map.of(FIRST, score("first", 10)), Set.of());
+        storage.close();
+
+        storage = new StorageSQLite(folder.resolve("data.db").toFile());
+        storage.init(MODE);
+
+        assertEquals(score("first", 10), storage.readScore(MODE, FIRST));
+    }
+
+    private static Score score(String name, int score) {
+        return new Score(name, Score.timeFromMillis(10_000), "0.5", score);
+    }
+}